@@ -12,6 +12,7 @@ import org.apache.mina.filter.executor.ExecutorFilter;
 import org.apache.mina.transport.socket.nio.SocketAcceptor;
 import org.apache.mina.transport.socket.nio.SocketAcceptorConfig;
 
+import com.alitag.mina_tools.filters.ActivityFilter;
 import com.alitag.mina_tools.filters.LoggingFilter;
 
 /**
@@ -45,10 +46,18 @@ public class AcceptorBuilder {
 	/** 将被acceptor对象使用的线程池.NOTE:这里说是线程"池",但是目前只允许它里面有一条线程运行. */
 	private ThreadPoolExecutor threadPool;
 
+	/** 申请了处理线程的IoProcessorGroup,没有使用时为null */
+	private IoProcessorGroup processorGroup;
+
+	/** 向processorGroup申请到的处理线程数 */
+	private int allocatedProcessors;
+
 	/** 用于唯一确定codecFilter的key */
 	public static final String FILTER_CODEC = AcceptorBuilder.class.getSimpleName() + ".codec";
 	/** 用于唯一确定logginFilter的key */
 	public static final String FILTER_LOGGING = AcceptorBuilder.class.getSimpleName() + ".logging";
+	/** 用于唯一确定activityFilter的key */
+	public static final String FILTER_ACTIVITY = AcceptorBuilder.class.getSimpleName() + ".activity";
 	/** 用于唯一确定threadPool的key */
 	public static final String FILTER_THREADPOOL = AcceptorBuilder.class.getSimpleName() + ".threadPool";
 
@@ -89,9 +98,16 @@ public class AcceptorBuilder {
 	public synchronized IoAcceptor getAcceptor() {
 		if (acceptor == null) {
 
-			// 使用的线程数比电脑的cpu多一个，可以增加性能
-			acceptor = new SocketAcceptor(Runtime.getRuntime().availableProcessors() + 1, Executors
-					.newCachedThreadPool());
+			if (config.ioProcessorGroup != null) {
+				// 与其它builder共用线程池及处理线程的预算
+				processorGroup = config.ioProcessorGroup;
+				allocatedProcessors = processorGroup.allocate(config.ioProcessorCount);
+				acceptor = new SocketAcceptor(allocatedProcessors, processorGroup.getExecutor());
+			} else {
+				// 使用的线程数比电脑的cpu多一个，可以增加性能
+				acceptor = new SocketAcceptor(Runtime.getRuntime().availableProcessors() + 1, Executors
+						.newCachedThreadPool());
+			}
 			SocketAcceptorConfig serviceConfig = (SocketAcceptorConfig) acceptor.getDefaultConfig();
 
 			serviceConfig.getSessionConfig().setReuseAddress(config.reuseAddress);
@@ -116,6 +132,11 @@ public class AcceptorBuilder {
 				serviceConfig.getFilterChain().addLast(FILTER_LOGGING, createLoggingFilter());
 			}
 
+			// 是否记录session的活动时间,用于空闲自动断开
+			if (config.trackActivity) {
+				serviceConfig.getFilterChain().addLast(FILTER_ACTIVITY, new ActivityFilter());
+			}
+
 			// 是否启用线程池
 			if (config.threadPool) {
 				// NOTE: maxPoolSize由Integer.MAX_VALUE改为1
@@ -161,6 +182,25 @@ public class AcceptorBuilder {
 		}
 	}
 
+	/**
+	 * <p>
+	 * 释放生成的IoAcceptor：停止监听所有的地址，关闭线程池，并把申请的处理线程数归还给config.ioProcessorGroup。
+	 * 此后再调用{@link #getAcceptor()}会生成一个新的IoAcceptor。
+	 * </p>
+	 */
+	public synchronized void dispose() {
+		if (acceptor != null) {
+			acceptor.unbindAll();
+			acceptor = null;
+		}
+		shutdownThreadPool();
+		if (processorGroup != null) {
+			processorGroup.release(allocatedProcessors);
+			processorGroup = null;
+			allocatedProcessors = 0;
+		}
+	}
+
 	/**
 	 * 检查线程池是否被关闭。如果线程池没有开启或者已经关闭，则返回true。
 	 */
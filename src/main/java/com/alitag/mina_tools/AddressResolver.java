@@ -0,0 +1,325 @@
+package com.alitag.mina_tools;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * 带缓存的地址解析器。主机名的解析结果缓存ttl毫秒，解析失败的结果缓存negativeTtl毫秒。
+ * </p>
+ * <p>
+ * 过期的结果不会被直接丢弃：访问时仍然立即返回旧的结果，同时在后台线程中重新解析(stale-while-revalidate)，
+ * 因此除了第一次解析之外，调用者(比如断线重连)不会阻塞在域名解析上。后台解析失败时继续使用旧的结果。
+ * 同一个主机名同一时刻最多只有一个解析在进行。
+ * </p>
+ * <p>
+ * 超过ttl + negativeTtl没有被访问(因而没有被重新解析)的主机名会被定期从缓存中清除，缓存不会因为不再使用的主机名而无限增长。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。缓存及正在进行的解析都保存在ConcurrentHashMap中，缓存项是不可变的。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class AddressResolver {
+
+	private static final Logger logger = LoggerFactory.getLogger(AddressResolver.class);
+
+	/** 默认的缓存时间(毫秒) */
+	public static final long DEFAULT_TTL_MILLIS = 60000;
+
+	/** 默认的解析失败的缓存时间(毫秒) */
+	public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 5000;
+
+	private static final Function<Entry, List<InetAddress>> ADDRESSES = new Function<Entry, List<InetAddress>>() {
+		public List<InetAddress> apply(Entry entry) {
+			return entry.addresses;
+		}
+	};
+
+	private final long ttlNanos;
+	private final long negativeTtlNanos;
+	private final Executor executor;
+
+	private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+	private final ConcurrentHashMap<String, CompletableFuture<Entry>> resolving = new ConcurrentHashMap<String, CompletableFuture<Entry>>();
+
+	/** 下一次清除缓存的时刻(System.nanoTime()) */
+	private final AtomicLong nextPurge = new AtomicLong(System.nanoTime());
+
+	/**
+	 * <p>
+	 * 构造函数。使用默认的缓存时间，并在一条自己的后台线程中解析。
+	 * </p>
+	 */
+	public AddressResolver() {
+		this(DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS, createExecutor());
+	}
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param ttlMillis
+	 *            解析结果的缓存时间(毫秒)
+	 * @param negativeTtlMillis
+	 *            解析失败的缓存时间(毫秒)
+	 * @param executor
+	 *            执行解析的executor
+	 * @throws IllegalArgumentException
+	 *             如果ttlMillis<=0,或者negativeTtlMillis<0,或者executor为null
+	 */
+	public AddressResolver(long ttlMillis, long negativeTtlMillis, Executor executor) {
+		ArgumentValidator.isTrue(ttlMillis > 0, "ttlMillis should be >0: " + ttlMillis);
+		ArgumentValidator.isTrue(negativeTtlMillis >= 0, "negativeTtlMillis should be >=0: " + negativeTtlMillis);
+		ArgumentValidator.notNull(executor, "executor");
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+		this.executor = executor;
+	}
+
+	private static Executor createExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, AddressResolver.class.getSimpleName());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * <p>
+	 * 异步地解析主机名。缓存中有结果时(即使已经过期)立即完成，否则在后台解析。
+	 * </p>
+	 *
+	 * @param host
+	 *            主机名或ip
+	 * @return 所有的地址，解析失败时以UnknownHostException结束
+	 * @throws IllegalArgumentException
+	 *             如果host为null或为空
+	 */
+	public CompletableFuture<List<InetAddress>> resolveAsync(String host) {
+		ArgumentValidator.notNullOrTrimmedEmpty(host, "host");
+		long now = System.nanoTime();
+		purgeIfDue(now);
+		Entry entry = cache.get(host);
+		if (entry != null) {
+			if (entry.error == null) {
+				if (now - entry.resolvedAt > ttlNanos) {
+					refresh(host);
+				}
+				return CompletableFuture.completedFuture(entry.addresses);
+			}
+			if (now - entry.resolvedAt <= negativeTtlNanos) {
+				CompletableFuture<List<InetAddress>> failed = new CompletableFuture<List<InetAddress>>();
+				failed.completeExceptionally(entry.error);
+				return failed;
+			}
+		}
+		return refresh(host).thenApply(ADDRESSES);
+	}
+
+	/**
+	 * 异步地解析主机名及端口
+	 *
+	 * @see #resolveAsync(String)
+	 */
+	public CompletableFuture<List<InetSocketAddress>> resolveAsync(String host, final int port) {
+		return resolveAsync(host).thenApply(new Function<List<InetAddress>, List<InetSocketAddress>>() {
+			public List<InetSocketAddress> apply(List<InetAddress> addresses) {
+				List<InetSocketAddress> list = new ArrayList<InetSocketAddress>(addresses.size());
+				for (InetAddress address : addresses) {
+					list.add(new InetSocketAddress(address, port));
+				}
+				return list;
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 解析主机名。只有缓存中没有结果时才会阻塞。
+	 * </p>
+	 *
+	 * @param host
+	 *            主机名或ip
+	 * @return 所有的地址
+	 * @throws UnknownHostException
+	 *             如果解析失败
+	 * @throws IllegalArgumentException
+	 *             如果host为null或为空
+	 */
+	public List<InetAddress> resolveAll(String host) throws UnknownHostException {
+		try {
+			return resolveAsync(host).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UnknownHostException(host + ": interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UnknownHostException) {
+				throw (UnknownHostException) e.getCause();
+			}
+			throw new UnknownHostException(host + ": " + e.getCause());
+		}
+	}
+
+	/**
+	 * 从缓存中移除主机名的解析结果
+	 *
+	 * @param host
+	 *            主机名
+	 */
+	public void invalidate(String host) {
+		cache.remove(host);
+	}
+
+	/**
+	 * 得到缓存的主机名数
+	 *
+	 * @return 缓存的主机名数
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * 真正的解析.子类可以覆盖它以使用其他的解析方式
+	 *
+	 * @param host
+	 *            主机名或ip
+	 * @return 所有的地址
+	 * @throws UnknownHostException
+	 *             如果解析失败
+	 */
+	protected List<InetAddress> lookup(String host) throws UnknownHostException {
+		return Arrays.asList(InetAddress.getAllByName(host));
+	}
+
+	/**
+	 * 在后台解析主机名.如果已经有解析在进行,返回它的结果
+	 */
+	private CompletableFuture<Entry> refresh(final String host) {
+		CompletableFuture<Entry> future = resolving.get(host);
+		if (future != null) {
+			return future;
+		}
+		final CompletableFuture<Entry> created = new CompletableFuture<Entry>();
+		future = resolving.putIfAbsent(host, created);
+		if (future != null) {
+			return future;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					doResolve(host, created);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			resolving.remove(host, created);
+			created.completeExceptionally(e);
+		}
+		return created;
+	}
+
+	/**
+	 * 每隔ttl清除一次超过ttl + negativeTtl没有重新解析的主机名.正在解析的主机名保留
+	 */
+	private void purgeIfDue(long now) {
+		long next = nextPurge.get();
+		if (now - next < 0 || !nextPurge.compareAndSet(next, now + ttlNanos)) {
+			return;
+		}
+		long maxAge = ttlNanos + negativeTtlNanos;
+		for (Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, Entry> e = it.next();
+			if (now - e.getValue().resolvedAt > maxAge && !resolving.containsKey(e.getKey())) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * 解析并更新缓存.无论成功与否(包括lookup抛出Error),都会完成future并从resolving中移除
+	 */
+	private void doResolve(String host, CompletableFuture<Entry> future) {
+		Entry entry = null;
+		try {
+			entry = resolve(host);
+		} finally {
+			resolving.remove(host, future);
+			if (entry == null) {
+				future.completeExceptionally(new UnknownHostException(host + ": resolver failed"));
+			} else if (entry.error != null) {
+				future.completeExceptionally(entry.error);
+			} else {
+				future.complete(entry);
+			}
+		}
+	}
+
+	private Entry resolve(String host) {
+		long start = System.nanoTime();
+		Entry entry;
+		try {
+			List<InetAddress> addresses = lookup(host);
+			entry = new Entry(Collections.unmodifiableList(new ArrayList<InetAddress>(addresses)), null, start);
+		} catch (UnknownHostException e) {
+			entry = new Entry(null, e, start);
+		} catch (RuntimeException e) {
+			UnknownHostException error = new UnknownHostException(host + ": " + e);
+			error.initCause(e);
+			entry = new Entry(null, error, start);
+		}
+
+		Entry old = cache.get(host);
+		if (entry.error != null && old != null && old.error == null) {
+			// 解析失败时继续使用旧的结果,并在negativeTtl之后重试
+			logger.warn("failed to refresh " + host + ", keep using " + old.addresses + ": " + entry.error);
+			entry = new Entry(old.addresses, null, start - ttlNanos + negativeTtlNanos);
+		}
+		cache.put(host, entry);
+		return entry;
+	}
+
+	/**
+	 * 一个主机名的解析结果
+	 */
+	private static final class Entry {
+		final List<InetAddress> addresses;
+		final UnknownHostException error;
+		final long resolvedAt;
+
+		Entry(List<InetAddress> addresses, UnknownHostException error, long resolvedAt) {
+			this.addresses = addresses;
+			this.error = error;
+			this.resolvedAt = resolvedAt;
+		}
+	}
+}
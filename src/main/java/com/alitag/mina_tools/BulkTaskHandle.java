@@ -0,0 +1,65 @@
+package com.alitag.mina_tools;
+
+import java.util.List;
+
+import com.alitag.mina_tools.timer.Timeout;
+
+/**
+ * <p>
+ * 批量调度时返回的聚合句柄，可以一次取消该批中的所有任务。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它持有的句柄列表在构造后不再改变，且每个句柄本身线程安全。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class BulkTaskHandle {
+
+	private final String name;
+	private final List<Timeout> timeouts;
+
+	BulkTaskHandle(String name, List<Timeout> timeouts) {
+		this.name = name;
+		this.timeouts = timeouts;
+	}
+
+	/**
+	 * 取消该批中所有尚未结束的任务
+	 *
+	 * @return 本次成功取消的任务数
+	 */
+	public int cancel() {
+		int cancelled = 0;
+		for (Timeout timeout : timeouts) {
+			if (timeout.cancel()) {
+				cancelled++;
+			}
+		}
+		return cancelled;
+	}
+
+	/**
+	 * 得到该批中任务的总数
+	 *
+	 * @return 任务总数
+	 */
+	public int size() {
+		return timeouts.size();
+	}
+
+	/**
+	 * 得到任务的名字
+	 *
+	 * @return 任务的名字
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return name + " x " + timeouts.size();
+	}
+}
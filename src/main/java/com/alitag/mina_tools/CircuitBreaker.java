@@ -0,0 +1,180 @@
+package com.alitag.mina_tools;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 一个远程地址的断路器。它有三种状态：
+ * <ul>
+ * <li>CLOSED: 正常状态，允许所有的连接。在windowMillis内失败达到failureThreshold次时转为OPEN
+ * <li>OPEN: 所有的连接都立刻失败，不再等待connectTimeout。经过openMillis后转为HALF_OPEN
+ * <li>HALF_OPEN: 最多允许halfOpenProbes个探测连接。它们全部成功则转为CLOSED，任何一个失败则重新转为OPEN
+ * </ul>
+ * </p>
+ * <p>
+ * 失败包括连接失败，以及使用{@link com.alitag.mina_tools.filters.CircuitBreakerFilter}时session中的exceptionCaught。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。状态的变化在this的同步块中进行；状态由volatile字段持有，CLOSED状态下的{@link #tryAcquire()}不加锁。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class CircuitBreaker {
+
+	/**
+	 * 断路器的状态
+	 */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long windowNanos;
+	private final long openNanos;
+	private final int halfOpenProbes;
+
+	private volatile State state = State.CLOSED;
+
+	/** 当前统计窗口的开始时间及窗口内的失败次数 */
+	private long windowStart;
+	private int failures;
+
+	/** OPEN状态的结束时间 */
+	private long openUntil;
+
+	/** HALF_OPEN状态下已经发出的探测数及成功的探测数 */
+	private int probesIssued;
+	private int probesSucceeded;
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param failureThreshold
+	 *            在windowMillis内失败多少次后打开断路器
+	 * @param windowMillis
+	 *            统计失败次数的时间窗口(毫秒)
+	 * @param openMillis
+	 *            打开后经过多少毫秒开始探测
+	 * @param halfOpenProbes
+	 *            探测时允许的连接数
+	 * @throws IllegalArgumentException
+	 *             如果任何参数<=0
+	 */
+	public CircuitBreaker(int failureThreshold, long windowMillis, long openMillis, int halfOpenProbes) {
+		ArgumentValidator.isTrue(failureThreshold > 0, "failureThreshold should be >0: " + failureThreshold);
+		ArgumentValidator.isTrue(windowMillis > 0, "windowMillis should be >0: " + windowMillis);
+		ArgumentValidator.isTrue(openMillis > 0, "openMillis should be >0: " + openMillis);
+		ArgumentValidator.isTrue(halfOpenProbes > 0, "halfOpenProbes should be >0: " + halfOpenProbes);
+		this.failureThreshold = failureThreshold;
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+		this.halfOpenProbes = halfOpenProbes;
+	}
+
+	/**
+	 * 请求一次连接的许可.得到许可后必须调用{@link #onSuccess()}或{@link #onFailure()}报告结果
+	 *
+	 * @return 是否允许连接
+	 */
+	public boolean tryAcquire() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		synchronized (this) {
+			switch (state) {
+			case CLOSED:
+				return true;
+			case OPEN:
+				if (System.nanoTime() - openUntil < 0) {
+					return false;
+				}
+				state = State.HALF_OPEN;
+				probesIssued = 0;
+				probesSucceeded = 0;
+				// fall through
+			default:
+				if (probesIssued >= halfOpenProbes) {
+					return false;
+				}
+				probesIssued++;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 归还一个由{@link #tryAcquire()}得到但没有用于连接的许可,比如在限速器中排队超时.它不计为成功或失败
+	 */
+	public void release() {
+		if (state == State.CLOSED) {
+			return;
+		}
+		synchronized (this) {
+			if (state == State.HALF_OPEN && probesIssued > 0) {
+				probesIssued--;
+			}
+		}
+	}
+
+	/**
+	 * 报告一次成功
+	 */
+	public void onSuccess() {
+		if (state == State.CLOSED) {
+			return;
+		}
+		synchronized (this) {
+			if (state == State.HALF_OPEN && ++probesSucceeded >= halfOpenProbes) {
+				state = State.CLOSED;
+				failures = 0;
+			}
+		}
+	}
+
+	/**
+	 * 报告一次失败
+	 */
+	public synchronized void onFailure() {
+		long now = System.nanoTime();
+		switch (state) {
+		case CLOSED:
+			if (failures == 0 || now - windowStart > windowNanos) {
+				windowStart = now;
+				failures = 0;
+			}
+			if (++failures >= failureThreshold) {
+				open(now);
+			}
+			break;
+		case HALF_OPEN:
+			open(now);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * 得到当前的状态
+	 *
+	 * @return 当前的状态
+	 */
+	public State getState() {
+		return state;
+	}
+
+	private void open(long now) {
+		state = State.OPEN;
+		openUntil = now + openNanos;
+		failures = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreaker(" + state + ")";
+	}
+}
@@ -0,0 +1,75 @@
+package com.alitag.mina_tools;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * 按远程地址保存断路器。每个地址第一次被用到时以相同的参数创建一个断路器。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。断路器保存在ConcurrentHashMap中。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ * @see CircuitBreaker
+ */
+public class CircuitBreakerRegistry {
+
+	private final ConcurrentHashMap<InetSocketAddress, CircuitBreaker> breakers = new ConcurrentHashMap<InetSocketAddress, CircuitBreaker>();
+
+	private final int failureThreshold;
+	private final long windowMillis;
+	private final long openMillis;
+	private final int halfOpenProbes;
+
+	/**
+	 * <p>
+	 * 构造函数。参数的含义见{@link CircuitBreaker#CircuitBreaker(int, long, long, int)}
+	 * </p>
+	 *
+	 * @throws IllegalArgumentException
+	 *             如果任何参数<=0
+	 */
+	public CircuitBreakerRegistry(int failureThreshold, long windowMillis, long openMillis, int halfOpenProbes) {
+		// 提前检查参数
+		new CircuitBreaker(failureThreshold, windowMillis, openMillis, halfOpenProbes);
+		this.failureThreshold = failureThreshold;
+		this.windowMillis = windowMillis;
+		this.openMillis = openMillis;
+		this.halfOpenProbes = halfOpenProbes;
+	}
+
+	/**
+	 * 得到指定地址的断路器,如果不存在则创建一个
+	 *
+	 * @param remote
+	 *            远程地址
+	 * @return 断路器
+	 * @throws IllegalArgumentException
+	 *             如果remote为null
+	 */
+	public CircuitBreaker get(InetSocketAddress remote) {
+		ArgumentValidator.notNull(remote, "remote");
+		CircuitBreaker breaker = breakers.get(remote);
+		if (breaker == null) {
+			CircuitBreaker created = new CircuitBreaker(failureThreshold, windowMillis, openMillis, halfOpenProbes);
+			breaker = breakers.putIfAbsent(remote, created);
+			if (breaker == null) {
+				breaker = created;
+			}
+		}
+		return breaker;
+	}
+
+	/**
+	 * 移除指定地址的断路器
+	 *
+	 * @param remote
+	 *            远程地址
+	 */
+	public void remove(InetSocketAddress remote) {
+		breakers.remove(remote);
+	}
+}
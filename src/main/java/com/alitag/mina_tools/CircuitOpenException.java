@@ -0,0 +1,21 @@
+package com.alitag.mina_tools;
+
+import java.net.ConnectException;
+
+/**
+ * <p>
+ * 当远程地址的断路器处于打开状态时，连接立刻以该异常失败，而不会真正发起连接。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ * @see CircuitBreaker
+ */
+public class CircuitOpenException extends ConnectException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CircuitOpenException(String message) {
+		super(message);
+	}
+}
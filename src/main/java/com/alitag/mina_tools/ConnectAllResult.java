@@ -0,0 +1,65 @@
+package com.alitag.mina_tools;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.mina.common.IoSession;
+
+/**
+ * <p>
+ * {@link ConnectorHelper#connectAll(java.util.Collection, int, long)}的结果，包含成功建立的session及每个失败的地址对应的异常。
+ * 超过总时限仍未完成或尚未开始的连接，其异常为java.util.concurrent.TimeoutException。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变类。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class ConnectAllResult {
+
+	private final Map<InetSocketAddress, IoSession> sessions;
+	private final Map<InetSocketAddress, Throwable> failures;
+	private final boolean complete;
+
+	ConnectAllResult(Map<InetSocketAddress, IoSession> sessions, Map<InetSocketAddress, Throwable> failures,
+			boolean complete) {
+		this.sessions = Collections.unmodifiableMap(sessions);
+		this.failures = Collections.unmodifiableMap(failures);
+		this.complete = complete;
+	}
+
+	/**
+	 * 得到成功建立的session
+	 *
+	 * @return 地址到session的映射
+	 */
+	public Map<InetSocketAddress, IoSession> getSessions() {
+		return sessions;
+	}
+
+	/**
+	 * 得到失败的连接
+	 *
+	 * @return 地址到异常的映射
+	 */
+	public Map<InetSocketAddress, Throwable> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * 是否所有的连接都在总时限之内结束(无论成功与否)
+	 *
+	 * @return 是否在时限内结束
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	@Override
+	public String toString() {
+		return "connected: " + sessions.size() + ", failed: " + failures.size() + ", complete: " + complete;
+	}
+}
@@ -0,0 +1,160 @@
+package com.alitag.mina_tools;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.apache.mina.common.IoSession;
+
+/**
+ * <p>
+ * 并行连接到多个地址，同一时刻最多有maxInFlight个连接正在进行。每个连接结束后立刻开始下一个，直到全部结束或超过总时限。
+ * </p>
+ * <p>
+ * 连接失败可能同步发生(比如断路器打开、总时限用完或本地地址用完)，因此开始下一个连接不使用递归，
+ * 而是由一个计数器驱动的循环完成，即使有数千个地址连续同步失败，调用栈的深度也不会增加。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。结果的记录与时限的判断在同一个锁中进行，超过时限或等待被中断之后才连接成功的session将被关闭。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+class ConnectAllTask {
+
+	private final ConnectorHelper helper;
+	private final ConnectBudget budget;
+	private final Queue<InetSocketAddress> remaining;
+	private final int total;
+	private final CountDownLatch finished;
+
+	private final Map<InetSocketAddress, IoSession> sessions = new LinkedHashMap<InetSocketAddress, IoSession>();
+	private final Map<InetSocketAddress, Throwable> failures = new LinkedHashMap<InetSocketAddress, Throwable>();
+
+	/** 已经开始但尚未结束的连接,由this保护 */
+	private final Set<InetSocketAddress> inFlight = new HashSet<InetSocketAddress>();
+
+	/** 是否已经超过总时限或等待被中断,由this保护 */
+	private boolean expired;
+
+	/** 尚未处理的开始连接的请求数.从0变为非0的线程负责在循环中处理所有的请求 */
+	private final AtomicInteger pendingLaunches = new AtomicInteger();
+
+	ConnectAllTask(ConnectorHelper helper, Collection<InetSocketAddress> endpoints, long timeoutMillis) {
+		this.helper = helper;
+		this.budget = new ConnectBudget(timeoutMillis);
+		this.remaining = new ConcurrentLinkedQueue<InetSocketAddress>(endpoints);
+		this.total = endpoints.size();
+		this.finished = new CountDownLatch(total);
+	}
+
+	/**
+	 * 开始连接并等待所有连接结束或超过总时限.如果等待被中断,已经建立及此后建立的session都会被关闭
+	 */
+	ConnectAllResult run(int maxInFlight) throws InterruptedException {
+		launch(Math.min(maxInFlight, total));
+		boolean complete;
+		try {
+			complete = finished.await(budget.remainingMillis(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			closeConnected();
+			throw e;
+		} finally {
+			synchronized (this) {
+				expired = true;
+			}
+		}
+
+		synchronized (this) {
+			for (InetSocketAddress address : inFlight) {
+				failures.put(address, new TimeoutException("still connecting at deadline"));
+			}
+			inFlight.clear();
+			InetSocketAddress address;
+			while ((address = remaining.poll()) != null) {
+				failures.put(address, new TimeoutException("not started before deadline"));
+			}
+			return new ConnectAllResult(new LinkedHashMap<InetSocketAddress, IoSession>(sessions),
+					new LinkedHashMap<InetSocketAddress, Throwable>(failures), complete);
+		}
+	}
+
+	/**
+	 * 关闭已经建立的session,调用者不会再拿到它们
+	 */
+	private void closeConnected() {
+		List<IoSession> connected;
+		synchronized (this) {
+			expired = true;
+			connected = new ArrayList<IoSession>(sessions.values());
+			sessions.clear();
+		}
+		for (IoSession session : connected) {
+			session.close();
+		}
+	}
+
+	/**
+	 * 请求开始count个连接.如果当前线程已经在循环中开始连接(连接同步失败时会回到这里),只增加计数,由外层的循环处理
+	 */
+	private void launch(int count) {
+		if (count <= 0 || pendingLaunches.getAndAdd(count) != 0) {
+			return;
+		}
+		do {
+			launchNext();
+		} while (pendingLaunches.decrementAndGet() != 0);
+	}
+
+	private void launchNext() {
+		final InetSocketAddress address;
+		synchronized (this) {
+			// 时限用完后不再开始新的连接,它们在run()中被记为失败
+			address = expired || budget.isExhausted() ? null : remaining.poll();
+			if (address == null) {
+				return;
+			}
+			inFlight.add(address);
+		}
+		CompletableFuture<IoSession> future = helper.connectAsync(address, budget);
+		future.whenComplete(new BiConsumer<IoSession, Throwable>() {
+			public void accept(IoSession session, Throwable cause) {
+				record(address, session, cause);
+				finished.countDown();
+				launch(1);
+			}
+		});
+	}
+
+	private void record(InetSocketAddress address, IoSession session, Throwable cause) {
+		synchronized (this) {
+			if (!expired) {
+				inFlight.remove(address);
+				if (session != null) {
+					sessions.put(address, session);
+				} else {
+					failures.put(address, cause);
+				}
+				return;
+			}
+		}
+		// 调用者已经拿到了结果,超时之后才建立的连接不再需要
+		if (session != null) {
+			session.close();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.alitag.mina_tools;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 一次逻辑上的连接的总时限。同一个budget可以传给多次重试或对冲的连接，每次连接的超时时间不会超过剩余的时限，
+ * 时限用完后的连接立刻以SocketTimeoutException失败。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变类。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public final class ConnectBudget {
+
+	private final long totalMillis;
+	private final long deadlineNanos;
+
+	/**
+	 * <p>
+	 * 构造函数。时限从现在开始计算。
+	 * </p>
+	 *
+	 * @param totalMillis
+	 *            总时限(毫秒)
+	 * @throws IllegalArgumentException
+	 *             如果totalMillis<0
+	 */
+	public ConnectBudget(long totalMillis) {
+		ArgumentValidator.isTrue(totalMillis >= 0, "totalMillis should be >=0: " + totalMillis);
+		this.totalMillis = totalMillis;
+		this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(totalMillis);
+	}
+
+	/**
+	 * 得到剩余的时限
+	 *
+	 * @return 剩余的时限(毫秒)，用完时返回0
+	 */
+	public long remainingMillis() {
+		long remaining = deadlineNanos - System.nanoTime();
+		return remaining <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(remaining + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+	}
+
+	/**
+	 * 时限是否已经用完
+	 *
+	 * @return 是否已经用完
+	 */
+	public boolean isExhausted() {
+		return deadlineNanos - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * 得到总时限
+	 *
+	 * @return 总时限(毫秒)
+	 */
+	public long getTotalMillis() {
+		return totalMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectBudget(" + remainingMillis() + "/" + totalMillis + "ms)";
+	}
+}
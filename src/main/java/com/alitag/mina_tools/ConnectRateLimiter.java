@@ -0,0 +1,381 @@
+package com.alitag.mina_tools;
+
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.alitag.mina_tools.timer.Timeout;
+
+/**
+ * <p>
+ * 连接速率限制器，用于防止故障切换后大量客户端同时重连形成的连接风暴。它由一个全局的令牌桶和每个远程地址各自的令牌桶组成，
+ * 每次连接需要同时从全局桶和对方地址的桶中各取得一个令牌。
+ * </p>
+ * <p>
+ * 取不到令牌的连接请求按先后顺序排队，由{@link ConnectorHelper#getTimer()}在令牌补充后按配置的速率依次放行。
+ * 某个地址的桶暂时没有令牌时，不会阻塞排在后面的其它地址的请求。放行由定时器的tick驱动，为了在tick较粗时仍能达到配置的速率，
+ * 有请求在等待某个桶时，该桶的令牌可以超过容量，最多多出{@link #DRAIN_SLACK_MILLIS}毫秒内补充的令牌，这些令牌只会被已经排队的请求取走。每个排队的请求有自己的截止时间，
+ * 到期仍未放行的请求以SocketTimeoutException结束；队列已满时新的请求立刻以ConnectException结束。
+ * </p>
+ * <p>
+ * 通过{@link ConnectorHelper#setRateLimiter(ConnectRateLimiter)}设置后，该helper发起的所有连接(包括重连、连接池、预热等)都受其限制。
+ * 多个helper可以共用同一个限制器。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。所有状态由this的锁保护，结果在锁之外完成。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class ConnectRateLimiter {
+
+	/** 默认的最大排队数 */
+	public static final int DEFAULT_MAX_QUEUED = 10000;
+
+	/** 默认的排队时限(毫秒) */
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 10000;
+
+	/** 有请求排队时，桶的令牌可以超过容量的时长(毫秒)，即5个{@link ConnectorHelper#DEFAULT_TIMER_TICK_MILLIS}的tick，足以覆盖定时器的延迟 */
+	public static final long DRAIN_SLACK_MILLIS = 5 * ConnectorHelper.DEFAULT_TIMER_TICK_MILLIS;
+
+	/** 地址的桶超过该数量时，清除已经补满的桶 */
+	private static final int PURGE_THRESHOLD = 1024;
+
+	private final double endpointPerSecond;
+	private final int endpointBurst;
+	private final int maxQueued;
+	private final long maxWaitMillis;
+
+	// 以下字段由this保护
+	private final Bucket global;
+	private final Map<InetSocketAddress, Bucket> endpoints = new HashMap<InetSocketAddress, Bucket>();
+	private final ArrayDeque<Waiter> queue = new ArrayDeque<Waiter>();
+	private Timeout drainTask;
+	/** drainTask执行的时刻(System.nanoTime()) */
+	private long drainAt;
+
+	private final Runnable drain = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * <p>
+	 * 构造函数。使用默认的最大排队数及排队时限。
+	 * </p>
+	 *
+	 * @param globalPerSecond
+	 *            全局每秒允许的连接数
+	 * @param globalBurst
+	 *            全局允许的突发连接数,即桶的容量
+	 * @param endpointPerSecond
+	 *            每个地址每秒允许的连接数,0表示不按地址限制
+	 * @param endpointBurst
+	 *            每个地址允许的突发连接数
+	 * @throws IllegalArgumentException
+	 *             如果globalPerSecond<=0,或者globalBurst<=0,或者endpointPerSecond<0,或者endpointPerSecond>0时endpointBurst<=0
+	 */
+	public ConnectRateLimiter(double globalPerSecond, int globalBurst, double endpointPerSecond, int endpointBurst) {
+		this(globalPerSecond, globalBurst, endpointPerSecond, endpointBurst, DEFAULT_MAX_QUEUED, DEFAULT_MAX_WAIT_MILLIS);
+	}
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param globalPerSecond
+	 *            全局每秒允许的连接数
+	 * @param globalBurst
+	 *            全局允许的突发连接数,即桶的容量
+	 * @param endpointPerSecond
+	 *            每个地址每秒允许的连接数,0表示不按地址限制
+	 * @param endpointBurst
+	 *            每个地址允许的突发连接数
+	 * @param maxQueued
+	 *            最多排队的连接请求数
+	 * @param maxWaitMillis
+	 *            每个请求最多排队多少毫秒
+	 * @throws IllegalArgumentException
+	 *             如果globalPerSecond<=0,或者globalBurst<=0,或者endpointPerSecond<0,或者endpointPerSecond>0时endpointBurst<=0,
+	 *             或者maxQueued<0,或者maxWaitMillis<=0
+	 */
+	public ConnectRateLimiter(double globalPerSecond, int globalBurst, double endpointPerSecond, int endpointBurst,
+			int maxQueued, long maxWaitMillis) {
+		ArgumentValidator.isTrue(globalPerSecond > 0, "globalPerSecond should be >0: " + globalPerSecond);
+		ArgumentValidator.isTrue(globalBurst > 0, "globalBurst should be >0: " + globalBurst);
+		ArgumentValidator.isTrue(endpointPerSecond >= 0, "endpointPerSecond should be >=0: " + endpointPerSecond);
+		ArgumentValidator.isTrue(endpointPerSecond == 0 || endpointBurst > 0, "endpointBurst should be >0: "
+				+ endpointBurst);
+		ArgumentValidator.isTrue(maxQueued >= 0, "maxQueued should be >=0: " + maxQueued);
+		ArgumentValidator.isTrue(maxWaitMillis > 0, "maxWaitMillis should be >0: " + maxWaitMillis);
+		this.global = new Bucket(globalPerSecond, globalBurst, System.nanoTime());
+		this.endpointPerSecond = endpointPerSecond;
+		this.endpointBurst = endpointBurst;
+		this.maxQueued = maxQueued;
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * 申请连接到指定地址的许可.有令牌且没有排队的请求时立刻放行,否则排队等待
+	 *
+	 * @param remote
+	 *            对方的地址
+	 * @param waitMillis
+	 *            最多排队多少毫秒,不会超过构造时指定的maxWaitMillis
+	 * @return 放行时正常结束;超过时限时以SocketTimeoutException结束;队列已满时以ConnectException结束
+	 * @throws IllegalArgumentException
+	 *             如果remote为null,或者waitMillis<0
+	 */
+	public CompletableFuture<Void> acquire(InetSocketAddress remote, long waitMillis) {
+		ArgumentValidator.notNull(remote, "remote");
+		ArgumentValidator.isTrue(waitMillis >= 0, "waitMillis should be >=0: " + waitMillis);
+		CompletableFuture<Void> result = new CompletableFuture<Void>();
+		boolean drainNow;
+		synchronized (this) {
+			long now = System.nanoTime();
+			Bucket endpoint = endpointBucket(remote, now);
+			if (queue.isEmpty() && tryTake(endpoint, now)) {
+				result.complete(null);
+				return result;
+			}
+			if (queue.size() >= maxQueued || waitMillis == 0) {
+				result.completeExceptionally(new ConnectException("connect rate limited, queued: " + queue.size()
+						+ ": " + remote));
+				return result;
+			}
+			final Waiter waiter = new Waiter(remote, endpoint, result);
+			final long timeoutMillis = Math.min(waitMillis, maxWaitMillis);
+			waiter.deadline = ConnectorHelper.getTimer().schedule(new Runnable() {
+				public void run() {
+					expire(waiter, timeoutMillis);
+				}
+			}, timeoutMillis, 0);
+			queue.addLast(waiter);
+			waiter.enqueued(global);
+			// 排在前面的请求都在等待各自地址的令牌时,全局令牌可能仍然可用,此时立刻尝试放行
+			drainNow = global.tokens >= 1;
+			if (drainNow && drainTask != null) {
+				drainTask.cancel();
+				drainTask = null;
+			} else if (!drainNow) {
+				scheduleDrain(now, endpoint == null ? 0 : endpoint.nanosUntilToken(now));
+			}
+		}
+		if (drainNow) {
+			drain();
+		}
+		return result;
+	}
+
+	/**
+	 * 得到当前排队的连接请求数
+	 *
+	 * @return 排队的请求数
+	 */
+	public synchronized int getQueuedCount() {
+		return queue.size();
+	}
+
+	/**
+	 * 得到每个请求最多排队的时间
+	 *
+	 * @return 排队时限(毫秒)
+	 */
+	public long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	private Bucket endpointBucket(InetSocketAddress remote, long now) {
+		if (endpointPerSecond == 0) {
+			return null;
+		}
+		Bucket bucket = endpoints.get(remote);
+		if (bucket == null) {
+			if (endpoints.size() >= PURGE_THRESHOLD) {
+				purge(now);
+			}
+			bucket = new Bucket(endpointPerSecond, endpointBurst, now);
+			endpoints.put(remote, bucket);
+		}
+		return bucket;
+	}
+
+	/**
+	 * 清除已经补满且没有请求在等待的桶,它们与新建的桶没有区别
+	 */
+	private void purge(long now) {
+		for (Iterator<Bucket> it = endpoints.values().iterator(); it.hasNext();) {
+			Bucket bucket = it.next();
+			bucket.refill(now);
+			if (bucket.waiters == 0 && bucket.isFull()) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * 同时从全局桶和地址的桶中各取一个令牌
+	 */
+	private boolean tryTake(Bucket endpoint, long now) {
+		global.refill(now);
+		if (global.tokens < 1) {
+			return false;
+		}
+		if (endpoint != null) {
+			endpoint.refill(now);
+			if (endpoint.tokens < 1) {
+				return false;
+			}
+			endpoint.tokens -= 1;
+		}
+		global.tokens -= 1;
+		return true;
+	}
+
+	/**
+	 * 按先后顺序放行能取得令牌的请求,然后在下一个令牌到来时再次执行
+	 */
+	private void drain() {
+		ArrayDeque<Waiter> granted = new ArrayDeque<Waiter>();
+		synchronized (this) {
+			drainTask = null;
+			long now = System.nanoTime();
+			// 剩下的请求中最早可以取得地址令牌的时刻,在遍历时顺便得到.因全局令牌用完而提前结束时为0,即只等待全局令牌
+			long endpointNanos = Long.MAX_VALUE;
+			for (Iterator<Waiter> it = queue.iterator(); it.hasNext();) {
+				Waiter waiter = it.next();
+				if (tryTake(waiter.endpoint, now)) {
+					it.remove();
+					waiter.dequeued(global);
+					granted.add(waiter);
+				} else if (global.tokens < 1) {
+					endpointNanos = 0;
+					break;
+				} else {
+					endpointNanos = Math.min(endpointNanos, waiter.endpoint.nanosUntilToken(now));
+				}
+			}
+			if (!queue.isEmpty()) {
+				scheduleDrain(now, endpointNanos);
+			}
+		}
+		for (Waiter waiter : granted) {
+			waiter.deadline.cancel();
+			waiter.result.complete(null);
+		}
+	}
+
+	/**
+	 * 在最早可以放行下一个请求的时刻调度drain.如果已经调度的drain更晚,则提前它.必须在this的锁中调用
+	 *
+	 * @param endpointNanos
+	 *            排队的请求中最早可以取得地址令牌的时间(纳秒),0表示只等待全局令牌
+	 */
+	private void scheduleDrain(long now, long endpointNanos) {
+		long at = now + Math.max(global.nanosUntilToken(now), endpointNanos);
+		if (drainTask != null) {
+			if (drainAt - at <= 0) {
+				return;
+			}
+			drainTask.cancel();
+		}
+		drainAt = at;
+		drainTask = ConnectorHelper.getTimer().schedule(drain, Math.max(1, TimeUnit.NANOSECONDS.toMillis(at - now)),
+				0);
+	}
+
+	private void expire(Waiter waiter, long timeoutMillis) {
+		synchronized (this) {
+			if (!queue.remove(waiter)) {
+				return;
+			}
+			waiter.dequeued(global);
+		}
+		waiter.result.completeExceptionally(new SocketTimeoutException("connect queued for more than " + timeoutMillis
+				+ "ms: " + waiter.remote));
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ConnectRateLimiter(global=" + global.perSecond + "/s, endpoint=" + endpointPerSecond + "/s, queued="
+				+ queue.size() + ")";
+	}
+
+	/**
+	 * 令牌桶
+	 */
+	private static final class Bucket {
+		final double perSecond;
+		final int capacity;
+		/** 有请求等待时的容量,多出DRAIN_SLACK_MILLIS内补充的令牌 */
+		final double backlogCapacity;
+		double tokens;
+		long lastNanos;
+		/** 正在等待该桶的请求数 */
+		int waiters;
+
+		Bucket(double perSecond, int capacity, long now) {
+			this.perSecond = perSecond;
+			this.capacity = capacity;
+			this.backlogCapacity = capacity + perSecond * DRAIN_SLACK_MILLIS / 1000;
+			this.tokens = capacity;
+			this.lastNanos = now;
+		}
+
+		void refill(long now) {
+			if (now - lastNanos > 0) {
+				double max = waiters > 0 ? backlogCapacity : capacity;
+				tokens = Math.min(max, tokens + (now - lastNanos) * perSecond / 1e9);
+				lastNanos = now;
+			}
+		}
+
+		boolean isFull() {
+			return tokens >= capacity;
+		}
+
+		long nanosUntilToken(long now) {
+			refill(now);
+			return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * 1e9 / perSecond);
+		}
+	}
+
+	/**
+	 * 一个排队的连接请求
+	 */
+	private static final class Waiter {
+		final InetSocketAddress remote;
+		final Bucket endpoint;
+		final CompletableFuture<Void> result;
+		Timeout deadline;
+
+		Waiter(InetSocketAddress remote, Bucket endpoint, CompletableFuture<Void> result) {
+			this.remote = remote;
+			this.endpoint = endpoint;
+			this.result = result;
+		}
+
+		void enqueued(Bucket global) {
+			global.waiters++;
+			if (endpoint != null) {
+				endpoint.waiters++;
+			}
+		}
+
+		void dequeued(Bucket global) {
+			global.waiters--;
+			if (endpoint != null) {
+				endpoint.waiters--;
+			}
+		}
+	}
+}
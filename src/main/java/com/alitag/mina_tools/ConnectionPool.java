@@ -0,0 +1,553 @@
+package com.alitag.mina_tools;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.apache.mina.common.IoFuture;
+import org.apache.mina.common.IoFutureListener;
+import org.apache.mina.common.IoHandler;
+import org.apache.mina.common.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alitag.mina_tools.timer.Timeout;
+
+/**
+ * <p>
+ * 按远程地址划分的连接池。每个地址有独立的分区，分区内的空闲连接保存在一个无锁的双端队列中，借出与归还都只涉及该地址自己的分区，
+ * 不同地址之间没有共享的锁。
+ * </p>
+ * <p>
+ * 借出时优先使用最近归还的空闲连接(后进先出)，使冷的连接自然老化并被清理任务关闭。借出前会做轻量的检查(isConnected且未在关闭中)，
+ * 不通过的连接直接关闭并丢弃。任何连接在关闭时(无论是否被借出)都会通过其close future自动从池中移除。
+ * </p>
+ * <p>
+ * 每个地址同时被借出及正在建立的连接数不超过maxTotal；归还时如果该地址的连接总数已超过maxTotal，则直接关闭归还的连接。
+ * 清理任务运行在SessionTaskHelper的共享定时器中，负责关闭空闲过久的连接及补足minIdle。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。每个分区使用ConcurrentLinkedDeque、Semaphore及原子变量，每个连接的状态由原子变量保护。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class ConnectionPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+	private static final String KEY_ENTRY = ConnectionPool.class.getName() + ".entry";
+
+	private static final int STATE_IDLE = 0;
+	private static final int STATE_BORROWED = 1;
+	private static final int STATE_CLOSED = 2;
+
+	private final ConnectorHelper helper;
+	private final int minIdle;
+	private final int maxTotal;
+	private final long borrowTimeoutMillis;
+	private final long maxIdleMillis;
+
+	private final ConcurrentHashMap<InetSocketAddress, Partition> partitions = new ConcurrentHashMap<InetSocketAddress, Partition>();
+
+	private final Timeout evictor;
+	private volatile boolean closed;
+
+	/**
+	 * <p>
+	 * 构造函数。使用builder生成的IoConnector建立连接。
+	 * </p>
+	 * 
+	 * @param builder
+	 *            用于得到IoConnector
+	 * @param handler
+	 *            连接使用的handler
+	 * @param config
+	 *            连接池的配置
+	 * @throws IllegalArgumentException
+	 *             如果任何参数为null,或者config中的参数不合法
+	 */
+	public ConnectionPool(ConnectorBuilder builder, IoHandler handler, PoolConfig config) {
+		this(notNull(builder).createHelper(handler), config);
+	}
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 * 
+	 * @param helper
+	 *            用于建立连接
+	 * @param config
+	 *            连接池的配置
+	 * @throws IllegalArgumentException
+	 *             如果任何参数为null,或者config中的参数不合法
+	 */
+	public ConnectionPool(ConnectorHelper helper, PoolConfig config) {
+		ArgumentValidator.notNull(helper, "helper");
+		ArgumentValidator.notNull(config, "config");
+		ArgumentValidator.isTrue(config.maxTotal > 0, "config.maxTotal should be >0: " + config.maxTotal);
+		ArgumentValidator.isTrue(config.minIdle >= 0 && config.minIdle <= config.maxTotal,
+				"config.minIdle should be in [0, maxTotal]: " + config.minIdle);
+		ArgumentValidator.isTrue(config.borrowTimeoutMillis >= 0,
+				"config.borrowTimeoutMillis should be >=0: " + config.borrowTimeoutMillis);
+		ArgumentValidator.isTrue(config.evictionIntervalMillis > 0,
+				"config.evictionIntervalMillis should be >0: " + config.evictionIntervalMillis);
+		this.helper = helper;
+		this.minIdle = config.minIdle;
+		this.maxTotal = config.maxTotal;
+		this.borrowTimeoutMillis = config.borrowTimeoutMillis;
+		this.maxIdleMillis = config.maxIdleMillis;
+		this.evictor = SessionTaskHelper.getTimer().schedule(new Runnable() {
+			public void run() {
+				evict();
+			}
+		}, config.evictionIntervalMillis, config.evictionIntervalMillis);
+	}
+
+	private static ConnectorBuilder notNull(ConnectorBuilder builder) {
+		ArgumentValidator.notNull(builder, "builder");
+		return builder;
+	}
+
+	/**
+	 * 借出一个到指定地址的连接，使用默认的等待时间
+	 * 
+	 * @see #borrow(InetSocketAddress, long)
+	 */
+	public IoSession borrow(InetSocketAddress remote) throws IOException, TimeoutException, InterruptedException {
+		return borrow(remote, borrowTimeoutMillis);
+	}
+
+	/**
+	 * <p>
+	 * 借出一个到指定地址的连接。优先使用空闲连接；没有空闲连接且未达到maxTotal时建立新连接；否则等待其他连接归还。
+	 * 使用完毕后必须调用{@link #release(IoSession)}归还或{@link #invalidate(IoSession)}作废。
+	 * </p>
+	 * 
+	 * @param remote
+	 *            远程地址
+	 * @param timeoutMillis
+	 *            最长等待时间(毫秒)，包括建立新连接的时间
+	 * @return 借出的连接
+	 * @throws IllegalArgumentException
+	 *             如果remote为null,或者timeoutMillis<0
+	 * @throws IllegalStateException
+	 *             如果连接池已经关闭
+	 * @throws IOException
+	 *             如果建立新连接失败
+	 * @throws TimeoutException
+	 *             如果在指定的时间内没有得到连接
+	 * @throws InterruptedException
+	 *             如果等待时被中断
+	 */
+	public IoSession borrow(InetSocketAddress remote, long timeoutMillis)
+			throws IOException, TimeoutException, InterruptedException {
+		ArgumentValidator.notNull(remote, "remote");
+		ArgumentValidator.isTrue(timeoutMillis >= 0, "timeoutMillis should be >=0: " + timeoutMillis);
+		checkOpen();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		Partition partition = partitionOf(remote);
+		if (!partition.permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+			throw new TimeoutException("no connection available for " + remote + " in " + timeoutMillis + "ms");
+		}
+		boolean success = false;
+		try {
+			IoSession session = partition.pollIdle();
+			if (session == null) {
+				session = connect(partition, deadline);
+			}
+			success = true;
+			return session;
+		} finally {
+			if (!success) {
+				partition.permits.release();
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * 归还借出的连接。如果连接已经关闭、连接池已经关闭或者该地址的连接数已超过maxTotal，则关闭该连接。
+	 * 对同一个连接重复归还将被忽略。
+	 * </p>
+	 * 
+	 * @param session
+	 *            借出的连接
+	 * @throws IllegalArgumentException
+	 *             如果session为null或者不是由该连接池借出的
+	 */
+	public void release(IoSession session) {
+		Entry entry = entryOf(session);
+		if (!entry.borrowed.compareAndSet(true, false)) {
+			logger.warn("session is not borrowed, ignored: " + session);
+			return;
+		}
+		Partition partition = entry.partition;
+		if (closed || !isUsable(session) || partition.live.get() > maxTotal) {
+			entry.close();
+		} else {
+			entry.lastUsed = System.nanoTime();
+			if (entry.state.compareAndSet(STATE_BORROWED, STATE_IDLE)) {
+				addIdle(entry, true);
+			}
+		}
+		partition.permits.release();
+	}
+
+	/**
+	 * <p>
+	 * 作废借出的连接。该连接将被关闭且不再放回池中，通常在使用过程中发现连接出错时调用。对同一个连接重复作废将被忽略。
+	 * </p>
+	 * 
+	 * @param session
+	 *            借出的连接
+	 * @throws IllegalArgumentException
+	 *             如果session为null或者不是由该连接池借出的
+	 */
+	public void invalidate(IoSession session) {
+		Entry entry = entryOf(session);
+		if (!entry.borrowed.compareAndSet(true, false)) {
+			logger.warn("session is not borrowed, ignored: " + session);
+			return;
+		}
+		entry.close();
+		entry.partition.permits.release();
+	}
+
+	/**
+	 * <p>
+	 * 把一个在池外建立的连接作为空闲连接放入池中，比如由ConnectionWarmer预热好的连接。
+	 * 如果连接池已经关闭、连接不可用或者该地址的连接数已经达到maxTotal，则不放入。
+	 * </p>
+	 * 
+	 * @param remote
+	 *            连接所属的远程地址，即借出时使用的地址
+	 * @param session
+	 *            要放入的连接
+	 * @return 是否放入了池中，未放入的连接由调用者处理
+	 * @throws IllegalArgumentException
+	 *             如果任何参数为null
+	 */
+	public boolean offer(InetSocketAddress remote, IoSession session) {
+		ArgumentValidator.notNull(remote, "remote");
+		ArgumentValidator.notNull(session, "session");
+		if (closed || !isUsable(session)) {
+			return false;
+		}
+		Partition partition = partitionOf(remote);
+		int current;
+		do {
+			current = partition.live.get();
+			if (current >= maxTotal) {
+				return false;
+			}
+		} while (!partition.live.compareAndSet(current, current + 1));
+		addIdle(partition.attach(session, STATE_IDLE), false);
+		return true;
+	}
+
+	/**
+	 * 得到到指定地址的空闲连接数
+	 * 
+	 * @param remote
+	 *            远程地址
+	 * @return 空闲连接数
+	 */
+	public int getIdleCount(InetSocketAddress remote) {
+		Partition partition = partitions.get(remote);
+		return partition == null ? 0 : partition.idle.size();
+	}
+
+	/**
+	 * 得到到指定地址的连接总数，包括空闲的、已借出的及正在建立的
+	 * 
+	 * @param remote
+	 *            远程地址
+	 * @return 连接总数
+	 */
+	public int getTotalCount(InetSocketAddress remote) {
+		Partition partition = partitions.get(remote);
+		return partition == null ? 0 : partition.live.get();
+	}
+
+	/**
+	 * <p>
+	 * 关闭连接池。停止清理任务并关闭所有空闲连接；之后归还的连接也将被关闭。已借出的连接不受影响。
+	 * </p>
+	 */
+	public void close() {
+		closed = true;
+		evictor.cancel();
+		for (Partition partition : partitions.values()) {
+			Entry entry;
+			while ((entry = partition.idle.pollFirst()) != null) {
+				if (entry.state.compareAndSet(STATE_IDLE, STATE_CLOSED)) {
+					entry.session.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 把空闲连接放入所在分区的空闲队列.放入之后再检查一次连接池是否已经关闭:如果close()在放入之前已经清空了空闲队列,
+	 * 则由这里取回并关闭该连接,否则它会一直留在已经关闭的连接池中
+	 * 
+	 * @param first
+	 *            是否放在队首(最近使用的一端)
+	 */
+	private void addIdle(Entry entry, boolean first) {
+		if (first) {
+			entry.partition.idle.offerFirst(entry);
+		} else {
+			entry.partition.idle.offerLast(entry);
+		}
+		if (closed && entry.state.compareAndSet(STATE_IDLE, STATE_CLOSED)) {
+			entry.partition.idle.remove(entry);
+			entry.session.close();
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("pool has been closed");
+		}
+	}
+
+	private Partition partitionOf(InetSocketAddress remote) {
+		Partition partition = partitions.get(remote);
+		if (partition == null) {
+			Partition created = new Partition(remote);
+			partition = partitions.putIfAbsent(remote, created);
+			if (partition == null) {
+				partition = created;
+			}
+		}
+		return partition;
+	}
+
+	private Entry entryOf(IoSession session) {
+		ArgumentValidator.notNull(session, "session");
+		Entry entry = (Entry) session.getAttribute(KEY_ENTRY);
+		ArgumentValidator.isTrue(entry != null && entry.pool() == this, "session is not from this pool: " + session);
+		return entry;
+	}
+
+	private static boolean isUsable(IoSession session) {
+		return session.isConnected() && !session.isClosing();
+	}
+
+	/**
+	 * 建立一个新连接并以借出的状态加入池中
+	 */
+	private IoSession connect(Partition partition, long deadline)
+			throws IOException, TimeoutException, InterruptedException {
+		partition.live.incrementAndGet();
+		CompletableFuture<IoSession> future = helper.connectAsync(partition.remote);
+		try {
+			long remaining = Math.max(0, deadline - System.nanoTime());
+			IoSession session = future.get(remaining, TimeUnit.NANOSECONDS);
+			Entry entry = partition.attach(session, STATE_BORROWED);
+			if (closed) {
+				entry.close();
+				throw new IllegalStateException("pool has been closed");
+			}
+			entry.borrowed.set(true);
+			return session;
+		} catch (ExecutionException e) {
+			partition.live.decrementAndGet();
+			Throwable cause = e.getCause();
+			throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+		} catch (TimeoutException e) {
+			// 超时之后才建立的连接直接关闭
+			future.whenComplete(closeLate(partition));
+			throw new TimeoutException("failed to connect to " + partition.remote + " in time");
+		} catch (InterruptedException e) {
+			future.whenComplete(closeLate(partition));
+			throw e;
+		}
+	}
+
+	private static BiConsumer<IoSession, Throwable> closeLate(final Partition partition) {
+		return new BiConsumer<IoSession, Throwable>() {
+			public void accept(IoSession session, Throwable cause) {
+				partition.live.decrementAndGet();
+				if (session != null) {
+					session.close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * 由清理任务定期调用：关闭空闲过久的连接，补足minIdle
+	 */
+	private void evict() {
+		if (closed) {
+			return;
+		}
+		long now = System.nanoTime();
+		for (Partition partition : partitions.values()) {
+			try {
+				if (maxIdleMillis > 0) {
+					partition.evictIdle(now - TimeUnit.MILLISECONDS.toNanos(maxIdleMillis));
+				}
+				if (minIdle > 0) {
+					partition.fillIdle();
+				}
+			} catch (Throwable t) {
+				logger.warn("failed to evict idle connections of " + partition.remote, t);
+			}
+		}
+	}
+
+	/**
+	 * 一个地址的分区
+	 */
+	private final class Partition {
+		final InetSocketAddress remote;
+
+		/** 空闲连接,队首为最近归还的 */
+		final ConcurrentLinkedDeque<Entry> idle = new ConcurrentLinkedDeque<Entry>();
+
+		/** 限制同时借出及正在建立的连接数 */
+		final Semaphore permits = new Semaphore(maxTotal, true);
+
+		/** 连接总数,包括正在建立的 */
+		final AtomicInteger live = new AtomicInteger();
+
+		/** 为补足minIdle而正在建立、尚未放入空闲队列的连接数 */
+		final AtomicInteger filling = new AtomicInteger();
+
+		Partition(InetSocketAddress remote) {
+			this.remote = remote;
+		}
+
+		/**
+		 * 取出一个可用的空闲连接并标记为借出.不可用的连接直接关闭
+		 */
+		IoSession pollIdle() {
+			Entry entry;
+			while ((entry = idle.pollFirst()) != null) {
+				if (!entry.state.compareAndSet(STATE_IDLE, STATE_BORROWED)) {
+					continue;
+				}
+				if (isUsable(entry.session)) {
+					entry.borrowed.set(true);
+					return entry.session;
+				}
+				entry.close();
+			}
+			return null;
+		}
+
+		Entry attach(IoSession session, int state) {
+			Entry entry = new Entry(this, session, state);
+			session.setAttribute(KEY_ENTRY, entry);
+			session.getCloseFuture().addListener(entry);
+			return entry;
+		}
+
+		/**
+		 * 从队尾(最久未用的一端)开始关闭空闲过久的连接,直到只剩minIdle个
+		 */
+		void evictIdle(long idleBefore) {
+			int excess = idle.size() - minIdle;
+			Iterator<Entry> it = idle.descendingIterator();
+			while (excess > 0 && it.hasNext()) {
+				Entry entry = it.next();
+				if (entry.lastUsed - idleBefore > 0) {
+					break;
+				}
+				if (entry.state.compareAndSet(STATE_IDLE, STATE_CLOSED)) {
+					idle.remove(entry);
+					entry.session.close();
+					excess--;
+				} else if (entry.state.get() == STATE_CLOSED) {
+					// 归还时恰好被关闭的连接
+					idle.remove(entry);
+				}
+			}
+		}
+
+		/**
+		 * 在后台建立新连接,补足minIdle.上一轮尚未建立完的连接也计入,避免连接较慢时每一轮都重复补充
+		 */
+		void fillIdle() {
+			int missing = minIdle - idle.size() - filling.get();
+			for (int i = 0; i < missing; i++) {
+				int current = live.get();
+				if (current >= maxTotal || !live.compareAndSet(current, current + 1)) {
+					return;
+				}
+				filling.incrementAndGet();
+				helper.connectAsync(remote).whenComplete(new BiConsumer<IoSession, Throwable>() {
+					public void accept(IoSession session, Throwable cause) {
+						try {
+							if (session == null) {
+								live.decrementAndGet();
+								logger.warn("failed to fill idle connection to " + remote + ": " + cause);
+								return;
+							}
+							addIdle(attach(session, STATE_IDLE), false);
+						} finally {
+							// 先放入空闲队列再减少计数,并发的fillIdle至多少补而不会多补
+							filling.decrementAndGet();
+						}
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * 池中的一个连接.连接关闭时从所在的分区中移除
+	 */
+	private final class Entry implements IoFutureListener {
+		final Partition partition;
+		final IoSession session;
+		final AtomicInteger state;
+
+		/** 是否被借出且尚未归还或作废.借出者持有分区的一个permit */
+		final AtomicBoolean borrowed = new AtomicBoolean();
+
+		volatile long lastUsed = System.nanoTime();
+
+		Entry(Partition partition, IoSession session, int state) {
+			this.partition = partition;
+			this.session = session;
+			this.state = new AtomicInteger(state);
+		}
+
+		ConnectionPool pool() {
+			return ConnectionPool.this;
+		}
+
+		/**
+		 * 关闭一个不在空闲队列中的连接
+		 */
+		void close() {
+			state.set(STATE_CLOSED);
+			session.close();
+		}
+
+		public void operationComplete(IoFuture future) {
+			if (state.getAndSet(STATE_CLOSED) == STATE_IDLE) {
+				partition.idle.remove(this);
+			}
+			partition.live.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,307 @@
+package com.alitag.mina_tools;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.apache.mina.common.IoFuture;
+import org.apache.mina.common.IoFutureListener;
+import org.apache.mina.common.IoSession;
+import org.apache.mina.common.WriteFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alitag.mina_tools.timer.Timeout;
+
+/**
+ * <p>
+ * 连接预热器。在启动时并行地向每个地址建立指定数量的连接，并可以在每个连接上发送若干条预热消息，使编码器、LoggingFilter等
+ * 写路径上的类被加载并被JIT编译。全部完成后返回的CompletableFuture结束，调用者可以据此推迟接收业务流量。
+ * </p>
+ * <p>
+ * 预热好的连接或者在结果中交给调用者，或者在设置了连接池时放入连接池(超出连接池上限的连接被关闭)。
+ * 预热消息没有写出的连接被关闭并计为失败。总时限同样约束预热消息的发送：如果对方不读取数据，到期时仍未写完的连接被关闭并计为失败，
+ * 因此返回的CompletableFuture总会在总时限之后不久完成。
+ * </p>
+ * <p>
+ * 线程安全：该类非线程安全，它的设置方法应在调用{@link #warm(Collection)}之前由同一个线程调用。每次预热本身是线程安全的。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class ConnectionWarmer {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConnectionWarmer.class);
+
+	private final ConnectorHelper helper;
+
+	private int connectionsPerEndpoint = 1;
+	private int maxInFlight = 16;
+	private long timeoutMillis = 30000;
+	private Object syntheticMessage;
+	private int syntheticCount;
+	private ConnectionPool pool;
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param helper
+	 *            用于建立连接
+	 * @throws IllegalArgumentException
+	 *             如果helper为null
+	 */
+	public ConnectionWarmer(ConnectorHelper helper) {
+		ArgumentValidator.notNull(helper, "helper");
+		this.helper = helper;
+	}
+
+	/**
+	 * 设置每个地址建立的连接数,默认为1
+	 */
+	public ConnectionWarmer setConnectionsPerEndpoint(int connectionsPerEndpoint) {
+		ArgumentValidator.isTrue(connectionsPerEndpoint > 0, "connectionsPerEndpoint should be >0: "
+				+ connectionsPerEndpoint);
+		this.connectionsPerEndpoint = connectionsPerEndpoint;
+		return this;
+	}
+
+	/**
+	 * 设置同一时刻最多进行的连接数,默认为16
+	 */
+	public ConnectionWarmer setMaxInFlight(int maxInFlight) {
+		ArgumentValidator.isTrue(maxInFlight > 0, "maxInFlight should be >0: " + maxInFlight);
+		this.maxInFlight = maxInFlight;
+		return this;
+	}
+
+	/**
+	 * 设置所有连接共享的总时限(毫秒),默认为30000
+	 */
+	public ConnectionWarmer setTimeoutMillis(long timeoutMillis) {
+		ArgumentValidator.isTrue(timeoutMillis >= 0, "timeoutMillis should be >=0: " + timeoutMillis);
+		this.timeoutMillis = timeoutMillis;
+		return this;
+	}
+
+	/**
+	 * 设置在每个连接上发送的预热消息.消息会经过整个filter chain(包括编码器及LoggingFilter)发送给对方,因此对方必须能够接受它,
+	 * 比如使用心跳消息.默认不发送
+	 *
+	 * @param message
+	 *            预热消息
+	 * @param count
+	 *            每个连接上发送的次数
+	 */
+	public ConnectionWarmer setSyntheticMessage(Object message, int count) {
+		ArgumentValidator.notNull(message, "message");
+		ArgumentValidator.isTrue(count >= 0, "count should be >=0: " + count);
+		this.syntheticMessage = message;
+		this.syntheticCount = count;
+		return this;
+	}
+
+	/**
+	 * 设置接收预热好的连接的连接池.null表示把连接交给调用者
+	 */
+	public ConnectionWarmer setPool(ConnectionPool pool) {
+		this.pool = pool;
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * 开始预热。该方法不会阻塞。
+	 * </p>
+	 *
+	 * @param endpoints
+	 *            要预热的地址
+	 * @return 预热的结果，所有连接都结束(成功、失败或超过总时限)后完成
+	 * @throws IllegalArgumentException
+	 *             如果endpoints为null或包含null
+	 */
+	public CompletableFuture<WarmupResult> warm(Collection<InetSocketAddress> endpoints) {
+		ArgumentValidator.notNull(endpoints, "endpoints");
+		List<InetSocketAddress> units = new ArrayList<InetSocketAddress>(endpoints.size() * connectionsPerEndpoint);
+		for (InetSocketAddress endpoint : endpoints) {
+			ArgumentValidator.notNull(endpoint, "endpoint");
+			for (int i = 0; i < connectionsPerEndpoint; i++) {
+				units.add(endpoint);
+			}
+		}
+		Warmup warmup = new Warmup(units);
+		warmup.start();
+		return warmup.result;
+	}
+
+	/**
+	 * 一次预热
+	 */
+	private final class Warmup {
+		final CompletableFuture<WarmupResult> result = new CompletableFuture<WarmupResult>();
+		final ConcurrentLinkedQueue<InetSocketAddress> remaining;
+		final ConnectBudget budget = new ConnectBudget(timeoutMillis);
+		final ConnectionPool targetPool = pool;
+		final Object message = syntheticMessage;
+		final int messageCount = message == null ? 0 : syntheticCount;
+		final long startNanos = System.nanoTime();
+
+		final List<IoSession> sessions = new ArrayList<IoSession>();
+		final AtomicInteger pending;
+		final AtomicInteger connected = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+
+		/** 尚未处理的开始连接的请求数.从0变为非0的线程负责在循环中处理所有的请求,连接同步失败时不会递归 */
+		final AtomicInteger pendingLaunches = new AtomicInteger();
+
+		Warmup(List<InetSocketAddress> units) {
+			this.remaining = new ConcurrentLinkedQueue<InetSocketAddress>(units);
+			this.pending = new AtomicInteger(units.size());
+		}
+
+		void start() {
+			if (pending.get() == 0) {
+				finish();
+				return;
+			}
+			launch(Math.min(maxInFlight, remaining.size()));
+		}
+
+		/**
+		 * 请求开始count个连接.如果当前线程已经在循环中开始连接,只增加计数,由外层的循环处理
+		 */
+		void launch(int count) {
+			if (count <= 0 || pendingLaunches.getAndAdd(count) != 0) {
+				return;
+			}
+			do {
+				launchNext();
+			} while (pendingLaunches.decrementAndGet() != 0);
+		}
+
+		void launchNext() {
+			final InetSocketAddress address = remaining.poll();
+			if (address == null) {
+				return;
+			}
+			helper.connectAsync(address, budget).whenComplete(new BiConsumer<IoSession, Throwable>() {
+				public void accept(IoSession session, Throwable cause) {
+					if (session == null) {
+						logger.warn("failed to warm up connection to " + address + ": " + cause);
+						done(address, null);
+					} else if (messageCount == 0) {
+						done(address, session);
+					} else {
+						new Synthetic(address, session).start();
+					}
+				}
+			});
+		}
+
+		/**
+		 * 一个连接上的预热消息.消息全部写出与总时限到期中先到的一方结束该连接的预热
+		 */
+		final class Synthetic implements Runnable {
+			final InetSocketAddress address;
+			final IoSession session;
+			final AtomicBoolean finished = new AtomicBoolean();
+			volatile Timeout deadline;
+
+			Synthetic(InetSocketAddress address, IoSession session) {
+				this.address = address;
+				this.session = session;
+			}
+
+			void start() {
+				deadline = ConnectorHelper.getTimer().schedule(this, budget.remainingMillis(), 0);
+				send(messageCount);
+			}
+
+			/**
+			 * 依次发送预热消息,每条消息发送完毕后再发送下一条
+			 */
+			void send(final int left) {
+				if (left == 0 || session.isClosing()) {
+					complete(true);
+					return;
+				}
+				session.write(message).addListener(new IoFutureListener() {
+					public void operationComplete(IoFuture future) {
+						if (((WriteFuture) future).isWritten()) {
+							send(left - 1);
+						} else {
+							logger.warn("failed to write synthetic message to " + address + ", close " + session);
+							complete(false);
+						}
+					}
+				});
+			}
+
+			/**
+			 * 总时限到期
+			 */
+			public void run() {
+				if (!finished.get()) {
+					logger.warn("synthetic messages to " + address + " not written in time, close " + session);
+					complete(false);
+				}
+			}
+
+			void complete(boolean written) {
+				if (!finished.compareAndSet(false, true)) {
+					return;
+				}
+				Timeout t = deadline;
+				if (t != null) {
+					t.cancel();
+				}
+				if (written) {
+					done(address, session);
+				} else {
+					session.close();
+					done(address, null);
+				}
+			}
+		}
+
+		void done(InetSocketAddress address, IoSession session) {
+			if (session != null && session.isConnected() && !session.isClosing()) {
+				connected.incrementAndGet();
+				if (targetPool == null) {
+					synchronized (sessions) {
+						sessions.add(session);
+					}
+				} else if (!targetPool.offer(address, session)) {
+					session.close();
+				}
+			} else {
+				failed.incrementAndGet();
+			}
+			if (pending.decrementAndGet() == 0) {
+				finish();
+			} else {
+				launch(1);
+			}
+		}
+
+		void finish() {
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			WarmupResult warmupResult;
+			synchronized (sessions) {
+				warmupResult = new WarmupResult(new ArrayList<IoSession>(sessions), connected.get(), failed.get(),
+						elapsed);
+			}
+			logger.info("warm up finished. " + warmupResult);
+			result.complete(warmupResult);
+		}
+	}
+}
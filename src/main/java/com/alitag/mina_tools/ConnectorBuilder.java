@@ -5,12 +5,14 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.mina.common.IoConnector;
+import org.apache.mina.common.IoHandler;
 import org.apache.mina.common.ThreadModel;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.filter.executor.ExecutorFilter;
 import org.apache.mina.transport.socket.nio.SocketConnector;
 import org.apache.mina.transport.socket.nio.SocketConnectorConfig;
 
+import com.alitag.mina_tools.filters.ActivityFilter;
 import com.alitag.mina_tools.filters.LoggingFilter;
 
 /**
@@ -43,10 +45,18 @@ public class ConnectorBuilder {
 	/** 用于持有线程池. NOTE:这里说是线程"池",但是目前只允许它里面有一条线程运行. */
 	private ThreadPoolExecutor threadPool;
 
+	/** 申请了处理线程的IoProcessorGroup,没有使用时为null */
+	private IoProcessorGroup processorGroup;
+
+	/** 向processorGroup申请到的处理线程数 */
+	private int allocatedProcessors;
+
 	/** 用于唯一确定codecFilter的key */
 	public static final String FILTER_CODEC = AcceptorBuilder.class.getSimpleName() + ".codec";
 	/** 用于唯一确定logginFilter的key */
 	public static final String FILTER_LOGGING = AcceptorBuilder.class.getSimpleName() + ".logging";
+	/** 用于唯一确定activityFilter的key */
+	public static final String FILTER_ACTIVITY = AcceptorBuilder.class.getSimpleName() + ".activity";
 	/** 用于唯一确定threadPool的key */
 	public static final String FILTER_THREADPOOL = AcceptorBuilder.class.getSimpleName() + ".threadPool";
 
@@ -84,7 +94,13 @@ public class ConnectorBuilder {
 	 */
 	public synchronized IoConnector getConnector() {
 		if (connector == null) {
-			connector = new SocketConnector();
+			if (config.ioProcessorGroup != null) {
+				processorGroup = config.ioProcessorGroup;
+				allocatedProcessors = processorGroup.allocate(config.ioProcessorCount);
+				connector = new SocketConnector(allocatedProcessors, processorGroup.getExecutor());
+			} else {
+				connector = new SocketConnector();
+			}
 			connector.setWorkerTimeout(0);
 
 			SocketConnectorConfig serviceConfig = connector.getDefaultConfig();
@@ -98,7 +114,12 @@ public class ConnectorBuilder {
 			serviceConfig.getSessionConfig().setSoLinger(config.socket_soLinger);
 
 			// 多少秒没有连上服务器则返回
-			serviceConfig.setConnectTimeout(config.connectTimeout);
+			if (config.connectTimeoutMillis > 0) {
+				// mina只支持秒,向上取整作为兜底,毫秒级的超时由ConnectorHelper实现
+				serviceConfig.setConnectTimeout((config.connectTimeoutMillis + 999) / 1000);
+			} else {
+				serviceConfig.setConnectTimeout(config.connectTimeout);
+			}
 
 			serviceConfig.setThreadModel(ThreadModel.MANUAL);
 
@@ -110,6 +131,11 @@ public class ConnectorBuilder {
 				serviceConfig.getFilterChain().addLast(FILTER_LOGGING, createLoggingFilter());
 			}
 
+			// 是否记录session的活动时间,用于空闲自动断开
+			if (config.trackActivity) {
+				serviceConfig.getFilterChain().addLast(FILTER_ACTIVITY, new ActivityFilter());
+			}
+
 			// 是否启用线程池
 			if (config.threadPool) {
 				// NOTE: maxPoolSize由Integer.MAX_VALUE改为1
@@ -127,6 +153,23 @@ public class ConnectorBuilder {
 		return connector;
 	}
 
+	/**
+	 * <p>
+	 * 得到一个使用生成的IoConnector的ConnectorHelper。如果设置了config.connectTimeoutMillis，该helper会以毫秒级的精度执行连接超时。
+	 * </p>
+	 * 
+	 * @param handler
+	 *            连接使用的handler
+	 * @return ConnectorHelper对象
+	 */
+	public ConnectorHelper createHelper(IoHandler handler) {
+		ConnectorHelper helper = new ConnectorHelper(getConnector(), handler);
+		if (config.connectTimeoutMillis > 0) {
+			helper.setConnectTimeoutMillis(config.connectTimeoutMillis);
+		}
+		return helper;
+	}
+
 	/**
 	 * <p>
 	 * 关闭线程池。如果没有启用或者已经关闭，不会有任何影响。
@@ -153,6 +196,23 @@ public class ConnectorBuilder {
 		}
 	}
 
+	/**
+	 * <p>
+	 * 释放生成的IoConnector：关闭线程池，并把申请的处理线程数归还给config.ioProcessorGroup。应在它的所有session都关闭之后调用。
+	 * 此后再调用{@link #getConnector()}会生成一个新的IoConnector。
+	 * </p>
+	 */
+	public synchronized void dispose() {
+		shutdownThreadPool();
+		threadPool = null;
+		if (processorGroup != null) {
+			processorGroup.release(allocatedProcessors);
+			processorGroup = null;
+			allocatedProcessors = 0;
+		}
+		connector = null;
+	}
+
 	/**
 	 * 检查线程池是否被关闭。如果线程池没有开启或者已经关闭，则返回true。
 	 * 
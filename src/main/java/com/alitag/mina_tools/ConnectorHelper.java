@@ -1,28 +1,106 @@
 package com.alitag.mina_tools;
 
+import java.net.BindException;
 import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.apache.mina.common.ConnectFuture;
 import org.apache.mina.common.IoConnector;
+import org.apache.mina.common.IoFuture;
+import org.apache.mina.common.IoFutureListener;
 import org.apache.mina.common.IoHandler;
 import org.apache.mina.common.IoSession;
+import org.apache.mina.common.RuntimeIOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alitag.mina_tools.timer.HashedWheelTimer;
+import com.alitag.mina_tools.timer.LatencyHistogram;
+import com.alitag.mina_tools.timer.TaskTimer;
+import com.alitag.mina_tools.timer.Timeout;
+
 public class ConnectorHelper {
 
 	private static final Logger logger = LoggerFactory.getLogger(ConnectorHelper.class);
 
+	/** 连接相关的定时器默认的tick时长(毫秒).连接的超时及对冲的延时通常只有几十毫秒,因此比session任务的定时器精细 */
+	public static final long DEFAULT_TIMER_TICK_MILLIS = 10;
+
+	/** 所有ConnectorHelper共享的定时器,用于连接超时、对冲等连接相关的定时任务 */
+	private static volatile TaskTimer timer;
+
+	/** 解析出多个地址时依次尝试每个地址,不对冲 */
+	private static final HedgePolicy FAILOVER = HedgePolicy.fixed(0, 0);
+
 	private IoConnector connector;
 	private IoHandler handler;
 
 	private InetSocketAddress localPort;
 
+	private volatile LocalBindingAllocator localBindings;
+
+	private volatile AddressResolver resolver;
+
+	private volatile CircuitBreakerRegistry circuitBreakers;
+
+	private volatile ConnectRateLimiter rateLimiter;
+
+	/** 每次连接的超时时间(毫秒),0表示只使用mina中设置的以秒为单位的超时 */
+	private volatile long connectTimeoutMillis;
+
+	/** 成功的连接的耗时(毫秒) */
+	private final LatencyHistogram connectLatency = new LatencyHistogram();
+
 	public ConnectorHelper(IoConnector connector, IoHandler handler) {
 		this.connector = connector;
 		this.handler = handler;
 	}
 
+	/**
+	 * 得到所有ConnectorHelper共享的定时器。如果尚未设置，将创建一个tick为{@link #DEFAULT_TIMER_TICK_MILLIS}毫秒的{@link HashedWheelTimer}
+	 * 
+	 * @return 共享的定时器
+	 */
+	public static TaskTimer getTimer() {
+		TaskTimer t = timer;
+		if (t == null) {
+			synchronized (ConnectorHelper.class) {
+				t = timer;
+				if (t == null) {
+					t = new HashedWheelTimer(ConnectorHelper.class.getSimpleName(), DEFAULT_TIMER_TICK_MILLIS,
+							HashedWheelTimer.DEFAULT_TICKS_PER_WHEEL);
+					timer = t;
+				}
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * 设置所有ConnectorHelper共享的定时器。已经调度的任务仍由原来的定时器执行，原定时器不会被停止
+	 * 
+	 * @param newTimer
+	 *            新的定时器
+	 * @throws IllegalArgumentException
+	 *             如果newTimer为null
+	 */
+	public static void setTimer(TaskTimer newTimer) {
+		ArgumentValidator.notNull(newTimer, "newTimer");
+		synchronized (ConnectorHelper.class) {
+			timer = newTimer;
+		}
+	}
+
 	/**
 	 * 连接到指定的ip及端口
 	 */
@@ -30,26 +108,459 @@ public class ConnectorHelper {
 		String remoteIpPort = "[/" + remoteIp + ": " + remotePort + "] ";
 
 		try {
-			ConnectFuture future = null;
-			if (this.localPort != null) {
-				logger.info(remoteIpPort + "Connecting...(local port: " + this.localPort + ")");
-				future = this.connector.connect(new InetSocketAddress(remoteIp, remotePort), this.localPort,
-						this.handler);
-			} else {
-				logger.info(remoteIpPort + "Connecting...");
-				future = this.connector.connect(new InetSocketAddress(remoteIp, remotePort), this.handler);
+			return connectAsync(serverName, remoteIp, remotePort).get();
+		} catch (ExecutionException e) {
+			logger.warn(remoteIpPort + e.getCause().toString());
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn(remoteIpPort + e.toString());
+			return null;
+		} catch (Exception e) {
+			logger.warn(remoteIpPort + e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * <p>
+	 * 异步地连接到指定的ip及端口。该方法不会阻塞调用者：返回的CompletableFuture在mina的连接回调中完成，
+	 * 连接成功时得到对应的session，失败时以真实的异常(如ConnectException)结束。
+	 * </p>
+	 * <p>
+	 * 如果设置了AddressResolver，remoteIp由它解析(只有第一次解析会在后台线程中等待，之后使用缓存)，
+	 * 解析出多个地址时依次尝试每个地址，直到连上为止。
+	 * </p>
+	 * <p>
+	 * 如果设置了断路器且对方地址的断路器处于打开状态，则不发起连接，直接以CircuitOpenException结束。
+	 * </p>
+	 * 
+	 * @param serverName
+	 *            服务器的名字，仅用于日志
+	 * @param remoteIp
+	 *            对方的ip或主机名
+	 * @param remotePort
+	 *            对方的端口
+	 * @return 连接的结果
+	 * @throws IllegalArgumentException
+	 *             如果remoteIp为null或为空
+	 */
+	public CompletableFuture<IoSession> connectAsync(final String serverName, final String remoteIp,
+			final int remotePort) {
+		ArgumentValidator.notNullOrTrimmedEmpty(remoteIp, "remoteIp");
+		AddressResolver r = this.resolver;
+		if (r == null) {
+			return connectAsync(new InetSocketAddress(remoteIp, remotePort));
+		}
+		return r.resolveAsync(remoteIp, remotePort).thenCompose(
+				new Function<List<InetSocketAddress>, CompletableFuture<IoSession>>() {
+					public CompletableFuture<IoSession> apply(List<InetSocketAddress> addresses) {
+						if (addresses.size() == 1) {
+							return connectAsync(addresses.get(0));
+						}
+						return connectHedged(addresses, FAILOVER);
+					}
+				});
+	}
+
+	/**
+	 * <p>
+	 * 异步地连接到指定的地址。
+	 * </p>
+	 * 
+	 * @param remote
+	 *            对方的地址
+	 * @return 连接的结果
+	 * @throws IllegalArgumentException
+	 *             如果remote为null
+	 * @see #connectAsync(String, String, int)
+	 */
+	public CompletableFuture<IoSession> connectAsync(final InetSocketAddress remote) {
+		return connectAsync(remote, null);
+	}
+
+	/**
+	 * <p>
+	 * 在总时限内异步地连接到指定的地址。本次连接的超时时间为{@link #getConnectTimeoutMillis()}与budget剩余时限中较小的一个，
+	 * 超时后返回的CompletableFuture以SocketTimeoutException结束，此后才建立的session会被关闭。
+	 * 如果budget的时限已经用完，则不发起连接，直接以SocketTimeoutException结束。
+	 * </p>
+	 * <p>
+	 * 如果设置了{@link #setRateLimiter(ConnectRateLimiter)}，则先在限制器中排队等待许可，排队的时间同样计入budget。
+	 * 断路器在排队之前检查，断路器打开时连接立刻失败，不占用限制器的许可。
+	 * </p>
+	 * 
+	 * @param remote
+	 *            对方的地址
+	 * @param budget
+	 *            总时限，可以在多次重试之间共享。null表示不限制
+	 * @return 连接的结果
+	 * @throws IllegalArgumentException
+	 *             如果remote为null
+	 * @see #connectAsync(String, String, int)
+	 */
+	public CompletableFuture<IoSession> connectAsync(final InetSocketAddress remote, final ConnectBudget budget) {
+		ArgumentValidator.notNull(remote, "remote");
+		final CompletableFuture<IoSession> result = new CompletableFuture<IoSession>();
+		// 先检查断路器,打开时不必排队
+		CircuitBreakerRegistry registry = this.circuitBreakers;
+		final CircuitBreaker breaker = registry == null ? null : registry.get(remote);
+		if (breaker != null && !breaker.tryAcquire()) {
+			result.completeExceptionally(new CircuitOpenException("circuit open: " + remote));
+			return result;
+		}
+		ConnectRateLimiter limiter = this.rateLimiter;
+		if (limiter == null) {
+			doConnect(remote, budget, breaker, result);
+			return result;
+		}
+		// 排队的时间计入总时限
+		long waitMillis = limiter.getMaxWaitMillis();
+		if (budget != null) {
+			waitMillis = Math.min(waitMillis, budget.remainingMillis());
+			if (waitMillis == 0) {
+				release(breaker);
+				result.completeExceptionally(new SocketTimeoutException("connect budget exhausted: " + remote));
+				return result;
 			}
+		}
+		limiter.acquire(remote, waitMillis).whenComplete(new BiConsumer<Void, Throwable>() {
+			public void accept(Void ignored, Throwable cause) {
+				if (cause != null) {
+					release(breaker);
+					result.completeExceptionally(cause);
+				} else {
+					doConnect(remote, budget, breaker, result);
+				}
+			}
+		});
+		return result;
+	}
 
-			future.join();
-			IoSession session = future.getSession();
+	/**
+	 * 发起一次连接,由mina的回调与超时任务中先到的一方完成result.breaker的许可已经取得
+	 */
+	private void doConnect(final InetSocketAddress remote, ConnectBudget budget, final CircuitBreaker breaker,
+			final CompletableFuture<IoSession> result) {
+		long timeoutMillis = this.connectTimeoutMillis;
+		if (budget != null) {
+			long remaining = budget.remainingMillis();
+			if (remaining == 0) {
+				release(breaker);
+				result.completeExceptionally(new SocketTimeoutException("connect budget exhausted: " + remote));
+				return;
+			}
+			timeoutMillis = timeoutMillis > 0 ? Math.min(timeoutMillis, remaining) : remaining;
+		}
+		// 本地地址用完是本机的问题,不计入对方地址的断路器
+		final LocalBindingAllocator allocator = this.localBindings;
+		final InetSocketAddress local = allocator == null ? null : allocator.allocate(remote);
+		if (allocator != null && local == null) {
+			release(breaker);
+			result.completeExceptionally(new BindException("no local address available for " + remote));
+			return;
+		}
 
-			return session;
+		// 由mina的回调与超时任务中先到的一方完成结果
+		final AtomicBoolean finished = new AtomicBoolean();
+		final Timeout timeout = timeoutMillis > 0 ? scheduleTimeout(remote, timeoutMillis, finished, breaker, result)
+				: null;
+		final long startNanos = System.nanoTime();
+		try {
+			startConnect(remote, allocator, local).addListener(new IoFutureListener() {
+				public void operationComplete(IoFuture future) {
+					ConnectFuture connectFuture = (ConnectFuture) future;
+					if (!finished.compareAndSet(false, true)) {
+						// 已经超时,关闭迟到的连接
+						if (connectFuture.isConnected()) {
+							connectFuture.getSession().close();
+						}
+						return;
+					}
+					if (timeout != null) {
+						timeout.cancel();
+					}
+					if (connectFuture.isConnected()) {
+						connectLatency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+					}
+					if (breaker != null) {
+						if (connectFuture.isConnected()) {
+							breaker.onSuccess();
+						} else {
+							breaker.onFailure();
+						}
+					}
+					complete(result, connectFuture);
+				}
+			});
 		} catch (Exception e) {
-			logger.warn(remoteIpPort + e.toString());
-			return null;
+			if (finished.compareAndSet(false, true)) {
+				if (timeout != null) {
+					timeout.cancel();
+				}
+				if (breaker != null) {
+					breaker.onFailure();
+				}
+				result.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * 归还没有用于连接的断路器许可
+	 */
+	private static void release(CircuitBreaker breaker) {
+		if (breaker != null) {
+			breaker.release();
 		}
 	}
 
+	/**
+	 * 调度连接的超时任务
+	 */
+	private static Timeout scheduleTimeout(final InetSocketAddress remote, final long timeoutMillis,
+			final AtomicBoolean finished, final CircuitBreaker breaker, final CompletableFuture<IoSession> result) {
+		return getTimer().schedule(new Runnable() {
+			public void run() {
+				if (finished.compareAndSet(false, true)) {
+					if (breaker != null) {
+						breaker.onFailure();
+					}
+					result.completeExceptionally(
+							new SocketTimeoutException("connect timed out after " + timeoutMillis + "ms: " + remote));
+				}
+			}
+		}, timeoutMillis, 0);
+	}
+
+	/**
+	 * <p>
+	 * 并行地连接到多个地址，同一时刻最多有maxInFlight个连接正在进行，一个连接结束(无论成功与否)后立刻开始下一个。
+	 * 该方法阻塞到所有连接都已结束或超过总时限为止。
+	 * </p>
+	 * <p>
+	 * 每个连接的超时都不会超过剩余的总时限。超过总时限时仍在进行的连接及尚未开始的连接都记为失败(TimeoutException)，
+	 * 此后才建立成功的session会被直接关闭。
+	 * 重复的地址只连接一次。
+	 * </p>
+	 * 
+	 * @param endpoints
+	 *            要连接的地址
+	 * @param maxInFlight
+	 *            同一时刻最多进行的连接数
+	 * @param timeoutMillis
+	 *            总时限(毫秒)
+	 * @return 连接的结果
+	 * @throws IllegalArgumentException
+	 *             如果endpoints为null或包含null,或者maxInFlight<=0,或者timeoutMillis<0
+	 * @throws InterruptedException
+	 *             如果等待时被中断
+	 */
+	public ConnectAllResult connectAll(Collection<InetSocketAddress> endpoints, int maxInFlight, long timeoutMillis)
+			throws InterruptedException {
+		ArgumentValidator.notNull(endpoints, "endpoints");
+		ArgumentValidator.isTrue(maxInFlight > 0, "maxInFlight should be >0: " + maxInFlight);
+		ArgumentValidator.isTrue(timeoutMillis >= 0, "timeoutMillis should be >=0: " + timeoutMillis);
+		for (InetSocketAddress endpoint : endpoints) {
+			ArgumentValidator.notNull(endpoint, "endpoint");
+		}
+		ConnectAllTask task = new ConnectAllTask(this, new LinkedHashSet<InetSocketAddress>(endpoints), timeoutMillis);
+		ConnectAllResult result = task.run(maxInFlight);
+		logger.info("connectAll finished. " + result);
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * 对冲地连接到一组地址中的一个。先连接第一个地址，如果它在policy给出的延时内没有完成，则向下一个地址发起额外的连接；
+	 * 任何一个连接失败时立刻换下一个地址。最先成功的连接作为结果，其他稍后成功的连接会被关闭。
+	 * </p>
+	 * <p>
+	 * 该方法不会阻塞。对冲由{@link #getTimer()}调度。
+	 * </p>
+	 * 
+	 * @param endpoints
+	 *            按优先顺序排列的地址
+	 * @param policy
+	 *            对冲策略
+	 * @return 连接的结果，所有地址都失败时以最后一个异常结束
+	 * @throws IllegalArgumentException
+	 *             如果endpoints为null、为空或包含null,或者policy为null
+	 * @see #getConnectLatency()
+	 */
+	public CompletableFuture<IoSession> connectHedged(List<InetSocketAddress> endpoints, HedgePolicy policy) {
+		return connectHedged(endpoints, policy, null);
+	}
+
+	/**
+	 * <p>
+	 * 在总时限内对冲地连接到一组地址中的一个。所有的连接(包括对冲及失败后的切换)共享同一个时限。
+	 * </p>
+	 * 
+	 * @param budget
+	 *            总时限，null表示不限制
+	 * @see #connectHedged(List, HedgePolicy)
+	 */
+	public CompletableFuture<IoSession> connectHedged(List<InetSocketAddress> endpoints, HedgePolicy policy,
+			ConnectBudget budget) {
+		ArgumentValidator.notNullOrEmptyCollection(endpoints, "endpoints");
+		ArgumentValidator.notNull(policy, "policy");
+		for (InetSocketAddress endpoint : endpoints) {
+			ArgumentValidator.notNull(endpoint, "endpoint");
+		}
+		return new HedgedConnect(this, new ArrayList<InetSocketAddress>(endpoints), policy, budget).start();
+	}
+
+	/**
+	 * 得到成功的连接的耗时统计(毫秒).HedgePolicy.percentile()根据它计算对冲的延时
+	 * 
+	 * @return 连接耗时的直方图
+	 */
+	public LatencyHistogram getConnectLatency() {
+		return connectLatency;
+	}
+
+	/**
+	 * <p>
+	 * 建立到指定地址的持久连接。返回的对象持有当前的连接，并在连接失败或断开后按policy退避并自动重连，直到它被关闭为止。
+	 * 该方法不会阻塞，第一次连接在后台进行。
+	 * </p>
+	 * 
+	 * @param remote
+	 *            对方的地址
+	 * @param policy
+	 *            重连的退避策略
+	 * @return 持久连接
+	 * @throws IllegalArgumentException
+	 *             如果任何参数为null
+	 */
+	public PersistentConnection connectPersistent(InetSocketAddress remote, ReconnectPolicy policy) {
+		ArgumentValidator.notNull(remote, "remote");
+		ArgumentValidator.notNull(policy, "policy");
+		PersistentConnection connection = new PersistentConnection(this, remote, policy);
+		connection.start();
+		return connection;
+	}
+
+	/**
+	 * 开始连接,不等待结果.如果allocator不为null,local是由它分配的本地地址,连接失败或session关闭后归还
+	 */
+	private ConnectFuture startConnect(final InetSocketAddress remote, final LocalBindingAllocator allocator,
+			final InetSocketAddress local) {
+		String remoteIpPort = "[/" + remote.getHostString() + ": " + remote.getPort() + "] ";
+		if (allocator != null) {
+			logger.info(remoteIpPort + "Connecting...(local address: " + local + ")");
+			ConnectFuture future;
+			try {
+				future = this.connector.connect(remote, local, this.handler);
+			} catch (RuntimeException e) {
+				allocator.release(local, remote);
+				throw e;
+			}
+			future.addListener(new IoFutureListener() {
+				public void operationComplete(IoFuture future) {
+					ConnectFuture connectFuture = (ConnectFuture) future;
+					IoFutureListener release = new IoFutureListener() {
+						public void operationComplete(IoFuture future) {
+							allocator.release(local, remote);
+						}
+					};
+					if (connectFuture.isConnected()) {
+						connectFuture.getSession().getCloseFuture().addListener(release);
+					} else {
+						release.operationComplete(future);
+					}
+				}
+			});
+			return future;
+		} else if (this.localPort != null) {
+			logger.info(remoteIpPort + "Connecting...(local port: " + this.localPort + ")");
+			return this.connector.connect(remote, this.localPort, this.handler);
+		} else {
+			logger.info(remoteIpPort + "Connecting...");
+			return this.connector.connect(remote, this.handler);
+		}
+	}
+
+	/**
+	 * 根据mina的连接结果完成CompletableFuture.失败时取出RuntimeIOException中包装的真实异常
+	 */
+	private static void complete(CompletableFuture<IoSession> result, ConnectFuture future) {
+		try {
+			IoSession session = future.getSession();
+			if (session != null && future.isConnected()) {
+				result.complete(session);
+			} else {
+				result.completeExceptionally(new RuntimeIOException("failed to connect"));
+			}
+		} catch (RuntimeIOException e) {
+			result.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+		} catch (RuntimeException e) {
+			result.completeExceptionally(e);
+		}
+	}
+
+	public long getConnectTimeoutMillis() {
+		return this.connectTimeoutMillis;
+	}
+
+	/**
+	 * 设置每次连接的超时时间(毫秒).它由{@link #getTimer()}执行,因此可以小于mina中以秒为单位的超时.0表示只使用mina中的超时
+	 */
+	public ConnectorHelper setConnectTimeoutMillis(long connectTimeoutMillis) {
+		ArgumentValidator.isTrue(connectTimeoutMillis >= 0, "connectTimeoutMillis should be >=0: " + connectTimeoutMillis);
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		return this;
+	}
+
+	public CircuitBreakerRegistry getCircuitBreakers() {
+		return this.circuitBreakers;
+	}
+
+	/**
+	 * 设置按地址划分的断路器.设置后连接失败会被计入对方地址的断路器,断路器打开时连接立刻失败.null表示不使用断路器
+	 */
+	public ConnectorHelper setCircuitBreakers(CircuitBreakerRegistry circuitBreakers) {
+		this.circuitBreakers = circuitBreakers;
+		return this;
+	}
+
+	public ConnectRateLimiter getRateLimiter() {
+		return this.rateLimiter;
+	}
+
+	/**
+	 * 设置连接速率限制器.设置后每次连接都需要先取得它的许可,排队的时间计入连接的总时限.null表示不限制
+	 */
+	public ConnectorHelper setRateLimiter(ConnectRateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+		return this;
+	}
+
+	public AddressResolver getResolver() {
+		return this.resolver;
+	}
+
+	/**
+	 * 设置地址解析器.设置后connectTo()及connectAsync(String, String, int)使用它缓存的解析结果.null表示每次连接时直接解析
+	 */
+	public ConnectorHelper setResolver(AddressResolver resolver) {
+		this.resolver = resolver;
+		return this;
+	}
+
+	public LocalBindingAllocator getLocalBindings() {
+		return this.localBindings;
+	}
+
+	/**
+	 * 设置本地地址分配器.设置后每个连接都由它分配本地地址,连接失败或session关闭时归还,并且忽略localPort.null表示不使用分配器
+	 */
+	public ConnectorHelper setLocalBindings(LocalBindingAllocator localBindings) {
+		this.localBindings = localBindings;
+		return this;
+	}
+
 	public InetSocketAddress getLocalPort() {
 		return this.localPort;
 	}
@@ -0,0 +1,106 @@
+package com.alitag.mina_tools;
+
+import com.alitag.mina_tools.timer.LatencyHistogram;
+
+/**
+ * <p>
+ * 对冲连接的策略。第一个连接在指定的延时后仍未完成时，向下一个地址发起另一个连接，最多发起maxHedges个这样的额外连接。
+ * </p>
+ * <p>
+ * 延时可以是固定值({@link #fixed(long, int)})，也可以取已观察到的连接耗时的某个百分位数({@link #percentile(double, long, int)})，
+ * 比如p95：只有最慢的5%的连接会触发对冲，额外的连接数很少，却能显著降低p99。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变类。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public final class HedgePolicy {
+
+	/** 按百分位数计算延时时，至少需要的样本数。样本不足时使用minDelayMillis */
+	public static final int MIN_SAMPLES = 20;
+
+	private final double percentile;
+	private final long delayMillis;
+	private final int maxHedges;
+
+	private HedgePolicy(double percentile, long delayMillis, int maxHedges) {
+		this.percentile = percentile;
+		this.delayMillis = delayMillis;
+		this.maxHedges = maxHedges;
+	}
+
+	/**
+	 * 得到一个固定延时的对冲策略
+	 *
+	 * @param delayMillis
+	 *            发起额外连接前等待的时间(毫秒)
+	 * @param maxHedges
+	 *            最多发起的额外连接数
+	 * @return 对冲策略
+	 * @throws IllegalArgumentException
+	 *             如果delayMillis<0,或者maxHedges<0
+	 */
+	public static HedgePolicy fixed(long delayMillis, int maxHedges) {
+		ArgumentValidator.isTrue(delayMillis >= 0, "delayMillis should be >=0: " + delayMillis);
+		ArgumentValidator.isTrue(maxHedges >= 0, "maxHedges should be >=0: " + maxHedges);
+		return new HedgePolicy(-1, delayMillis, maxHedges);
+	}
+
+	/**
+	 * 得到一个以连接耗时的百分位数作为延时的对冲策略
+	 *
+	 * @param percentile
+	 *            百分位,比如95
+	 * @param minDelayMillis
+	 *            延时的下限(毫秒)，样本不足时也使用该值
+	 * @param maxHedges
+	 *            最多发起的额外连接数
+	 * @return 对冲策略
+	 * @throws IllegalArgumentException
+	 *             如果percentile不在(0, 100]之间,或者minDelayMillis<0,或者maxHedges<0
+	 */
+	public static HedgePolicy percentile(double percentile, long minDelayMillis, int maxHedges) {
+		ArgumentValidator.isTrue(percentile > 0 && percentile <= 100, "percentile should be in (0, 100]: " + percentile);
+		ArgumentValidator.isTrue(minDelayMillis >= 0, "minDelayMillis should be >=0: " + minDelayMillis);
+		ArgumentValidator.isTrue(maxHedges >= 0, "maxHedges should be >=0: " + maxHedges);
+		return new HedgePolicy(percentile, minDelayMillis, maxHedges);
+	}
+
+	/**
+	 * 得到发起额外连接前等待的时间
+	 *
+	 * @param connectLatency
+	 *            已观察到的连接耗时(毫秒)
+	 * @return 等待的时间(毫秒)
+	 */
+	public long getDelay(LatencyHistogram connectLatency) {
+		if (percentile < 0) {
+			return delayMillis;
+		}
+		LatencyHistogram.Snapshot snapshot = connectLatency.snapshot();
+		if (snapshot.getCount() < MIN_SAMPLES) {
+			return delayMillis;
+		}
+		return Math.max(delayMillis, snapshot.getPercentile(percentile));
+	}
+
+	/**
+	 * 得到最多发起的额外连接数
+	 *
+	 * @return 最多发起的额外连接数
+	 */
+	public int getMaxHedges() {
+		return maxHedges;
+	}
+
+	@Override
+	public String toString() {
+		if (percentile < 0) {
+			return "HedgePolicy(" + delayMillis + "ms, max " + maxHedges + ")";
+		}
+		return "HedgePolicy(p" + percentile + ", >=" + delayMillis + "ms, max " + maxHedges + ")";
+	}
+}
@@ -0,0 +1,157 @@
+package com.alitag.mina_tools;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.apache.mina.common.IoSession;
+
+import com.alitag.mina_tools.timer.Timeout;
+
+/**
+ * <p>
+ * 一次对冲连接。先连接第一个地址，如果在延时内没有完成，则向下一个地址发起额外的连接；任何一个连接失败时立刻换下一个地址。
+ * 最先成功的连接作为结果，其他稍后成功的连接被关闭。所有地址都失败时以最后一个异常结束。
+ * 如果指定了总时限，每个连接的超时都不会超过剩余的时限。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。状态的变化都在this的同步块中进行，结果在同步块之外完成。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+class HedgedConnect {
+
+	private final ConnectorHelper helper;
+	private final List<InetSocketAddress> endpoints;
+	private final long delayMillis;
+	private final ConnectBudget budget;
+	private final CompletableFuture<IoSession> result = new CompletableFuture<IoSession>();
+
+	/** 下一个要连接的地址 */
+	private int next;
+
+	/** 剩余的额外连接数 */
+	private int hedgesLeft;
+
+	/** 正在进行的连接数 */
+	private int running;
+
+	private Timeout hedgeTimeout;
+	private Throwable lastCause;
+	private boolean done;
+
+	/** 尚未处理的开始连接的请求数.从0变为非0的线程负责在循环中处理所有的请求 */
+	private final AtomicInteger pendingLaunches = new AtomicInteger();
+
+	private final Runnable hedge = new Runnable() {
+		public void run() {
+			synchronized (HedgedConnect.this) {
+				hedgeTimeout = null;
+				if (done || hedgesLeft == 0) {
+					return;
+				}
+				hedgesLeft--;
+			}
+			launch();
+		}
+	};
+
+	HedgedConnect(ConnectorHelper helper, List<InetSocketAddress> endpoints, HedgePolicy policy, ConnectBudget budget) {
+		this.helper = helper;
+		this.endpoints = endpoints;
+		this.budget = budget;
+		this.delayMillis = policy.getDelay(helper.getConnectLatency());
+		this.hedgesLeft = policy.getMaxHedges();
+	}
+
+	CompletableFuture<IoSession> start() {
+		launch();
+		return result;
+	}
+
+	/**
+	 * 请求连接下一个地址.连接同步失败时会在回调中再次请求,这些请求由已经在处理的线程在循环中依次处理,而不是递归调用,
+	 * 因此大量地址同步失败也不会耗尽调用栈
+	 */
+	private void launch() {
+		if (pendingLaunches.getAndIncrement() != 0) {
+			return;
+		}
+		do {
+			launchNext();
+		} while (pendingLaunches.decrementAndGet() != 0);
+	}
+
+	/**
+	 * 连接下一个地址,并在还有地址时调度下一次对冲
+	 */
+	private void launchNext() {
+		final InetSocketAddress address;
+		synchronized (this) {
+			if (done || next >= endpoints.size()) {
+				return;
+			}
+			address = endpoints.get(next++);
+			running++;
+			if (hedgeTimeout != null) {
+				hedgeTimeout.cancel();
+				hedgeTimeout = null;
+			}
+			if (hedgesLeft > 0 && next < endpoints.size()) {
+				hedgeTimeout = ConnectorHelper.getTimer().schedule(hedge, delayMillis, 0);
+			}
+		}
+		helper.connectAsync(address, budget).whenComplete(new BiConsumer<IoSession, Throwable>() {
+			public void accept(IoSession session, Throwable cause) {
+				onComplete(session, cause);
+			}
+		});
+	}
+
+	private void onComplete(IoSession session, Throwable cause) {
+		boolean failover = false;
+		boolean fail = false;
+		synchronized (this) {
+			running--;
+			if (session != null) {
+				if (done) {
+					// 输掉的连接
+					session.close();
+					return;
+				}
+				done = true;
+				cancelHedge();
+			} else {
+				lastCause = cause;
+				if (done) {
+					return;
+				}
+				if (next < endpoints.size()) {
+					failover = true;
+				} else if (running == 0) {
+					done = true;
+					cancelHedge();
+					fail = true;
+				}
+			}
+		}
+		if (session != null) {
+			result.complete(session);
+		} else if (failover) {
+			launch();
+		} else if (fail) {
+			result.completeExceptionally(lastCause);
+		}
+	}
+
+	private void cancelHedge() {
+		if (hedgeTimeout != null) {
+			hedgeTimeout.cancel();
+			hedgeTimeout = null;
+		}
+	}
+}
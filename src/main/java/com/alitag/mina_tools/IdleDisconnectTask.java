@@ -0,0 +1,71 @@
+package com.alitag.mina_tools;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.common.IoSession;
+
+import com.alitag.mina_tools.timer.JitterPolicy;
+
+/**
+ * <p>
+ * 空闲断开任务。session每次收发信息时只更新一个volatile的时间戳(见{@link #touch()})，不重新调度任务；
+ * 任务到期时才检查该时间戳：如果空闲时间已经达到限制则断开session，否则只按剩余的时间重新调度一次。
+ * 因此繁忙的session不会因为收发信息而产生任何调度开销。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。时间戳与取消标志均为volatile。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+class IdleDisconnectTask extends TimerTaskExt {
+
+	private final IoSession session;
+	private final long idleNanos;
+	private final int seconds;
+
+	/** 最后一次活动的时间(System.nanoTime()) */
+	private volatile long lastActivity;
+
+	private volatile boolean cancelled;
+
+	IdleDisconnectTask(IoSession session, int seconds) {
+		this.session = session;
+		this.seconds = seconds;
+		this.idleNanos = TimeUnit.SECONDS.toNanos(seconds);
+		this.lastActivity = System.nanoTime();
+	}
+
+	/**
+	 * 记录一次活动
+	 */
+	void touch() {
+		lastActivity = System.nanoTime();
+	}
+
+	@Override
+	public void run() {
+		if (cancelled || session.isClosing()) {
+			return;
+		}
+		long remaining = idleNanos - (System.nanoTime() - lastActivity);
+		if (remaining <= 0) {
+			session.close();
+		} else {
+			SessionTaskHelper.addAutoCancelTask(session, this, TimeUnit.NANOSECONDS.toMillis(remaining) + 1, 0,
+					JitterPolicy.NONE);
+		}
+	}
+
+	@Override
+	public boolean cancel() {
+		cancelled = true;
+		return super.cancel();
+	}
+
+	@Override
+	public String getName() {
+		return "disconnect after idle for " + seconds + "s";
+	}
+}
@@ -0,0 +1,186 @@
+package com.alitag.mina_tools;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * 多个ConnectorBuilder和AcceptorBuilder共用的IO处理线程组。它有一个总的IO处理线程(selector线程)预算，默认等于cpu的核数，
+ * 每个使用它的IoConnector或IoAcceptor从中申请自己的处理线程数，所有的处理线程都运行在同一个命名的线程池中。
+ * 这样一个进程中无论有多少个builder，IO处理线程的总数都由这里统一控制，不会远超cpu的核数。
+ * </p>
+ * <p>
+ * 使用时把同一个IoProcessorGroup设置到各个builder的MinaConfig.ioProcessorGroup中，并用MinaConfig.ioProcessorCount指定各自申请的线程数：
+ * </p>
+ * 
+ * <pre>
+ * IoProcessorGroup group = new IoProcessorGroup(&quot;mina&quot;);
+ * MinaConfig config = new MinaConfig();
+ * config.ioProcessorGroup = group;
+ * IoConnector connector = new ConnectorBuilder(config).getConnector();
+ * </pre>
+ * <p>
+ * NOTE: mina 1.1的SocketIoProcessor属于创建它的IoConnector/IoAcceptor，不能在多个service之间共享同一个selector，
+ * 因此这里共享的是线程池和线程预算：每个service至少需要1条处理线程，此外每个service还有1条自己的accept/connect线程。
+ * 当申请的总数超过预算时，仍然分配1条处理线程并记录警告，此时应减少builder的数量。
+ * </p>
+ * <p>
+ * builder的dispose()方法会通过{@link #release(int)}归还它申请的处理线程数，此后新建的builder可以重新使用这部分预算。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。预算由原子变量维护，线程池本身线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class IoProcessorGroup {
+
+	private static final Logger logger = LoggerFactory.getLogger(IoProcessorGroup.class);
+
+	private final String name;
+	private final int processorCount;
+	private final AtomicInteger allocated = new AtomicInteger();
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * <p>
+	 * 构造函数。处理线程的预算等于cpu的核数。
+	 * </p>
+	 * 
+	 * @param name
+	 *            线程名的前缀
+	 * @throws IllegalArgumentException
+	 *             如果name为null或为空
+	 */
+	public IoProcessorGroup(String name) {
+		this(name, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 * 
+	 * @param name
+	 *            线程名的前缀
+	 * @param processorCount
+	 *            所有service的IO处理线程总数的预算
+	 * @throws IllegalArgumentException
+	 *             如果name为null或为空,或者processorCount<=0
+	 */
+	public IoProcessorGroup(final String name, int processorCount) {
+		ArgumentValidator.notNullOrTrimmedEmpty(name, "name");
+		ArgumentValidator.isTrue(processorCount > 0, "processorCount should be >0: " + processorCount);
+		this.name = name;
+		this.processorCount = processorCount;
+		// mina的处理线程和accept/connect线程都是长期运行的,因此使用不排队的线程池,每个任务一条线程
+		this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger index = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, name + "-io-" + index.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * 为一个service申请IO处理线程.在预算之内时按申请的数量分配,否则只分配剩余的数量,但至少分配1条
+	 * 
+	 * @param requested
+	 *            申请的处理线程数
+	 * @return 实际分配的处理线程数,>=1
+	 * @throws IllegalArgumentException
+	 *             如果requested<=0
+	 */
+	public int allocate(int requested) {
+		ArgumentValidator.isTrue(requested > 0, "requested should be >0: " + requested);
+		while (true) {
+			int current = allocated.get();
+			int granted = Math.max(1, Math.min(requested, processorCount - current));
+			if (allocated.compareAndSet(current, current + granted)) {
+				if (current + granted > processorCount) {
+					logger.warn(name + ": io processors exceed the budget: " + (current + granted) + "/" + processorCount);
+				}
+				return granted;
+			}
+		}
+	}
+
+	/**
+	 * 归还由{@link #allocate(int)}分配的处理线程数.应在使用它们的service关闭之后调用
+	 * 
+	 * @param count
+	 *            allocate返回的处理线程数
+	 * @throws IllegalArgumentException
+	 *             如果count<=0,或者大于当前已经分配的处理线程数
+	 */
+	public void release(int count) {
+		ArgumentValidator.isTrue(count > 0, "count should be >0: " + count);
+		while (true) {
+			int current = allocated.get();
+			ArgumentValidator.isTrue(count <= current, "count should be <=" + current + ": " + count);
+			if (allocated.compareAndSet(current, current - count)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 得到所有service共用的线程池,用于运行mina的IO处理线程
+	 * 
+	 * @return 线程池
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * 得到IO处理线程总数的预算
+	 * 
+	 * @return 预算
+	 */
+	public int getProcessorCount() {
+		return processorCount;
+	}
+
+	/**
+	 * 得到已经分配的IO处理线程数
+	 * 
+	 * @return 已经分配的处理线程数
+	 */
+	public int getAllocatedCount() {
+		return allocated.get();
+	}
+
+	/**
+	 * 得到线程池中当前的线程数,包括处理线程和各个service的accept/connect线程
+	 * 
+	 * @return 线程数
+	 */
+	public int getThreadCount() {
+		return executor.getPoolSize();
+	}
+
+	/**
+	 * 关闭线程池.应在所有使用它的service都关闭之后调用
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Override
+	public String toString() {
+		return "IoProcessorGroup(" + name + ", allocated=" + allocated.get() + "/" + processorCount + ")";
+	}
+}
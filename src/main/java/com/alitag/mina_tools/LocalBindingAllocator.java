@@ -0,0 +1,200 @@
+package com.alitag.mina_tools;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * 本地地址分配器。在多个源ip及一个端口范围内为每个连接分配本地地址，使一台主机到少数几个后端的连接数可以超过单个ip的临时端口数。
+ * </p>
+ * <p>
+ * TCP连接由(本地地址, 远程地址)唯一确定，因此同一个本地地址可以同时用于不同的远程地址。分配器按远程地址分别记录已经使用的本地地址，
+ * 只保证同一个远程地址的连接不会分配到相同的本地地址。这要求socket启用reuseAddress(MinaConfig.reuseAddress默认启用)。
+ * </p>
+ * <p>
+ * 连续的分配依次轮换源ip，再轮换端口。每个远程地址使用一个位图记录已使用的本地地址，并从上次分配的位置继续查找。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。每个远程地址的分配状态由它自己的锁保护，不同远程地址之间互不影响。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class LocalBindingAllocator {
+
+	private final InetAddress[] sourceAddresses;
+	private final int minPort;
+	private final int portCount;
+
+	/** 本地地址的总数,即源ip数乘以端口数 */
+	private final int capacity;
+
+	private final ConcurrentHashMap<InetSocketAddress, Bindings> bindings = new ConcurrentHashMap<InetSocketAddress, Bindings>();
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param sourceAddresses
+	 *            可以使用的源ip
+	 * @param minPort
+	 *            端口范围的下限(包括)
+	 * @param maxPort
+	 *            端口范围的上限(包括)
+	 * @throws IllegalArgumentException
+	 *             如果sourceAddresses为null、为空或包含null,或者端口范围不在[1, 65535]之内
+	 */
+	public LocalBindingAllocator(List<InetAddress> sourceAddresses, int minPort, int maxPort) {
+		ArgumentValidator.notNullOrEmptyCollection(sourceAddresses, "sourceAddresses");
+		for (InetAddress address : sourceAddresses) {
+			ArgumentValidator.notNull(address, "sourceAddress");
+		}
+		ArgumentValidator.isTrue(minPort > 0 && minPort <= maxPort && maxPort <= 65535,
+				"invalid port range: [" + minPort + ", " + maxPort + "]");
+		this.sourceAddresses = sourceAddresses.toArray(new InetAddress[sourceAddresses.size()]);
+		this.minPort = minPort;
+		this.portCount = maxPort - minPort + 1;
+		this.capacity = this.sourceAddresses.length * portCount;
+	}
+
+	/**
+	 * 为到remote的连接分配一个本地地址
+	 *
+	 * @param remote
+	 *            远程地址
+	 * @return 本地地址，如果该远程地址已经用完了所有的本地地址，返回null
+	 * @throws IllegalArgumentException
+	 *             如果remote为null
+	 */
+	public InetSocketAddress allocate(InetSocketAddress remote) {
+		ArgumentValidator.notNull(remote, "remote");
+		int index = bindingsOf(remote).allocate();
+		return index < 0 ? null : toAddress(index);
+	}
+
+	/**
+	 * 释放一个分配过的本地地址.如果它没有被分配给remote,则不进行操作
+	 *
+	 * @param local
+	 *            本地地址
+	 * @param remote
+	 *            远程地址
+	 */
+	public void release(InetSocketAddress local, InetSocketAddress remote) {
+		Bindings b = bindings.get(remote);
+		int index = indexOf(local);
+		if (b != null && index >= 0) {
+			b.release(index);
+		}
+	}
+
+	/**
+	 * 得到到remote的连接正在使用的本地地址数
+	 *
+	 * @param remote
+	 *            远程地址
+	 * @return 正在使用的本地地址数
+	 */
+	public int getInUseCount(InetSocketAddress remote) {
+		Bindings b = bindings.get(remote);
+		return b == null ? 0 : b.size();
+	}
+
+	/**
+	 * 得到每个远程地址最多可以使用的本地地址数
+	 *
+	 * @return 源ip数乘以端口数
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * 得到所有的源ip
+	 *
+	 * @return 源ip
+	 */
+	public List<InetAddress> getSourceAddresses() {
+		List<InetAddress> list = new ArrayList<InetAddress>(sourceAddresses.length);
+		for (InetAddress address : sourceAddresses) {
+			list.add(address);
+		}
+		return list;
+	}
+
+	private Bindings bindingsOf(InetSocketAddress remote) {
+		Bindings b = bindings.get(remote);
+		if (b == null) {
+			Bindings created = new Bindings();
+			b = bindings.putIfAbsent(remote, created);
+			if (b == null) {
+				b = created;
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * 下标的低位是源ip,高位是端口,因此连续的下标轮换源ip
+	 */
+	private InetSocketAddress toAddress(int index) {
+		return new InetSocketAddress(sourceAddresses[index % sourceAddresses.length],
+				minPort + index / sourceAddresses.length);
+	}
+
+	private int indexOf(InetSocketAddress local) {
+		if (local == null) {
+			return -1;
+		}
+		int port = local.getPort() - minPort;
+		if (port < 0 || port >= portCount) {
+			return -1;
+		}
+		for (int i = 0; i < sourceAddresses.length; i++) {
+			if (sourceAddresses[i].equals(local.getAddress())) {
+				return port * sourceAddresses.length + i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 一个远程地址已经使用的本地地址
+	 */
+	private final class Bindings {
+		private final BitSet used = new BitSet(capacity);
+		private int cursor;
+		private int size;
+
+		synchronized int allocate() {
+			if (size >= capacity) {
+				return -1;
+			}
+			int index = used.nextClearBit(cursor);
+			if (index >= capacity) {
+				index = used.nextClearBit(0);
+			}
+			used.set(index);
+			size++;
+			cursor = index + 1 == capacity ? 0 : index + 1;
+			return index;
+		}
+
+		synchronized void release(int index) {
+			if (used.get(index)) {
+				used.clear(index);
+				size--;
+			}
+		}
+
+		synchronized int size() {
+			return size;
+		}
+	}
+}
@@ -62,6 +62,13 @@ public class MinaConfig {
 	/** 是否记录已经发送的信息，默认为true */
 	public boolean logSent = true;
 
+	/**
+	 * <p>
+	 * 是否在收发信息时记录session的活动时间，用于SessionTaskHelper.setIdleDisconnect()。默认不启用。
+	 * </p>
+	 */
+	public boolean trackActivity = false;
+
 	/**
 	 * <p>
 	 * 是否启动线程池。默认启用。
@@ -76,6 +83,31 @@ public class MinaConfig {
 	 */
 	public int connectTimeout = 1;
 
+	/**
+	 * <p>
+	 * 客户端连接到服务器时的超时时间(毫秒)，大于0时代替connectTimeout。默认为0，即使用connectTimeout。仅对ConnectorBuilder有效。
+	 * </p>
+	 * <p>
+	 * mina只支持以秒为单位的超时，因此它被向上取整后设置到mina中作为兜底，毫秒级的超时由ConnectorBuilder.createHelper()
+	 * 得到的ConnectorHelper通过定时器实现。
+	 * </p>
+	 */
+	public int connectTimeoutMillis = 0;
+
+	/**
+	 * <p>
+	 * 多个builder共用的IO处理线程组。默认为null，即每个builder使用mina默认的处理线程及线程池。
+	 * </p>
+	 */
+	public IoProcessorGroup ioProcessorGroup = null;
+
+	/**
+	 * <p>
+	 * 设置了ioProcessorGroup时，向其申请的IO处理线程数，默认为1。
+	 * </p>
+	 */
+	public int ioProcessorCount = 1;
+
 	/**
 	 * <p>
 	 * 使用的codecFactory。默认为null。当codecFactory为null时，将使用后面的textCodec_*来生成一个TextLineCodecFactory对象
@@ -142,8 +174,12 @@ public class MinaConfig {
 		StringBuilder sb = new StringBuilder();
 		sb.append("log: " + log).append(System.lineSeparator());
 		sb.append("logWidth: " + logWidth).append(System.lineSeparator());
+		sb.append("trackActivity: " + trackActivity).append(System.lineSeparator());
 		sb.append("threadPool: " + threadPool).append(System.lineSeparator());
 		sb.append("connectTimeout: " + connectTimeout).append(System.lineSeparator());
+		sb.append("connectTimeoutMillis: " + connectTimeoutMillis).append(System.lineSeparator());
+		sb.append("ioProcessorGroup: " + ioProcessorGroup).append(System.lineSeparator());
+		sb.append("ioProcessorCount: " + ioProcessorCount).append(System.lineSeparator());
 		sb.append("codecFacotry class: " + codecFactory.getClass().getName()).append(System.lineSeparator());
 		sb.append("codecFactory content: " + codecFactory.toString()).append(System.lineSeparator());
 		sb.append("socket_reuseAddress: " + reuseAddress).append(System.lineSeparator());
@@ -0,0 +1,246 @@
+package com.alitag.mina_tools;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import org.apache.mina.common.IoFuture;
+import org.apache.mina.common.IoFutureListener;
+import org.apache.mina.common.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alitag.mina_tools.timer.Timeout;
+
+/**
+ * <p>
+ * 持久连接。它持有到某个地址的当前连接，在连接失败或断开后按ReconnectPolicy退避并自动重连，直到被{@link #close()}为止。
+ * 重连由ConnectorHelper的共享定时器调度，不会创建新的线程；它的tick较短，随机的等待时间不会被取整到少数几个tick上。
+ * 连续失败的次数只在连接保持了{@link ReconnectPolicy#getStableMillis()}之后才清零。
+ * </p>
+ * <p>
+ * 调用者应该持有该对象而不是某个具体的session，并在每次使用时通过{@link #getSession()}得到当前的连接。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。连接状态的变化都在this的同步块中进行，当前的连接由volatile字段持有，读取时不加锁。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class PersistentConnection {
+
+	private static final Logger logger = LoggerFactory.getLogger(PersistentConnection.class);
+
+	private final ConnectorHelper helper;
+	private final InetSocketAddress remote;
+	private final ReconnectPolicy policy;
+
+	/** 当前连接的结果.断开后替换为新的未完成的future */
+	private CompletableFuture<IoSession> current = new CompletableFuture<IoSession>();
+
+	/** 当前的连接.写操作在this的同步块中,读操作不加锁,以便每条消息都可以调用getSession() */
+	private volatile IoSession session;
+
+	/** 连续失败的次数,连接保持了policy.getStableMillis()之后清零 */
+	private int failures;
+
+	/** 当前连接建立的时刻(System.nanoTime()) */
+	private long connectedAt;
+
+	/** 已经调度但尚未开始的重连 */
+	private Timeout pending;
+
+	private long connectCount;
+
+	private boolean closed;
+
+	private final Runnable reconnect = new Runnable() {
+		public void run() {
+			connect();
+		}
+	};
+
+	PersistentConnection(ConnectorHelper helper, InetSocketAddress remote, ReconnectPolicy policy) {
+		this.helper = helper;
+		this.remote = remote;
+		this.policy = policy;
+	}
+
+	/**
+	 * 开始第一次连接
+	 */
+	void start() {
+		connect();
+	}
+
+	/**
+	 * 得到当前的连接
+	 *
+	 * @return 当前的连接,如果正在重连则返回null
+	 */
+	public IoSession getSession() {
+		return session;
+	}
+
+	/**
+	 * <p>
+	 * 得到当前的连接，如果正在重连则最多等待指定的时间。
+	 * </p>
+	 *
+	 * @param timeoutMillis
+	 *            最长等待时间(毫秒)
+	 * @return 当前的连接
+	 * @throws TimeoutException
+	 *             如果在指定的时间内没有连上
+	 * @throws InterruptedException
+	 *             如果等待时被中断
+	 * @throws IllegalStateException
+	 *             如果该连接已经被关闭
+	 */
+	public IoSession awaitSession(long timeoutMillis) throws TimeoutException, InterruptedException {
+		CompletableFuture<IoSession> future;
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("connection has been closed: " + remote);
+			}
+			future = current;
+		}
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("connection has been closed: " + remote, e.getCause());
+		}
+	}
+
+	/**
+	 * 当前是否已经连上
+	 *
+	 * @return 是否已经连上
+	 */
+	public boolean isConnected() {
+		return session != null;
+	}
+
+	/**
+	 * 得到成功建立连接的次数(包括第一次)
+	 *
+	 * @return 成功建立连接的次数
+	 */
+	public synchronized long getConnectCount() {
+		return connectCount;
+	}
+
+	/**
+	 * 得到远程地址
+	 *
+	 * @return 远程地址
+	 */
+	public InetSocketAddress getRemote() {
+		return remote;
+	}
+
+	/**
+	 * <p>
+	 * 关闭该持久连接：取消尚未开始的重连并关闭当前的连接。此后不会再重连。
+	 * </p>
+	 */
+	public void close() {
+		IoSession toClose;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (pending != null) {
+				pending.cancel();
+				pending = null;
+			}
+			toClose = session;
+			session = null;
+			current.completeExceptionally(new IllegalStateException("connection has been closed: " + remote));
+		}
+		if (toClose != null) {
+			toClose.close();
+		}
+	}
+
+	private void connect() {
+		synchronized (this) {
+			pending = null;
+			if (closed) {
+				return;
+			}
+		}
+		helper.connectAsync(remote).whenComplete(new BiConsumer<IoSession, Throwable>() {
+			public void accept(IoSession connected, Throwable cause) {
+				if (connected != null) {
+					onConnected(connected);
+				} else {
+					onFailed(cause);
+				}
+			}
+		});
+	}
+
+	private void onConnected(final IoSession connected) {
+		synchronized (this) {
+			if (closed) {
+				connected.close();
+				return;
+			}
+			session = connected;
+			connectedAt = System.nanoTime();
+			connectCount++;
+			current.complete(connected);
+		}
+		connected.getCloseFuture().addListener(new IoFutureListener() {
+			public void operationComplete(IoFuture future) {
+				onClosed(connected);
+			}
+		});
+	}
+
+	private void onFailed(Throwable cause) {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			long delay = scheduleReconnect();
+			logger.warn("[" + remote + "] failed to connect (" + failures + " in a row), retry in " + delay + "ms: "
+					+ cause);
+		}
+	}
+
+	private void onClosed(IoSession closedSession) {
+		synchronized (this) {
+			if (closed || session != closedSession) {
+				return;
+			}
+			session = null;
+			current = new CompletableFuture<IoSession>();
+			if (System.nanoTime() - connectedAt >= TimeUnit.MILLISECONDS.toNanos(policy.getStableMillis())) {
+				failures = 0;
+			}
+			long delay = scheduleReconnect();
+			logger.info("[" + remote + "] session closed, reconnect in " + delay + "ms");
+		}
+	}
+
+	/**
+	 * 按退避策略调度下一次重连.必须在this的同步块中调用
+	 */
+	private long scheduleReconnect() {
+		long delay = policy.nextDelay(failures++);
+		pending = ConnectorHelper.getTimer().schedule(reconnect, delay, 0);
+		return delay;
+	}
+
+	@Override
+	public String toString() {
+		return "PersistentConnection(" + remote + ")";
+	}
+}
@@ -0,0 +1,72 @@
+package com.alitag.mina_tools;
+
+/**
+ * <p>
+ * 连接池的配置信息类。以下的各项限制都是针对每个远程地址而言的。
+ * </p>
+ * <p>
+ * <b>线程安全</b> 该类非线程安全，因为它是可变类。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class PoolConfig {
+
+	/**
+	 * <p>
+	 * 每个地址至少保持的空闲连接数。不足时由清理任务在后台补足。默认为0。
+	 * </p>
+	 */
+	public int minIdle = 0;
+
+	/**
+	 * <p>
+	 * 每个地址最多的连接数(包括空闲的、已借出的及正在建立的)。默认为8。
+	 * </p>
+	 */
+	public int maxTotal = 8;
+
+	/**
+	 * <p>
+	 * 借出连接时的默认等待时间(毫秒)，包括等待其他连接归还及建立新连接的时间。默认为3000毫秒。
+	 * </p>
+	 */
+	public long borrowTimeoutMillis = 3000;
+
+	/**
+	 * <p>
+	 * 空闲连接的最长空闲时间(毫秒)，超过该时间且空闲连接数多于minIdle时将被关闭。0或负数表示不关闭。默认为60000毫秒。
+	 * </p>
+	 */
+	public long maxIdleMillis = 60000;
+
+	/**
+	 * <p>
+	 * 清理任务的运行间隔(毫秒)。清理任务负责关闭空闲过久的连接及补足minIdle。默认为5000毫秒。
+	 * </p>
+	 */
+	public long evictionIntervalMillis = 5000;
+
+	/**
+	 * <p>
+	 * 显示出当前的配置内容，格式为每行一个参数，每行形如：
+	 * </p>
+	 * <p>
+	 * param: value
+	 * </p>
+	 * 
+	 * @return 当前的配置内容
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("minIdle: " + minIdle).append(System.lineSeparator());
+		sb.append("maxTotal: " + maxTotal).append(System.lineSeparator());
+		sb.append("borrowTimeoutMillis: " + borrowTimeoutMillis).append(System.lineSeparator());
+		sb.append("maxIdleMillis: " + maxIdleMillis).append(System.lineSeparator());
+		sb.append("evictionIntervalMillis: " + evictionIntervalMillis).append(System.lineSeparator());
+		return sb.toString();
+	}
+
+}
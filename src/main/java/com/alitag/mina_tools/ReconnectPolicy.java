@@ -0,0 +1,137 @@
+package com.alitag.mina_tools;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>
+ * 重连的退避策略。第n次(从0开始)连续失败后的等待时间上限为min(maxDelay, initialDelay * multiplier^n)，
+ * 实际的等待时间在[0, 上限]之间均匀分布(full jitter)。
+ * </p>
+ * <p>
+ * 使用full jitter是为了让同时断开的大量客户端(比如服务器重启时)在退避窗口内均匀地分散重连，而不是按相同的节奏一波一波地冲击刚恢复的服务器。
+ * </p>
+ * <p>
+ * 连续失败的次数在连接保持了至少stableMillis毫秒之后才清零，避免一个连上后立即被断开的服务器让客户端总是以最短的等待时间重连。
+ * </p>
+ * <p>
+ * 重连由{@link ConnectorHelper#getTimer()}调度，精度为其tick(默认10毫秒)。初始等待时间应该是tick的若干倍，否则随机的等待时间会集中到少数几个tick上。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变类。随机数由ThreadLocalRandom生成。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public final class ReconnectPolicy {
+
+	/** 默认的初始等待时间(毫秒) */
+	public static final long DEFAULT_INITIAL_DELAY_MILLIS = 100;
+
+	/** 默认的最大等待时间(毫秒) */
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 30000;
+
+	/** 默认的增长倍数 */
+	public static final double DEFAULT_MULTIPLIER = 2;
+
+	/** 默认的连接保持多久(毫秒)之后清零连续失败的次数 */
+	public static final long DEFAULT_STABLE_MILLIS = 5000;
+
+	/** 使用默认参数的策略 */
+	public static final ReconnectPolicy DEFAULT = new ReconnectPolicy(DEFAULT_INITIAL_DELAY_MILLIS,
+			DEFAULT_MAX_DELAY_MILLIS, DEFAULT_MULTIPLIER, DEFAULT_STABLE_MILLIS);
+
+	private final long initialDelayMillis;
+	private final long maxDelayMillis;
+	private final double multiplier;
+	private final long stableMillis;
+
+	private ReconnectPolicy(long initialDelayMillis, long maxDelayMillis, double multiplier, long stableMillis) {
+		this.initialDelayMillis = initialDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.multiplier = multiplier;
+		this.stableMillis = stableMillis;
+	}
+
+	/**
+	 * 得到一个以默认倍数增长的退避策略
+	 *
+	 * @see #exponential(long, long, double)
+	 */
+	public static ReconnectPolicy exponential(long initialDelayMillis, long maxDelayMillis) {
+		return exponential(initialDelayMillis, maxDelayMillis, DEFAULT_MULTIPLIER);
+	}
+
+	/**
+	 * 得到一个指数增长的退避策略
+	 *
+	 * @param initialDelayMillis
+	 *            第一次重连的等待时间上限(毫秒)
+	 * @param maxDelayMillis
+	 *            等待时间上限的最大值(毫秒)
+	 * @param multiplier
+	 *            每次失败后等待时间上限的增长倍数
+	 * @return 退避策略
+	 * @throws IllegalArgumentException
+	 *             如果initialDelayMillis<=0,或者maxDelayMillis<initialDelayMillis,或者multiplier<1
+	 */
+	public static ReconnectPolicy exponential(long initialDelayMillis, long maxDelayMillis, double multiplier) {
+		ArgumentValidator.isTrue(initialDelayMillis > 0, "initialDelayMillis should be >0: " + initialDelayMillis);
+		ArgumentValidator.isTrue(maxDelayMillis >= initialDelayMillis,
+				"maxDelayMillis should be >=initialDelayMillis: " + maxDelayMillis);
+		ArgumentValidator.isTrue(multiplier >= 1, "multiplier should be >=1: " + multiplier);
+		return new ReconnectPolicy(initialDelayMillis, maxDelayMillis, multiplier, DEFAULT_STABLE_MILLIS);
+	}
+
+	/**
+	 * 得到一个只有stableMillis不同的退避策略
+	 *
+	 * @param stableMillis
+	 *            连接保持多久(毫秒)之后清零连续失败的次数
+	 * @return 退避策略
+	 * @throws IllegalArgumentException
+	 *             如果stableMillis<0
+	 */
+	public ReconnectPolicy withStableMillis(long stableMillis) {
+		ArgumentValidator.isTrue(stableMillis >= 0, "stableMillis should be >=0: " + stableMillis);
+		return new ReconnectPolicy(initialDelayMillis, maxDelayMillis, multiplier, stableMillis);
+	}
+
+	/**
+	 * 得到连接保持多久之后清零连续失败的次数
+	 *
+	 * @return 毫秒数
+	 */
+	public long getStableMillis() {
+		return stableMillis;
+	}
+
+	/**
+	 * 得到连续失败指定次数后的等待时间上限(不含随机部分)
+	 *
+	 * @param failures
+	 *            连续失败的次数
+	 * @return 等待时间上限(毫秒)
+	 */
+	public long getMaxDelay(int failures) {
+		double delay = initialDelayMillis * Math.pow(multiplier, Math.max(failures, 0));
+		return delay >= maxDelayMillis ? maxDelayMillis : (long) delay;
+	}
+
+	/**
+	 * 得到连续失败指定次数后的等待时间
+	 *
+	 * @param failures
+	 *            连续失败的次数
+	 * @return 在[0, getMaxDelay(failures)]之间随机的等待时间(毫秒)
+	 */
+	public long nextDelay(int failures) {
+		return ThreadLocalRandom.current().nextLong(getMaxDelay(failures) + 1);
+	}
+
+	@Override
+	public String toString() {
+		return "ReconnectPolicy(initial=" + initialDelayMillis + "ms, max=" + maxDelayMillis + "ms, x" + multiplier
+				+ ", stable=" + stableMillis + "ms)";
+	}
+}
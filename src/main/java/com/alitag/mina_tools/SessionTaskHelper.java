@@ -1,25 +1,83 @@
 package com.alitag.mina_tools;
 
-import java.util.Timer;
-import java.util.UUID;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Predicate;
 
-import org.apache.mina.common.IoFuture;
-import org.apache.mina.common.IoFutureListener;
+import javax.management.JMException;
+
+import org.apache.mina.common.IoService;
 import org.apache.mina.common.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alitag.mina_tools.timer.HashedWheelTimer;
+import com.alitag.mina_tools.timer.HierarchicalWheelTimer;
+import com.alitag.mina_tools.timer.JitterPolicy;
+import com.alitag.mina_tools.timer.PeriodicTaskGroup;
+import com.alitag.mina_tools.timer.SessionExpirySweeper;
+import com.alitag.mina_tools.timer.TaskTimer;
+import com.alitag.mina_tools.timer.Timeout;
+import com.alitag.mina_tools.timer.TimerMetrics;
+import com.alitag.mina_tools.timer.TimerMetricsSnapshot;
 
 /**
  * IoSession的辅助类,用于向session中加入一些自动执行的任务
  * <p>
- * 线程安全：该类线程安全。因为它是不可变类。
+ * 所有的任务都由一个共享的{@link TaskTimer}调度(默认为{@link HashedWheelTimer})，而不是每个任务一个java.util.Timer，
+ * 所以无论有多少个session，都只占用固定数量的线程。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。共享的定时器由volatile字段持有，并在第一次使用时同步创建。
  * 
  * @author gchangyi
  * @version 1.0
  */
 public class SessionTaskHelper {
 
+	private static final Logger logger = LoggerFactory.getLogger(SessionTaskHelper.class);
+
 	private static final String PREFIX = SessionTaskHelper.class.getName();
 
-	private static final String KEY_CANCEL_AUTODISCONNECT = PREFIX + ".cancel_autodisconnect";
+	/** 在JMX中注册统计信息时使用的ObjectName */
+	public static final String METRICS_OBJECT_NAME = "com.alitag.mina_tools:type=SessionTaskHelper";
+
+	/** 所有session任务的统计信息 */
+	private static final TimerMetrics metrics = new TimerMetrics();
+
+	static {
+		try {
+			metrics.registerMBean(METRICS_OBJECT_NAME);
+		} catch (JMException e) {
+			logger.warn("failed to register timer metrics mbean: " + METRICS_OBJECT_NAME, e);
+		}
+	}
+
+	private static final String KEY_AUTODISCONNECT = PREFIX + ".autodisconnect";
+
+	private static final String KEY_IDLE_DISCONNECT = PREFIX + ".idle_disconnect";
+
+	/** 所有session共享的定时器 */
+	private static volatile TaskTimer timer;
+
+	/** 默认的抖动策略 */
+	private static volatile JitterPolicy defaultJitter = JitterPolicy.NONE;
+
+	/** 所有session共享的过期清理器 */
+	private static volatile SessionExpirySweeper expirySweeper;
+
+	/** 用于执行周期任务组中每一批任务的executor */
+	private static volatile Executor periodicExecutor;
+
+	/** 按周期分组的周期任务 */
+	private static final ConcurrentMap<Long, PeriodicTaskGroup> periodicGroups = new ConcurrentHashMap<Long, PeriodicTaskGroup>();
 
 	/**
 	 * 私有构造函数.防止实例化.
@@ -29,7 +87,113 @@ public class SessionTaskHelper {
 	}
 
 	/**
-	 * 设定该session在指定的时间后自动断开.如果session处于关闭状态,则不进行操作
+	 * 得到所有session共享的定时器。如果尚未设置，将创建一个使用默认参数的{@link HashedWheelTimer}
+	 * 
+	 * @return 共享的定时器
+	 */
+	public static TaskTimer getTimer() {
+		TaskTimer t = timer;
+		if (t == null) {
+			synchronized (SessionTaskHelper.class) {
+				t = timer;
+				if (t == null) {
+					t = new HashedWheelTimer(SessionTaskHelper.class.getSimpleName());
+					timer = t;
+				}
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * 得到所有session任务的统计信息.同样的信息也以{@link #METRICS_OBJECT_NAME}注册在JMX中
+	 * 
+	 * @return 统计信息
+	 */
+	public static TimerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * 得到所有session任务的统计信息的快照
+	 * 
+	 * @return 统计信息的快照
+	 */
+	public static TimerMetricsSnapshot getMetricsSnapshot() {
+		return metrics.snapshot();
+	}
+
+	/**
+	 * 设置所有session共享的定时器，可用于指定时间轮的tick时长与槽数。已经调度的任务仍由原来的定时器执行，原定时器不会被停止
+	 * <p>
+	 * 如果任务的延时跨度很大(比如同时有亚秒级的任务和数小时的最大连接时长限制)，可以使用{@link HierarchicalWheelTimer}。
+	 * </p>
+	 * 
+	 * @param newTimer
+	 *            新的定时器
+	 * @throws IllegalArgumentException
+	 *             如果newTimer为null
+	 */
+	public static void setTimer(TaskTimer newTimer) {
+		ArgumentValidator.notNull(newTimer, "newTimer");
+		synchronized (SessionTaskHelper.class) {
+			timer = newTimer;
+		}
+	}
+
+	/**
+	 * 得到所有session共享的过期清理器。如果尚未设置，将创建一个使用默认参数的{@link SessionExpirySweeper}
+	 * <p>
+	 * 当大量session可能在同一时刻到期时，使用它代替{@link #setAutoDisconnect(IoSession, int)}，可以在一条线程中分批关闭这些session。
+	 * </p>
+	 * 
+	 * @return 共享的过期清理器
+	 */
+	public static SessionExpirySweeper getExpirySweeper() {
+		SessionExpirySweeper s = expirySweeper;
+		if (s == null) {
+			synchronized (SessionTaskHelper.class) {
+				s = expirySweeper;
+				if (s == null) {
+					s = new SessionExpirySweeper(SessionExpirySweeper.class.getSimpleName());
+					expirySweeper = s;
+				}
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * 设置所有session共享的过期清理器，可用于指定tick时长及每个tick最多关闭的session数。原清理器不会被停止
+	 * 
+	 * @param newSweeper
+	 *            新的过期清理器
+	 * @throws IllegalArgumentException
+	 *             如果newSweeper为null
+	 */
+	public static void setExpirySweeper(SessionExpirySweeper newSweeper) {
+		ArgumentValidator.notNull(newSweeper, "newSweeper");
+		synchronized (SessionTaskHelper.class) {
+			expirySweeper = newSweeper;
+		}
+	}
+
+	/**
+	 * 设置默认的抖动策略.它将被用于没有显式指定抖动策略的{@link #setAutoDisconnect(IoSession, int)}及
+	 * {@link #addAutoCancelTask(IoSession, TimerTaskExt, long, long)}.初始值为{@link JitterPolicy#NONE}
+	 * 
+	 * @param jitter
+	 *            默认的抖动策略
+	 * @throws IllegalArgumentException
+	 *             如果jitter为null
+	 */
+	public static void setDefaultJitter(JitterPolicy jitter) {
+		ArgumentValidator.notNull(jitter, "jitter");
+		defaultJitter = jitter;
+	}
+
+	/**
+	 * 设定该session在指定的时间后自动断开.如果session处于关闭状态,则不进行操作.如果之前已经设定过,则之前的设定将被取消
 	 * 
 	 * @param session
 	 *            欲断开的session
@@ -37,23 +201,38 @@ public class SessionTaskHelper {
 	 *            多少秒后断开
 	 * @throws IllegalArgumentException
 	 *             如果session为null,或者seconds<0
+	 * @see #setDefaultJitter(JitterPolicy)
 	 */
 	public static void setAutoDisconnect(final IoSession session, final int seconds) {
+		setAutoDisconnect(session, seconds, defaultJitter);
+	}
+
+	/**
+	 * 设定该session在指定的时间后自动断开,并对断开的时间加上随机抖动.如果session处于关闭状态,则不进行操作.如果之前已经设定过,则之前的设定将被取消
+	 * <p>
+	 * 同一批连入的session如果使用相同的时间，会在同一时刻断开并同时重连。加上抖动可以把断开时间分散到一个时间窗口内。
+	 * </p>
+	 * 
+	 * @param session
+	 *            欲断开的session
+	 * @param seconds
+	 *            多少秒后断开
+	 * @param jitter
+	 *            抖动策略
+	 * @throws IllegalArgumentException
+	 *             如果session为null,或者seconds<0,或者jitter为null
+	 */
+	public static void setAutoDisconnect(final IoSession session, final int seconds, JitterPolicy jitter) {
 		ArgumentValidator.notNull(session, "session");
 		ArgumentValidator.isTrue(seconds >= 0, "seconds should be >=0: " + seconds);
+		ArgumentValidator.notNull(jitter, "jitter");
 		if (session.isClosing())
 			return;
 
 		TimerTaskExt task = new TimerTaskExt() {
 			@Override
 			public void run() {
-				if (session.containsAttribute(KEY_CANCEL_AUTODISCONNECT)) {
-					session.removeAttribute(KEY_CANCEL_AUTODISCONNECT);
-				} else {
-					session.close();
-				}
-				if (this.getOwner() != null)
-					this.getOwner().cancel();
+				session.close();
 			}
 
 			@Override
@@ -61,11 +240,90 @@ public class SessionTaskHelper {
 				return "auto disconnect after " + seconds + "s";
 			}
 		};
-		addAutoCancelTask(session, task, seconds * 1000, 0);
+		armAutoDisconnect(session, task, seconds * 1000L, jitter, getTimer());
+	}
+
+	/**
+	 * 批量设定多个session在指定的时间后自动断开.效果与对每个session调用{@link #setAutoDisconnect(IoSession, int, JitterPolicy)}相同,
+	 * 但参数只检查一次,所有session共享同一个任务模板,并返回一个可以一次取消所有任务的句柄.处于关闭状态的session将被忽略
+	 * 
+	 * @param sessions
+	 *            欲断开的session
+	 * @param seconds
+	 *            多少秒后断开
+	 * @param jitter
+	 *            抖动策略
+	 * @return 聚合句柄
+	 * @throws IllegalArgumentException
+	 *             如果sessions为null或包含null,或者seconds<0,或者jitter为null
+	 */
+	public static BulkTaskHandle setAutoDisconnect(Collection<IoSession> sessions, int seconds, JitterPolicy jitter) {
+		ArgumentValidator.notNull(sessions, "sessions");
+		ArgumentValidator.collectionNotContainsNull(sessions, "sessions");
+		ArgumentValidator.isTrue(seconds >= 0, "seconds should be >=0: " + seconds);
+		ArgumentValidator.notNull(jitter, "jitter");
+
+		SessionTaskTemplate template = disconnectTemplate(seconds);
+		TaskTimer t = getTimer();
+		long delayMillis = seconds * 1000L;
+		List<Timeout> timeouts = new ArrayList<Timeout>(sessions.size());
+		for (IoSession session : sessions) {
+			if (session.isClosing())
+				continue;
+			timeouts.add(armAutoDisconnect(session, new TemplateTask(template, session), delayMillis, jitter, t));
+		}
+		return new BulkTaskHandle(template.getName(), timeouts);
 	}
 
 	/**
-	 * 取消通过{@link #setAutoDisconnect()}设置的自动断开任务
+	 * 批量设定service所管理的、满足条件的session在指定的时间后自动断开
+	 * 
+	 * @param service
+	 *            IoAcceptor或IoConnector
+	 * @param filter
+	 *            session需要满足的条件
+	 * @param seconds
+	 *            多少秒后断开
+	 * @param jitter
+	 *            抖动策略
+	 * @return 聚合句柄
+	 * @throws IllegalArgumentException
+	 *             如果service或filter为null,或者seconds<0,或者jitter为null
+	 * @see #setAutoDisconnect(Collection, int, JitterPolicy)
+	 */
+	public static BulkTaskHandle setAutoDisconnect(IoService service, Predicate<IoSession> filter, int seconds,
+			JitterPolicy jitter) {
+		return setAutoDisconnect(managedSessions(service, filter), seconds, jitter);
+	}
+
+	/**
+	 * 设定自动断开任务,并取消之前的设定.不检查参数
+	 */
+	private static Timeout armAutoDisconnect(IoSession session, TimerTaskExt task, long delayMillis,
+			JitterPolicy jitter, TaskTimer t) {
+		Timeout timeout = schedule(session, task, delayMillis, 0, jitter, t);
+		Timeout previous = (Timeout) session.setAttribute(KEY_AUTODISCONNECT, timeout);
+		if (previous != null) {
+			previous.cancel();
+		}
+		return timeout;
+	}
+
+	private static SessionTaskTemplate disconnectTemplate(int seconds) {
+		final String name = "auto disconnect after " + seconds + "s";
+		return new SessionTaskTemplate() {
+			public void run(IoSession session) {
+				session.close();
+			}
+
+			public String getName() {
+				return name;
+			}
+		};
+	}
+
+	/**
+	 * 取消通过{@link #setAutoDisconnect(IoSession, int)}设置的自动断开任务
 	 * 
 	 * @param session
 	 *            欲取消断开任务的连接
@@ -74,11 +332,77 @@ public class SessionTaskHelper {
 	 */
 	public static void cancelAutoDisconnect(final IoSession session) {
 		ArgumentValidator.notNull(session, "session");
-		session.setAttribute(KEY_CANCEL_AUTODISCONNECT);
+		Timeout timeout = (Timeout) session.removeAttribute(KEY_AUTODISCONNECT);
+		if (timeout != null) {
+			timeout.cancel();
+		}
+	}
+
+	/**
+	 * 设定该session在连续空闲指定的时间后自动断开.如果session处于关闭状态,则不进行操作.如果之前已经设定过,则之前的设定将被取消
+	 * <p>
+	 * 每次收发信息时需要调用{@link #touch(IoSession)}来记录活动，通常由{@link com.alitag.mina_tools.filters.ActivityFilter}
+	 * 自动完成。touch()只更新一个volatile的时间戳，不会重新调度任务；任务到期时才检查空闲时间，如果尚未达到限制，则按剩余的时间重新调度。
+	 * </p>
+	 * 
+	 * @param session
+	 *            欲断开的session
+	 * @param seconds
+	 *            连续空闲多少秒后断开
+	 * @throws IllegalArgumentException
+	 *             如果session为null,或者seconds<=0
+	 */
+	public static void setIdleDisconnect(final IoSession session, final int seconds) {
+		ArgumentValidator.notNull(session, "session");
+		ArgumentValidator.isTrue(seconds > 0, "seconds should be >0: " + seconds);
+		if (session.isClosing())
+			return;
+
+		IdleDisconnectTask task = new IdleDisconnectTask(session, seconds);
+		IdleDisconnectTask previous = (IdleDisconnectTask) session.setAttribute(KEY_IDLE_DISCONNECT, task);
+		if (previous != null) {
+			previous.cancel();
+		}
+		addAutoCancelTask(session, task, seconds * 1000L, 0, JitterPolicy.NONE);
+	}
+
+	/**
+	 * 取消通过{@link #setIdleDisconnect(IoSession, int)}设置的空闲断开任务
+	 * 
+	 * @param session
+	 *            欲取消断开任务的连接
+	 * @throws IllegalArgumentException
+	 *             如果session为null
+	 */
+	public static void cancelIdleDisconnect(final IoSession session) {
+		ArgumentValidator.notNull(session, "session");
+		IdleDisconnectTask task = (IdleDisconnectTask) session.removeAttribute(KEY_IDLE_DISCONNECT);
+		if (task != null) {
+			task.cancel();
+		}
+	}
+
+	/**
+	 * 记录该session的一次活动，用于{@link #setIdleDisconnect(IoSession, int)}。如果没有设定空闲断开，则不进行操作
+	 * 
+	 * @param session
+	 *            当前的连接对象
+	 * @throws IllegalArgumentException
+	 *             如果session为null
+	 */
+	public static void touch(final IoSession session) {
+		ArgumentValidator.notNull(session, "session");
+		IdleDisconnectTask task = (IdleDisconnectTask) session.getAttribute(KEY_IDLE_DISCONNECT);
+		if (task != null) {
+			task.touch();
+		}
 	}
 
 	/**
 	 * 增加一个在session关闭时会自动取消的任务.可以设置为延时多久后执行,执行一次或每隔一段时间反复执行
+	 * <p>
+	 * 同一个session的所有任务保存在同一个集合中，session关闭时一次性取消，不会为每个任务注册关闭监听器。
+	 * </p>
 	 * 
 	 * @param session
 	 *            当前的连接对象
@@ -88,36 +412,235 @@ public class SessionTaskHelper {
 	 *            多少毫秒后开始运行
 	 * @param period
 	 *            隔多久运行一次.如果为0,表示只运行一次
+	 * @return 任务句柄,可用于取消该任务.调用task.cancel()的效果与之相同
 	 * @throws IllegalArgumentException
 	 *             如果session为null,或者task为null,或者delayMillis<0,或者period<0
+	 * @see #setDefaultJitter(JitterPolicy)
 	 */
-	public static void addAutoCancelTask(final IoSession session, final TimerTaskExt task, long delayMillis, long period) {
+	public static Timeout addAutoCancelTask(final IoSession session, final TimerTaskExt task, long delayMillis, long period) {
+		return addAutoCancelTask(session, task, delayMillis, period, defaultJitter);
+	}
+
+	/**
+	 * 增加一个在session关闭时会自动取消的任务,并对开始运行的时间加上随机抖动.对于反复执行的任务,抖动只作用于第一次执行,之后仍按period执行,
+	 * 因此同一时刻加入的周期任务会被分散到不同的相位上
+	 * 
+	 * @param session
+	 *            当前的连接对象
+	 * @param task
+	 *            要运行的任务
+	 * @param delayMillis
+	 *            多少毫秒后开始运行
+	 * @param period
+	 *            隔多久运行一次.如果为0,表示只运行一次
+	 * @param jitter
+	 *            抖动策略
+	 * @return 任务句柄,可用于取消该任务.调用task.cancel()的效果与之相同
+	 * @throws IllegalArgumentException
+	 *             如果session为null,或者task为null,或者delayMillis<0,或者period<0,或者jitter为null
+	 */
+	public static Timeout addAutoCancelTask(final IoSession session, final TimerTaskExt task, long delayMillis,
+			long period, JitterPolicy jitter) {
 		ArgumentValidator.notNull(session, "session");
 		ArgumentValidator.notNull(task, "task");
 		ArgumentValidator.isTrue(delayMillis >= 0, "delayMillis should be >=0: " + delayMillis);
 		ArgumentValidator.isTrue(period >= 0, "period should be >=0: " + period);
+		ArgumentValidator.notNull(jitter, "jitter");
+
+		return schedule(session, task, delayMillis, period, jitter, getTimer());
+	}
+
+	/**
+	 * 批量增加在session关闭时会自动取消的任务.所有session共享同一个任务模板,到期时以各自的session为参数执行.
+	 * 参数只检查一次,并返回一个可以一次取消所有任务的句柄.处于关闭状态的session将被忽略
+	 * 
+	 * @param sessions
+	 *            任务所属的session
+	 * @param template
+	 *            任务模板
+	 * @param delayMillis
+	 *            多少毫秒后开始运行
+	 * @param period
+	 *            隔多久运行一次.如果为0,表示只运行一次
+	 * @param jitter
+	 *            抖动策略
+	 * @return 聚合句柄
+	 * @throws IllegalArgumentException
+	 *             如果sessions为null或包含null,或者template为null,或者delayMillis<0,或者period<0,或者jitter为null
+	 */
+	public static BulkTaskHandle addAutoCancelTasks(Collection<IoSession> sessions, SessionTaskTemplate template,
+			long delayMillis, long period, JitterPolicy jitter) {
+		ArgumentValidator.notNull(sessions, "sessions");
+		ArgumentValidator.collectionNotContainsNull(sessions, "sessions");
+		ArgumentValidator.notNull(template, "template");
+		ArgumentValidator.isTrue(delayMillis >= 0, "delayMillis should be >=0: " + delayMillis);
+		ArgumentValidator.isTrue(period >= 0, "period should be >=0: " + period);
+		ArgumentValidator.notNull(jitter, "jitter");
 
-		Timer timer = new Timer(task.getName());
-		task.setOwner(timer);
-		if (period > 0) {
-			timer.schedule(task, delayMillis, period);
-		} else {
-			timer.schedule(task, delayMillis);
+		TaskTimer t = getTimer();
+		List<Timeout> timeouts = new ArrayList<Timeout>(sessions.size());
+		for (IoSession session : sessions) {
+			if (session.isClosing())
+				continue;
+			timeouts.add(schedule(session, new TemplateTask(template, session), delayMillis, period, jitter, t));
 		}
+		return new BulkTaskHandle(template.getName(), timeouts);
+	}
+
+	/**
+	 * 批量向service所管理的、满足条件的session增加在session关闭时会自动取消的任务
+	 * 
+	 * @param service
+	 *            IoAcceptor或IoConnector
+	 * @param filter
+	 *            session需要满足的条件
+	 * @param template
+	 *            任务模板
+	 * @param delayMillis
+	 *            多少毫秒后开始运行
+	 * @param period
+	 *            隔多久运行一次.如果为0,表示只运行一次
+	 * @param jitter
+	 *            抖动策略
+	 * @return 聚合句柄
+	 * @throws IllegalArgumentException
+	 *             如果service或filter为null,或者template为null,或者delayMillis<0,或者period<0,或者jitter为null
+	 * @see #addAutoCancelTasks(Collection, SessionTaskTemplate, long, long, JitterPolicy)
+	 */
+	public static BulkTaskHandle addAutoCancelTasks(IoService service, Predicate<IoSession> filter,
+			SessionTaskTemplate template, long delayMillis, long period, JitterPolicy jitter) {
+		return addAutoCancelTasks(managedSessions(service, filter), template, delayMillis, period, jitter);
+	}
+
+	/**
+	 * 调度一个任务并加入session的任务集合.不检查参数
+	 */
+	private static Timeout schedule(IoSession session, TimerTaskExt task, long delayMillis, long period,
+			JitterPolicy jitter, TaskTimer t) {
+		SessionTasks tasks = SessionTasks.of(session);
+		SessionTimeout handle = new SessionTimeout(tasks, task, period, metrics);
+		long delay = jitter.apply(delayMillis);
+		handle.expectAfter(delay);
+		handle.setTimeout(t.schedule(handle, delay, period));
+		task.setTimeout(handle);
 
-		// 生成唯一id
-		final String attrId = "auto cacel task: " + UUID.randomUUID().toString();
-		session.setAttribute(attrId, timer);
+		// session关闭时由SessionTasks自动取消该任务
+		tasks.add(handle);
+		return handle;
+	}
 
-		// session关闭时自动停止该timer
-		session.getCloseFuture().addListener(new IoFutureListener() {
-			public void operationComplete(IoFuture future) {
-				Timer timer = (Timer) session.getAttribute(attrId);
-				if (timer != null) {
-					timer.cancel();
+	/**
+	 * 得到service所管理的、满足条件的所有session
+	 */
+	private static List<IoSession> managedSessions(IoService service, Predicate<IoSession> filter) {
+		ArgumentValidator.notNull(service, "service");
+		ArgumentValidator.notNull(filter, "filter");
+		List<IoSession> sessions = new ArrayList<IoSession>();
+		for (SocketAddress address : service.getManagedServiceAddresses()) {
+			for (IoSession session : service.getManagedSessions(address)) {
+				if (filter.test(session)) {
+					sessions.add(session);
 				}
 			}
-		});
+		}
+		return sessions;
+	}
+
+	/**
+	 * 增加一个在session关闭时会自动取消的周期任务.与{@link #addAutoCancelTask(IoSession, TimerTaskExt, long, long)}不同,
+	 * 所有周期相同的任务共用一个{@link PeriodicTaskGroup},每个周期只唤醒一次定时器,并把到期的任务作为一批交给executor执行
+	 * <p>
+	 * 适用于在每个session上都运行的心跳、轮询等任务。任务将从加入后的下一个组周期开始执行，所以第一次执行的时间早于一个完整的周期。
+	 * </p>
+	 * 
+	 * @param session
+	 *            当前的连接对象
+	 * @param task
+	 *            要运行的任务
+	 * @param periodMillis
+	 *            隔多少毫秒运行一次
+	 * @return 任务句柄,可用于取消该任务.调用task.cancel()的效果与之相同
+	 * @throws IllegalArgumentException
+	 *             如果session为null,或者task为null,或者periodMillis<=0
+	 * @see #setPeriodicExecutor(Executor)
+	 */
+	public static Timeout addPeriodicTask(final IoSession session, final TimerTaskExt task, long periodMillis) {
+		ArgumentValidator.notNull(session, "session");
+		ArgumentValidator.notNull(task, "task");
+		ArgumentValidator.isTrue(periodMillis > 0, "periodMillis should be >0: " + periodMillis);
+
+		SessionTasks tasks = SessionTasks.of(session);
+		SessionTimeout handle = new SessionTimeout(tasks, task, periodMillis, metrics);
+		Timeout member;
+		do {
+			member = periodicGroup(periodMillis).add(handle);
+		} while (member == null);
+		handle.setTimeout(member);
+		task.setTimeout(handle);
+
+		tasks.add(handle);
+		return handle;
+	}
+
+	/**
+	 * 设置用于执行周期任务组中每一批任务的executor.仅对之后新建的周期任务组有效
+	 * 
+	 * @param executor
+	 *            新的executor
+	 * @throws IllegalArgumentException
+	 *             如果executor为null
+	 */
+	public static void setPeriodicExecutor(Executor executor) {
+		ArgumentValidator.notNull(executor, "executor");
+		periodicExecutor = executor;
+	}
+
+	/**
+	 * 得到指定周期的任务组,如果不存在或者已经撤销则创建一个.任务组在没有任务之后撤销自己,并从缓存中移除
+	 */
+	private static PeriodicTaskGroup periodicGroup(long periodMillis) {
+		final Long key = Long.valueOf(periodMillis);
+		PeriodicTaskGroup group = periodicGroups.get(key);
+		if (group != null && group.isRetired()) {
+			periodicGroups.remove(key, group);
+			group = null;
+		}
+		if (group == null) {
+			PeriodicTaskGroup created = new PeriodicTaskGroup(getTimer(), getPeriodicExecutor(), periodMillis) {
+				@Override
+				protected void retired() {
+					periodicGroups.remove(key, this);
+				}
+			};
+			group = periodicGroups.putIfAbsent(key, created);
+			if (group == null) {
+				group = created;
+			}
+		}
+		return group;
+	}
+
+	/**
+	 * 得到用于执行周期任务组的executor.如果尚未设置,将创建一个单线程的executor
+	 */
+	private static Executor getPeriodicExecutor() {
+		Executor e = periodicExecutor;
+		if (e == null) {
+			synchronized (SessionTaskHelper.class) {
+				e = periodicExecutor;
+				if (e == null) {
+					e = Executors.newSingleThreadExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, PeriodicTaskGroup.class.getSimpleName());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+					periodicExecutor = e;
+				}
+			}
+		}
+		return e;
 	}
 
 }
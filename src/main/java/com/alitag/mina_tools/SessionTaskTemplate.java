@@ -0,0 +1,33 @@
+package com.alitag.mina_tools;
+
+import org.apache.mina.common.IoSession;
+
+/**
+ * <p>
+ * 可以被应用到多个session上的任务模板，用于{@link SessionTaskHelper}的批量调度方法。所有session共享同一个模板对象，
+ * 到期时以对应的session为参数调用{@link #run(IoSession)}。
+ * </p>
+ * <p>
+ * 线程安全：该接口的实现类必须线程安全，因为它会被多个session的任务同时调用。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public interface SessionTaskTemplate {
+
+	/**
+	 * 对指定的session执行任务
+	 *
+	 * @param session
+	 *            任务所属的session
+	 */
+	void run(IoSession session);
+
+	/**
+	 * 得到任务的名字
+	 *
+	 * @return 任务的名字
+	 */
+	String getName();
+}
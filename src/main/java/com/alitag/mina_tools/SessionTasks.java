@@ -0,0 +1,186 @@
+package com.alitag.mina_tools;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.mina.common.IdleStatus;
+import org.apache.mina.common.IoFilter;
+import org.apache.mina.common.IoFilterChain;
+import org.apache.mina.common.IoFuture;
+import org.apache.mina.common.IoFutureListener;
+import org.apache.mina.common.IoSession;
+import org.apache.mina.filter.executor.ExecutorFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alitag.mina_tools.timer.Timeout;
+
+/**
+ * <p>
+ * 一个session中所有自动取消任务的集合。它作为一个属性保存在session中，并且只在session上注册一个关闭监听器，
+ * 当session关闭时一次性取消其中所有的任务。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。任务保存在ConcurrentHashMap中，关闭标志为volatile。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+class SessionTasks implements IoFutureListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(SessionTasks.class);
+
+	private static final String KEY_SESSION_TASKS = SessionTasks.class.getName();
+
+	/**
+	 * 交给ExecutorFilter的事件的下一个filter.ExecutorFilter在session的事件队列中轮到该事件时调用它的messageReceived,
+	 * 此时执行作为消息传入的任务,而不再向后传递
+	 */
+	private static final IoFilter.NextFilter RUN_TASK = new IoFilter.NextFilter() {
+		public void messageReceived(IoSession session, Object message) {
+			((Runnable) message).run();
+		}
+
+		public void sessionCreated(IoSession session) {
+		}
+
+		public void sessionOpened(IoSession session) {
+		}
+
+		public void sessionClosed(IoSession session) {
+		}
+
+		public void sessionIdle(IoSession session, IdleStatus status) {
+		}
+
+		public void exceptionCaught(IoSession session, Throwable cause) {
+		}
+
+		public void messageSent(IoSession session, Object message) {
+		}
+
+		public void filterWrite(IoSession session, IoFilter.WriteRequest writeRequest) {
+		}
+
+		public void filterClose(IoSession session) {
+		}
+	};
+
+	private final Map<Timeout, Boolean> tasks = new ConcurrentHashMap<Timeout, Boolean>();
+
+	private final IoSession session;
+
+	private volatile boolean closed;
+
+	/** session的filter链中的ExecutorFilter,在第一次使用时查找 */
+	private volatile ExecutorFilter executorFilter;
+	private volatile boolean executorFilterResolved;
+
+	private SessionTasks(IoSession session) {
+		this.session = session;
+	}
+
+	/**
+	 * 得到session对应的任务集合，如果不存在则创建一个，并注册关闭监听器
+	 *
+	 * @param session
+	 *            当前的连接对象
+	 * @return 任务集合
+	 */
+	static SessionTasks of(IoSession session) {
+		SessionTasks tasks = (SessionTasks) session.getAttribute(KEY_SESSION_TASKS);
+		if (tasks != null) {
+			return tasks;
+		}
+		synchronized (session) {
+			tasks = (SessionTasks) session.getAttribute(KEY_SESSION_TASKS);
+			if (tasks == null) {
+				tasks = new SessionTasks(session);
+				session.setAttribute(KEY_SESSION_TASKS, tasks);
+				session.getCloseFuture().addListener(tasks);
+			}
+		}
+		return tasks;
+	}
+
+	/**
+	 * 加入一个已经调度的任务。如果session已经关闭，则立刻取消该任务
+	 */
+	void add(Timeout timeout) {
+		tasks.put(timeout, Boolean.TRUE);
+		if (closed) {
+			timeout.cancel();
+		} else if (timeout.isExpired()) {
+			// 延时很短的任务可能在加入之前就已经执行完毕
+			tasks.remove(timeout);
+		}
+	}
+
+	void remove(Timeout timeout) {
+		tasks.remove(timeout);
+	}
+
+	/**
+	 * 把任务作为一个事件交给session的filter链中第一个ExecutorFilter.该事件进入ExecutorFilter为该session维护的事件队列,
+	 * 与messageReceived等事件按顺序依次执行,无论ExecutorFilter使用的线程池有几条线程
+	 *
+	 * @return 是否已经交给了ExecutorFilter.如果session没有ExecutorFilter,或者ExecutorFilter拒绝了该任务(比如线程池已经关闭),
+	 *         返回false,此时由调用者在定时器线程中执行该任务
+	 */
+	boolean executeOrdered(Runnable task) {
+		ExecutorFilter filter = getExecutorFilter();
+		if (filter == null) {
+			return false;
+		}
+		try {
+			filter.messageReceived(RUN_TASK, session, task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			logger.warn("session task rejected by executor, run it on the timer thread: " + task + ", session: "
+					+ session, e);
+		} catch (Exception e) {
+			logger.warn("failed to queue session task, run it on the timer thread: " + task + ", session: " + session,
+					e);
+		}
+		return false;
+	}
+
+	/**
+	 * 得到session的filter链中第一个ExecutorFilter.如果没有,返回null
+	 */
+	private ExecutorFilter getExecutorFilter() {
+		if (!executorFilterResolved) {
+			ExecutorFilter found = null;
+			for (IoFilterChain.Entry entry : session.getFilterChain().getAll()) {
+				IoFilter filter = entry.getFilter();
+				if (filter instanceof ExecutorFilter) {
+					found = (ExecutorFilter) filter;
+					break;
+				}
+			}
+			executorFilter = found;
+			executorFilterResolved = true;
+		}
+		return executorFilter;
+	}
+
+	/**
+	 * 得到当前尚未结束的任务数
+	 */
+	int size() {
+		return tasks.size();
+	}
+
+	/**
+	 * session关闭时，取消所有的任务
+	 */
+	public void operationComplete(IoFuture future) {
+		closed = true;
+		for (Timeout timeout : tasks.keySet()) {
+			timeout.cancel();
+		}
+		tasks.clear();
+	}
+}
@@ -0,0 +1,145 @@
+package com.alitag.mina_tools;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alitag.mina_tools.timer.Timeout;
+import com.alitag.mina_tools.timer.TimerMetrics;
+
+/**
+ * <p>
+ * 由{@link SessionTaskHelper#addAutoCancelTask(org.apache.mina.common.IoSession, TimerTaskExt, long, long)}返回的任务句柄。
+ * 它包装了定时器返回的句柄，并在任务结束或被取消时把自己从所属session的{@link SessionTasks}中移除。
+ * </p>
+ * <p>
+ * 如果任务被设置为{@link TimerTaskExt#setSessionOrdered(boolean)}，到期时不在定时器线程中执行，而是作为一个事件交给该session的ExecutorFilter，
+ * 进入它为该session维护的事件队列，与该session的IoHandler事件依次执行。
+ * </p>
+ * <p>
+ * 任务的调度、取消、到期延迟及执行耗时都记录在{@link SessionTaskHelper#getMetrics()}中。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。内部的句柄及取消标志为volatile，其它字段不可变。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+class SessionTimeout implements Timeout, Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(SessionTimeout.class);
+
+	private final SessionTasks owner;
+	private final TimerTaskExt task;
+	private final boolean periodic;
+	private final long periodNanos;
+	private final TimerMetrics metrics;
+
+	/** 下一次计划执行的时间(System.nanoTime()),仅在timed为true时有效 */
+	private volatile long nextFireNanos;
+	private volatile boolean timed;
+
+	/** 定时器返回的句柄。在调度之后才被设置 */
+	private volatile Timeout timeout;
+
+	private volatile boolean cancelled;
+
+	/** 交给session的ExecutorFilter执行的任务.如果在执行之前被取消,则不再执行 */
+	private final Runnable orderedRun = new Runnable() {
+		public void run() {
+			if (!cancelled) {
+				execute();
+			}
+		}
+	};
+
+	/**
+	 * @param periodMillis
+	 *            任务的周期(毫秒),0表示只执行一次
+	 */
+	SessionTimeout(SessionTasks owner, TimerTaskExt task, long periodMillis, TimerMetrics metrics) {
+		this.owner = owner;
+		this.task = task;
+		this.periodic = periodMillis > 0;
+		this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+		this.metrics = metrics;
+	}
+
+	/**
+	 * 设置第一次计划执行的时间,用于统计到期延迟.在调度之前调用
+	 */
+	void expectAfter(long delayMillis) {
+		nextFireNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+		timed = true;
+	}
+
+	/**
+	 * 设置定时器返回的句柄,并记录该任务已被调度
+	 */
+	void setTimeout(Timeout timeout) {
+		this.timeout = timeout;
+		metrics.onScheduled();
+	}
+
+	public void run() {
+		if (!periodic) {
+			owner.remove(this);
+		}
+		if (timed) {
+			long expected = nextFireNanos;
+			metrics.onFired(System.nanoTime() - expected, !periodic);
+			nextFireNanos = expected + periodNanos;
+		} else {
+			metrics.onFired(-1, !periodic);
+		}
+		if (task.isSessionOrdered() && owner.executeOrdered(orderedRun)) {
+			return;
+		}
+		execute();
+	}
+
+	private void execute() {
+		long start = System.nanoTime();
+		try {
+			task.run();
+		} finally {
+			long spent = System.nanoTime() - start;
+			if (metrics.onExecuted(spent, periodNanos)) {
+				logger.warn("task overran its period: " + task.getName() + ", took "
+						+ TimeUnit.NANOSECONDS.toMillis(spent) + "ms");
+			}
+		}
+	}
+
+	public Runnable getTask() {
+		return task;
+	}
+
+	public boolean cancel() {
+		cancelled = true;
+		owner.remove(this);
+		Timeout t = this.timeout;
+		if (t != null && t.cancel()) {
+			metrics.onCancelled();
+			return true;
+		}
+		return false;
+	}
+
+	public boolean isCancelled() {
+		Timeout t = this.timeout;
+		return t != null && t.isCancelled();
+	}
+
+	public boolean isExpired() {
+		Timeout t = this.timeout;
+		return t != null && t.isExpired();
+	}
+
+	@Override
+	public String toString() {
+		return task.getName();
+	}
+}
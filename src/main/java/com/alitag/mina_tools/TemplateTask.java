@@ -0,0 +1,35 @@
+package com.alitag.mina_tools;
+
+import org.apache.mina.common.IoSession;
+
+/**
+ * <p>
+ * 由{@link SessionTaskTemplate}生成的单个session的任务。它只持有模板与session的引用，不需要为每个session构造名字等信息。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它的字段不可变，且模板本身线程安全。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+class TemplateTask extends TimerTaskExt {
+
+	private final SessionTaskTemplate template;
+	private final IoSession session;
+
+	TemplateTask(SessionTaskTemplate template, IoSession session) {
+		this.template = template;
+		this.session = session;
+	}
+
+	@Override
+	public void run() {
+		template.run(session);
+	}
+
+	@Override
+	public String getName() {
+		return template.getName();
+	}
+}
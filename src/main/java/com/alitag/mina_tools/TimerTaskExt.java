@@ -3,9 +3,14 @@ package com.alitag.mina_tools;
 import java.util.Timer;
 import java.util.TimerTask;
 
+import com.alitag.mina_tools.timer.Timeout;
+
 /**
  * 该类扩展了TimerTask。增加了一个指定Timer的引用和一个getName()的虚方法。
  * <p>
+ * 通过{@link SessionTaskHelper}调度的任务由共享的定时器执行，不再拥有独立的Timer。此时可以直接调用{@link #cancel()}来取消该任务。
+ * </p>
+ * <p>
  * 线程安全：该类线程安全。因为它的父类线程安全，且本身也做了适当的同步处理。
  *
  * @author gchangyi
@@ -14,14 +19,81 @@ import java.util.TimerTask;
 public abstract class TimerTaskExt extends TimerTask {
 	private Timer owner;
 
+	/** 由共享定时器调度时得到的句柄 */
+	private volatile Timeout timeout;
+
+	/** 是否在session的线程池中执行 */
+	private volatile boolean sessionOrdered;
+
+	/**
+	 * @deprecated 通过{@link SessionTaskHelper}调度的任务不再拥有独立的Timer，该方法将返回null。请使用{@link #cancel()}
+	 */
+	@Deprecated
 	public Timer getOwner() {
 		return owner;
 	}
 
+	/**
+	 * @deprecated 通过{@link SessionTaskHelper}调度的任务不再拥有独立的Timer
+	 */
+	@Deprecated
 	public void setOwner(Timer owner) {
 		this.owner = owner;
 	}
 
+	/**
+	 * 得到由共享定时器调度时得到的句柄。如果尚未被调度，返回null
+	 *
+	 * @return 任务句柄
+	 */
+	public Timeout getTimeout() {
+		return timeout;
+	}
+
+	void setTimeout(Timeout timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * 是否在session的线程池中执行
+	 *
+	 * @return 是否在session的线程池中执行
+	 */
+	public boolean isSessionOrdered() {
+		return sessionOrdered;
+	}
+
+	/**
+	 * 设置任务到期时是否交给session的ExecutorFilter执行，而不是在定时器线程中执行。默认为false
+	 * <p>
+	 * 任务作为一个事件进入ExecutorFilter为该session维护的事件队列，因此无论ExecutorFilter使用的线程池有几条线程，
+	 * 任务都与该session的messageReceived等IoHandler事件依次执行，访问session的状态时不需要加锁，并且不会阻塞定时器线程。
+	 * 如果session的filter链中没有ExecutorFilter，仍在定时器线程中执行。
+	 * </p>
+	 * <p>
+	 * 需要在调度之前设置。
+	 * </p>
+	 *
+	 * @param sessionOrdered
+	 *            是否在session的线程池中执行
+	 */
+	public void setSessionOrdered(boolean sessionOrdered) {
+		this.sessionOrdered = sessionOrdered;
+	}
+
+	/**
+	 * 取消该任务。除了父类的行为之外，还会从共享定时器中取消该任务
+	 */
+	@Override
+	public boolean cancel() {
+		boolean result = super.cancel();
+		Timeout t = this.timeout;
+		if (t != null) {
+			result = t.cancel() || result;
+		}
+		return result;
+	}
+
 	/**
 	 * 得到task的名字
 	 *
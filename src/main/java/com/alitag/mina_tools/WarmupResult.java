@@ -0,0 +1,82 @@
+package com.alitag.mina_tools;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.mina.common.IoSession;
+
+/**
+ * <p>
+ * {@link ConnectionWarmer#warm(java.util.Collection)}的结果。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变类。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class WarmupResult {
+
+	private final List<IoSession> sessions;
+	private final int connected;
+	private final int failed;
+	private final long elapsedMillis;
+
+	WarmupResult(List<IoSession> sessions, int connected, int failed, long elapsedMillis) {
+		this.sessions = Collections.unmodifiableList(sessions);
+		this.connected = connected;
+		this.failed = failed;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * 得到预热好的session.如果预热的连接被放入了连接池,返回空的列表
+	 *
+	 * @return 预热好的session
+	 */
+	public List<IoSession> getSessions() {
+		return sessions;
+	}
+
+	/**
+	 * 得到成功建立(并完成了预热消息的发送)的连接数
+	 *
+	 * @return 成功的连接数
+	 */
+	public int getConnected() {
+		return connected;
+	}
+
+	/**
+	 * 得到失败的连接数
+	 *
+	 * @return 失败的连接数
+	 */
+	public int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * 得到预热所用的时间
+	 *
+	 * @return 预热所用的时间(毫秒)
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * 是否所有的连接都预热成功
+	 *
+	 * @return 是否全部成功
+	 */
+	public boolean isAllConnected() {
+		return failed == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "connected: " + connected + ", failed: " + failed + ", elapsed: " + elapsedMillis + "ms";
+	}
+}
@@ -0,0 +1,409 @@
+package com.alitag.mina_tools.balance;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.mina.common.IoSession;
+
+import com.alitag.mina_tools.ArgumentValidator;
+import com.alitag.mina_tools.ConnectorHelper;
+import com.alitag.mina_tools.PersistentConnection;
+import com.alitag.mina_tools.ReconnectPolicy;
+
+/**
+ * <p>
+ * 按一致性哈希路由的一组地址。与{@link EndpointGroup}一样，组内每个地址都有一个持久连接，
+ * 不同的是{@link #select(CharSequence)}等方法根据消息的key选出session，相同的key总是发往同一个地址，以提高对方按key缓存的命中率。
+ * </p>
+ * <p>
+ * 每个地址在哈希环上有virtualNodes个虚拟节点，key落在环上顺时针方向的第一个节点所属的地址。
+ * 加入或移除一个地址时，只有约1/n的key改变了归属。如果key所属的地址正在重连，则顺时针继续找下一个已连上的地址，
+ * 该地址恢复后这些key自动回到原处。
+ * </p>
+ * <p>
+ * 哈希环保存为按哈希值排序的long数组及对应的连接数组，增删地址时重新生成并整体替换(copy on write)。
+ * 查找时对key计算64位哈希并二分查找，不加锁也不分配内存。字符串key按其UTF-8编码计算哈希，
+ * 因此{@link #select(CharSequence)}与对同一字符串的UTF-8字节调用{@link #select(byte[])}选出同一个地址。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。增删地址在this的同步块中进行，哈希环由volatile字段持有，生成后不再修改。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class ConsistentHashGroup {
+
+	/** 默认每个地址的虚拟节点数 */
+	public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static final Ring EMPTY = new Ring(new PersistentConnection[0], new long[0], new int[0]);
+
+	private final ConnectorHelper helper;
+	private final ReconnectPolicy policy;
+	private final int virtualNodes;
+
+	private volatile Ring ring = EMPTY;
+
+	/**
+	 * <p>
+	 * 构造函数。每个地址使用默认数量的虚拟节点。
+	 * </p>
+	 *
+	 * @param helper
+	 *            用于建立连接
+	 * @param policy
+	 *            连接断开后的重连策略
+	 * @throws IllegalArgumentException
+	 *             如果任何参数为null
+	 */
+	public ConsistentHashGroup(ConnectorHelper helper, ReconnectPolicy policy) {
+		this(helper, policy, DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param helper
+	 *            用于建立连接
+	 * @param policy
+	 *            连接断开后的重连策略
+	 * @param virtualNodes
+	 *            每个地址的虚拟节点数，越多则各地址分到的key越均匀，但环越大
+	 * @throws IllegalArgumentException
+	 *             如果helper或policy为null,或者virtualNodes<=0
+	 */
+	public ConsistentHashGroup(ConnectorHelper helper, ReconnectPolicy policy, int virtualNodes) {
+		ArgumentValidator.notNull(helper, "helper");
+		ArgumentValidator.notNull(policy, "policy");
+		ArgumentValidator.isTrue(virtualNodes > 0, "virtualNodes should be >0: " + virtualNodes);
+		this.helper = helper;
+		this.policy = policy;
+		this.virtualNodes = virtualNodes;
+	}
+
+	/**
+	 * 向组内加入一个地址并开始连接.如果该地址已经在组内,则不进行操作
+	 *
+	 * @param remote
+	 *            要加入的地址
+	 * @return 是否加入了
+	 * @throws IllegalArgumentException
+	 *             如果remote为null
+	 */
+	public synchronized boolean add(InetSocketAddress remote) {
+		ArgumentValidator.notNull(remote, "remote");
+		PersistentConnection[] members = ring.members;
+		if (indexOf(members, remote) >= 0) {
+			return false;
+		}
+		PersistentConnection[] copy = Arrays.copyOf(members, members.length + 1);
+		copy[copy.length - 1] = helper.connectPersistent(remote, policy);
+		ring = build(copy);
+		return true;
+	}
+
+	/**
+	 * 从组内移除一个地址并关闭到它的连接
+	 *
+	 * @param remote
+	 *            要移除的地址
+	 * @return 是否移除了
+	 */
+	public synchronized boolean remove(InetSocketAddress remote) {
+		PersistentConnection[] members = ring.members;
+		int index = indexOf(members, remote);
+		if (index < 0) {
+			return false;
+		}
+		PersistentConnection removed = members[index];
+		PersistentConnection[] copy = new PersistentConnection[members.length - 1];
+		System.arraycopy(members, 0, copy, 0, index);
+		System.arraycopy(members, index + 1, copy, index, copy.length - index);
+		ring = build(copy);
+		removed.close();
+		return true;
+	}
+
+	/**
+	 * 选出key所属的已连上的session
+	 *
+	 * @param key
+	 *            消息的key
+	 * @return 选中的session,如果组内没有任何已连上的连接,返回null
+	 * @throws IllegalArgumentException
+	 *             如果key为null
+	 */
+	public IoSession select(CharSequence key) {
+		ArgumentValidator.notNull(key, "key");
+		return select(ring, hash(key));
+	}
+
+	/**
+	 * 选出key所属的已连上的session.对字符串的UTF-8编码调用该方法与用字符串调用{@link #select(CharSequence)}的结果相同
+	 *
+	 * @param key
+	 *            消息的key
+	 * @return 选中的session,如果组内没有任何已连上的连接,返回null
+	 * @throws IllegalArgumentException
+	 *             如果key为null
+	 */
+	public IoSession select(byte[] key) {
+		ArgumentValidator.notNull(key, "key");
+		return select(ring, hash(key));
+	}
+
+	/**
+	 * 选出key所属的已连上的session
+	 *
+	 * @param key
+	 *            消息的key,比如用户id
+	 * @return 选中的session,如果组内没有任何已连上的连接,返回null
+	 */
+	public IoSession select(long key) {
+		return select(ring, mix(key));
+	}
+
+	/**
+	 * 得到key当前所属的地址,不考虑连接状态
+	 *
+	 * @param key
+	 *            消息的key
+	 * @return key所属的地址,如果组内没有地址,返回null
+	 * @throws IllegalArgumentException
+	 *             如果key为null
+	 */
+	public InetSocketAddress locate(CharSequence key) {
+		ArgumentValidator.notNull(key, "key");
+		Ring current = ring;
+		if (current.hashes.length == 0) {
+			return null;
+		}
+		return current.members[current.owners[current.indexOf(hash(key))]].getRemote();
+	}
+
+	/**
+	 * 得到组内的所有地址
+	 *
+	 * @return 组内的地址
+	 */
+	public List<InetSocketAddress> getEndpoints() {
+		PersistentConnection[] members = ring.members;
+		List<InetSocketAddress> endpoints = new ArrayList<InetSocketAddress>(members.length);
+		for (PersistentConnection member : members) {
+			endpoints.add(member.getRemote());
+		}
+		return endpoints;
+	}
+
+	/**
+	 * 得到组内的地址数
+	 *
+	 * @return 地址数
+	 */
+	public int size() {
+		return ring.members.length;
+	}
+
+	/**
+	 * 得到每个地址的虚拟节点数
+	 *
+	 * @return 虚拟节点数
+	 */
+	public int getVirtualNodes() {
+		return virtualNodes;
+	}
+
+	/**
+	 * 关闭组内所有的连接并清空该组
+	 */
+	public synchronized void close() {
+		for (PersistentConnection member : ring.members) {
+			member.close();
+		}
+		ring = EMPTY;
+	}
+
+	/**
+	 * 从key所在的位置开始顺时针找第一个已连上的session
+	 */
+	private static IoSession select(Ring current, long hash) {
+		if (current.hashes.length == 0) {
+			return null;
+		}
+		int start = current.indexOf(hash);
+		IoSession session = current.members[current.owners[start]].getSession();
+		return session != null ? session : fallback(current, start);
+	}
+
+	/**
+	 * key所属的地址未连上时，从start开始顺时针继续找。每个地址只检查一次，所有地址都检查过后即停止，
+	 * 不会在同一个未连上的地址的多个虚拟节点上重复检查。地址数不超过64时用一个long记录检查过的地址，不分配内存
+	 */
+	private static IoSession fallback(Ring current, int start) {
+		int n = current.hashes.length;
+		int members = current.members.length;
+		long[] checked = members > 64 ? new long[(members + 63) >>> 6] : null;
+		long checkedBits = 0;
+		int first = current.owners[start];
+		if (checked == null) {
+			checkedBits = 1L << first;
+		} else {
+			checked[first >>> 6] |= 1L << first;
+		}
+		int remaining = members - 1;
+		for (int i = start + 1; remaining > 0; i++) {
+			if (i == n) {
+				i = 0;
+			}
+			int owner = current.owners[i];
+			if (checked == null) {
+				if ((checkedBits & (1L << owner)) != 0) {
+					continue;
+				}
+				checkedBits |= 1L << owner;
+			} else {
+				if ((checked[owner >>> 6] & (1L << owner)) != 0) {
+					continue;
+				}
+				checked[owner >>> 6] |= 1L << owner;
+			}
+			remaining--;
+			IoSession session = current.members[owner].getSession();
+			if (session != null) {
+				return session;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 生成新的哈希环
+	 */
+	private Ring build(PersistentConnection[] members) {
+		int n = members.length * virtualNodes;
+		final long[] nodeHashes = new long[n];
+		int[] nodeOwners = new int[n];
+		for (int i = 0; i < members.length; i++) {
+			InetSocketAddress remote = members[i].getRemote();
+			String name = remote.getHostString() + ":" + remote.getPort() + "#";
+			for (int v = 0; v < virtualNodes; v++) {
+				nodeHashes[i * virtualNodes + v] = hash(name + v);
+				nodeOwners[i * virtualNodes + v] = i;
+			}
+		}
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Long.compare(nodeHashes[a], nodeHashes[b]);
+			}
+		});
+		long[] hashes = new long[n];
+		int[] owners = new int[n];
+		for (int i = 0; i < n; i++) {
+			hashes[i] = nodeHashes[order[i]];
+			owners[i] = nodeOwners[order[i]];
+		}
+		return new Ring(members, hashes, owners);
+	}
+
+	private static int indexOf(PersistentConnection[] members, InetSocketAddress remote) {
+		for (int i = 0; i < members.length; i++) {
+			if (members[i].getRemote().equals(remote)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 64位的FNV-1a哈希,再经过mix使各位分布均匀
+	 */
+	static long hash(byte[] key) {
+		long h = FNV_OFFSET;
+		for (byte b : key) {
+			h = (h ^ (b & 0xff)) * FNV_PRIME;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * 对key的UTF-8编码计算与{@link #hash(byte[])}相同的哈希.逐个字符编码并计算,不分配内存.
+	 * 与String.getBytes一样,不成对的代理字符按'?'编码
+	 */
+	static long hash(CharSequence key) {
+		long h = FNV_OFFSET;
+		for (int i = 0, len = key.length(); i < len; i++) {
+			char c = key.charAt(i);
+			if (c < 0x80) {
+				h = (h ^ c) * FNV_PRIME;
+			} else if (c < 0x800) {
+				h = (h ^ (0xc0 | (c >>> 6))) * FNV_PRIME;
+				h = (h ^ (0x80 | (c & 0x3f))) * FNV_PRIME;
+			} else if (!Character.isSurrogate(c)) {
+				h = (h ^ (0xe0 | (c >>> 12))) * FNV_PRIME;
+				h = (h ^ (0x80 | ((c >>> 6) & 0x3f))) * FNV_PRIME;
+				h = (h ^ (0x80 | (c & 0x3f))) * FNV_PRIME;
+			} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(key.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, key.charAt(++i));
+				h = (h ^ (0xf0 | (cp >>> 18))) * FNV_PRIME;
+				h = (h ^ (0x80 | ((cp >>> 12) & 0x3f))) * FNV_PRIME;
+				h = (h ^ (0x80 | ((cp >>> 6) & 0x3f))) * FNV_PRIME;
+				h = (h ^ (0x80 | (cp & 0x3f))) * FNV_PRIME;
+			} else {
+				h = (h ^ '?') * FNV_PRIME;
+			}
+		}
+		return mix(h);
+	}
+
+	/**
+	 * MurmurHash3的fmix64
+	 */
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * 哈希环,生成后不再修改
+	 */
+	private static final class Ring {
+		final PersistentConnection[] members;
+		final long[] hashes;
+		/** 每个节点所属的地址在members中的下标 */
+		final int[] owners;
+
+		Ring(PersistentConnection[] members, long[] hashes, int[] owners) {
+			this.members = members;
+			this.hashes = hashes;
+			this.owners = owners;
+		}
+
+		/**
+		 * 顺时针方向第一个哈希值>=hash的节点,超过最大值时回到第一个节点
+		 */
+		int indexOf(long hash) {
+			int index = Arrays.binarySearch(hashes, hash);
+			if (index < 0) {
+				index = -index - 1;
+			}
+			return index == hashes.length ? 0 : index;
+		}
+	}
+}
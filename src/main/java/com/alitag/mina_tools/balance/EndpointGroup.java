@@ -0,0 +1,162 @@
+package com.alitag.mina_tools.balance;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.mina.common.IoSession;
+
+import com.alitag.mina_tools.ArgumentValidator;
+import com.alitag.mina_tools.ConnectorHelper;
+import com.alitag.mina_tools.PersistentConnection;
+import com.alitag.mina_tools.ReconnectPolicy;
+
+/**
+ * <p>
+ * 一组提供相同服务的地址。组内每个地址都有一个持久连接(断开后自动重连)，每次发送消息前调用{@link #select()}，由LoadBalancer选出一个session。
+ * </p>
+ * <p>
+ * 组内的连接保存在一个数组中，增删地址时复制一个新数组替换旧的(copy on write)，因此{@link #select()}不加锁也不分配内存。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。增删地址在this的同步块中进行，数组由volatile字段持有。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class EndpointGroup {
+
+	private static final PersistentConnection[] EMPTY = new PersistentConnection[0];
+
+	private final ConnectorHelper helper;
+	private final ReconnectPolicy policy;
+	private final LoadBalancer balancer;
+
+	private volatile PersistentConnection[] members = EMPTY;
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param helper
+	 *            用于建立连接
+	 * @param policy
+	 *            连接断开后的重连策略
+	 * @param balancer
+	 *            负载均衡策略
+	 * @throws IllegalArgumentException
+	 *             如果任何参数为null
+	 */
+	public EndpointGroup(ConnectorHelper helper, ReconnectPolicy policy, LoadBalancer balancer) {
+		ArgumentValidator.notNull(helper, "helper");
+		ArgumentValidator.notNull(policy, "policy");
+		ArgumentValidator.notNull(balancer, "balancer");
+		this.helper = helper;
+		this.policy = policy;
+		this.balancer = balancer;
+	}
+
+	/**
+	 * 向组内加入一个地址并开始连接.如果该地址已经在组内,则不进行操作
+	 *
+	 * @param remote
+	 *            要加入的地址
+	 * @return 是否加入了
+	 * @throws IllegalArgumentException
+	 *             如果remote为null
+	 */
+	public synchronized boolean add(InetSocketAddress remote) {
+		ArgumentValidator.notNull(remote, "remote");
+		if (indexOf(remote) >= 0) {
+			return false;
+		}
+		PersistentConnection[] copy = Arrays.copyOf(members, members.length + 1);
+		copy[copy.length - 1] = helper.connectPersistent(remote, policy);
+		members = copy;
+		return true;
+	}
+
+	/**
+	 * 从组内移除一个地址并关闭到它的连接
+	 *
+	 * @param remote
+	 *            要移除的地址
+	 * @return 是否移除了
+	 */
+	public synchronized boolean remove(InetSocketAddress remote) {
+		int index = indexOf(remote);
+		if (index < 0) {
+			return false;
+		}
+		PersistentConnection removed = members[index];
+		PersistentConnection[] copy = new PersistentConnection[members.length - 1];
+		System.arraycopy(members, 0, copy, 0, index);
+		System.arraycopy(members, index + 1, copy, index, copy.length - index);
+		members = copy;
+		removed.close();
+		return true;
+	}
+
+	/**
+	 * 由负载均衡策略选出一个已连上的session
+	 *
+	 * @return 选中的session,如果组内没有任何已连上的连接,返回null
+	 */
+	public IoSession select() {
+		return balancer.select(members);
+	}
+
+	/**
+	 * 得到组内的所有地址
+	 *
+	 * @return 组内的地址
+	 */
+	public List<InetSocketAddress> getEndpoints() {
+		PersistentConnection[] current = members;
+		List<InetSocketAddress> endpoints = new ArrayList<InetSocketAddress>(current.length);
+		for (PersistentConnection member : current) {
+			endpoints.add(member.getRemote());
+		}
+		return endpoints;
+	}
+
+	/**
+	 * 得到组内的地址数
+	 *
+	 * @return 地址数
+	 */
+	public int size() {
+		return members.length;
+	}
+
+	/**
+	 * 得到负载均衡策略
+	 *
+	 * @return 负载均衡策略
+	 */
+	public LoadBalancer getBalancer() {
+		return balancer;
+	}
+
+	/**
+	 * 关闭组内所有的连接并清空该组
+	 */
+	public synchronized void close() {
+		for (PersistentConnection member : members) {
+			member.close();
+		}
+		members = EMPTY;
+	}
+
+	private int indexOf(InetSocketAddress remote) {
+		for (int i = 0; i < members.length; i++) {
+			if (members[i].getRemote().equals(remote)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,55 @@
+package com.alitag.mina_tools.balance;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.mina.common.IoSession;
+
+import com.alitag.mina_tools.PersistentConnection;
+
+/**
+ * <p>
+ * 最少待发送消息的负载均衡策略。选择session.getScheduledWriteRequests()最小的连接，即写缓冲中积压最少的连接。
+ * 积压相同的连接中随机选择一个(蓄水池抽样)，避免总是选中排在前面的连接。
+ * </p>
+ * <p>
+ * 每次选择都要检查所有的连接，连接数较多时可以考虑使用{@link PowerOfTwoChoicesBalancer}。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是无状态的。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class LeastOutstandingBalancer implements LoadBalancer {
+
+	public IoSession select(PersistentConnection[] members) {
+		int n = members.length;
+		if (n == 0) {
+			return null;
+		}
+		IoSession best = null;
+		int bestPending = Integer.MAX_VALUE;
+		int ties = 0;
+		for (int i = 0; i < n; i++) {
+			IoSession session = members[i].getSession();
+			if (session == null) {
+				continue;
+			}
+			int pending = session.getScheduledWriteRequests();
+			if (pending < bestPending) {
+				best = session;
+				bestPending = pending;
+				ties = 1;
+			} else if (pending == bestPending && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+				best = session;
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public String toString() {
+		return "LeastOutstandingBalancer";
+	}
+}
@@ -0,0 +1,31 @@
+package com.alitag.mina_tools.balance;
+
+import org.apache.mina.common.IoSession;
+
+import com.alitag.mina_tools.PersistentConnection;
+
+/**
+ * <p>
+ * 负载均衡策略。从一组连接中选出一个已连上的session用于发送下一条消息。
+ * </p>
+ * <p>
+ * 该方法会在每条消息发送前被调用，实现时不应加锁，也不应分配内存。
+ * </p>
+ * <p>
+ * 线程安全：实现类必须线程安全。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public interface LoadBalancer {
+
+	/**
+	 * 从members中选出一个已连上的session
+	 *
+	 * @param members
+	 *            候选的连接，调用者保证不会修改该数组
+	 * @return 选中的session，如果没有任何已连上的连接，返回null
+	 */
+	IoSession select(PersistentConnection[] members);
+}
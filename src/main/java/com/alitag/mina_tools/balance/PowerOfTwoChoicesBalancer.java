@@ -0,0 +1,61 @@
+package com.alitag.mina_tools.balance;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.mina.common.IoSession;
+
+import com.alitag.mina_tools.PersistentConnection;
+
+/**
+ * <p>
+ * 二选一(power of two choices)的负载均衡策略。随机取两个连接，选择其中session.getScheduledWriteRequests()较小的一个。
+ * 它的代价与连接数无关，而负载的均衡程度接近于检查所有连接的{@link LeastOutstandingBalancer}。
+ * </p>
+ * <p>
+ * 如果取到的两个连接都在重连，则退化为从随机位置开始找第一个已连上的连接。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是无状态的。随机数由ThreadLocalRandom生成。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class PowerOfTwoChoicesBalancer implements LoadBalancer {
+
+	public IoSession select(PersistentConnection[] members) {
+		int n = members.length;
+		if (n == 0) {
+			return null;
+		}
+		if (n == 1) {
+			return members[0].getSession();
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int i = random.nextInt(n);
+		int j = random.nextInt(n - 1);
+		if (j >= i) {
+			j++;
+		}
+		IoSession a = members[i].getSession();
+		IoSession b = members[j].getSession();
+		if (a != null && b != null) {
+			return a.getScheduledWriteRequests() <= b.getScheduledWriteRequests() ? a : b;
+		}
+		if (a != null || b != null) {
+			return a != null ? a : b;
+		}
+		for (int k = 0; k < n; k++) {
+			IoSession session = members[(i + k) % n].getSession();
+			if (session != null) {
+				return session;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "PowerOfTwoChoicesBalancer";
+	}
+}
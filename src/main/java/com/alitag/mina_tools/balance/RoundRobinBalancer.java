@@ -0,0 +1,43 @@
+package com.alitag.mina_tools.balance;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.common.IoSession;
+
+import com.alitag.mina_tools.PersistentConnection;
+
+/**
+ * <p>
+ * 轮询的负载均衡策略。依次选择每个连接，跳过正在重连的连接，已连上的连接分到的消息数相同。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。轮询的位置由原子变量保存。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class RoundRobinBalancer implements LoadBalancer {
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	public IoSession select(PersistentConnection[] members) {
+		int n = members.length;
+		if (n == 0) {
+			return null;
+		}
+		// 遇到正在重连的连接时继续推进轮询位置,而不是直接取它后面的一个,否则后面的那个连接会分到双倍的消息
+		for (int i = 0; i < n; i++) {
+			IoSession session = members[(next.getAndIncrement() & Integer.MAX_VALUE) % n].getSession();
+			if (session != null) {
+				return session;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "RoundRobinBalancer";
+	}
+}
@@ -0,0 +1,33 @@
+package com.alitag.mina_tools.filters;
+
+import org.apache.mina.common.IoFilterAdapter;
+import org.apache.mina.common.IoSession;
+
+import com.alitag.mina_tools.SessionTaskHelper;
+
+/**
+ * <p>
+ * 该类是Mina的IoFilter的一个实现类，它在每次收到或发出信息时调用{@link SessionTaskHelper#touch(IoSession)}，
+ * 用于配合{@link SessionTaskHelper#setIdleDisconnect(IoSession, int)}实现空闲自动断开。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是无状态的。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class ActivityFilter extends IoFilterAdapter {
+
+	@Override
+	public void messageReceived(NextFilter nextFilter, IoSession session, Object message) {
+		SessionTaskHelper.touch(session);
+		nextFilter.messageReceived(session, message);
+	}
+
+	@Override
+	public void messageSent(NextFilter nextFilter, IoSession session, Object message) {
+		SessionTaskHelper.touch(session);
+		nextFilter.messageSent(session, message);
+	}
+}
@@ -0,0 +1,51 @@
+package com.alitag.mina_tools.filters;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import org.apache.mina.common.IoFilterAdapter;
+import org.apache.mina.common.IoSession;
+
+import com.alitag.mina_tools.ArgumentValidator;
+import com.alitag.mina_tools.CircuitBreakerRegistry;
+
+/**
+ * <p>
+ * 该类是Mina的IoFilter的一个实现类，它把session中的每次exceptionCaught记为对方地址的断路器的一次失败。
+ * 断路器打开后，到该地址的新连接将立刻失败，已经建立的连接不受影响。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为CircuitBreakerRegistry是线程安全的。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class CircuitBreakerFilter extends IoFilterAdapter {
+
+	private final CircuitBreakerRegistry breakers;
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 * 
+	 * @param breakers
+	 *            记录失败的断路器
+	 * @throws IllegalArgumentException
+	 *             如果breakers为null
+	 */
+	public CircuitBreakerFilter(CircuitBreakerRegistry breakers) {
+		ArgumentValidator.notNull(breakers, "breakers");
+		this.breakers = breakers;
+	}
+
+	@Override
+	public void exceptionCaught(NextFilter nextFilter, IoSession session, Throwable cause) {
+		SocketAddress remote = session.getRemoteAddress();
+		if (remote instanceof InetSocketAddress) {
+			breakers.get((InetSocketAddress) remote).onFailure();
+		}
+		nextFilter.exceptionCaught(session, cause);
+	}
+}
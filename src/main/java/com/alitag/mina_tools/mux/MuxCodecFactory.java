@@ -0,0 +1,107 @@
+package com.alitag.mina_tools.mux;
+
+import org.apache.mina.common.ByteBuffer;
+import org.apache.mina.common.IoSession;
+import org.apache.mina.filter.codec.CumulativeProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolCodecFactory;
+import org.apache.mina.filter.codec.ProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolDecoderException;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.ProtocolEncoder;
+import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+
+import com.alitag.mina_tools.ArgumentValidator;
+
+/**
+ * <p>
+ * 该类是多路复用协议的编解码器的工厂类，编码及解码的对象为{@link MuxFrame}。把它设置到MinaConfig.codecFactory中，
+ * 即可使ConnectorBuilder或AcceptorBuilder生成的连接使用多路复用协议。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为编码器及解码器都是无状态的(解码器的累积缓冲区由mina保存在session中)。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class MuxCodecFactory implements ProtocolCodecFactory {
+
+	/** 默认的每帧payload的最大长度 */
+	public static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+
+	private final int maxFrameSize;
+	private final ProtocolEncoder encoder = new Encoder();
+	private final ProtocolDecoder decoder = new Decoder();
+
+	/**
+	 * <p>
+	 * 默认构造函数。每帧payload的最大长度为{@link #DEFAULT_MAX_FRAME_SIZE}。
+	 * </p>
+	 */
+	public MuxCodecFactory() {
+		this(DEFAULT_MAX_FRAME_SIZE);
+	}
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 * 
+	 * @param maxFrameSize
+	 *            解码时可接受的每帧payload的最大长度，超过时抛出ProtocolDecoderException。应不小于对方MuxIoHandler的maxFrameSize
+	 * @throws IllegalArgumentException
+	 *             如果maxFrameSize<=0
+	 */
+	public MuxCodecFactory(int maxFrameSize) {
+		ArgumentValidator.isTrue(maxFrameSize > 0, "maxFrameSize should be >0: " + maxFrameSize);
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	public ProtocolEncoder getEncoder() {
+		return encoder;
+	}
+
+	public ProtocolDecoder getDecoder() {
+		return decoder;
+	}
+
+	@Override
+	public String toString() {
+		return "MuxCodecFactory(maxFrameSize=" + maxFrameSize + ")";
+	}
+
+	private static final class Encoder extends ProtocolEncoderAdapter {
+		public void encode(IoSession session, Object message, ProtocolEncoderOutput out) {
+			MuxFrame frame = (MuxFrame) message;
+			byte[] payload = frame.getPayload();
+			ByteBuffer buffer = ByteBuffer.allocate(4 + MuxFrame.HEADER_SIZE + payload.length);
+			buffer.putInt(MuxFrame.HEADER_SIZE + payload.length);
+			buffer.put(frame.getType());
+			buffer.putInt(frame.getStreamId());
+			buffer.put(payload);
+			buffer.flip();
+			out.write(buffer);
+		}
+	}
+
+	private final class Decoder extends CumulativeProtocolDecoder {
+		@Override
+		protected boolean doDecode(IoSession session, ByteBuffer in, ProtocolDecoderOutput out)
+				throws ProtocolDecoderException {
+			if (!in.prefixedDataAvailable(4, MuxFrame.HEADER_SIZE + maxFrameSize)) {
+				return false;
+			}
+			int length = in.getInt();
+			if (length < MuxFrame.HEADER_SIZE) {
+				throw new ProtocolDecoderException("invalid mux frame length: " + length);
+			}
+			byte type = in.get();
+			int streamId = in.getInt();
+			byte[] payload = new byte[length - MuxFrame.HEADER_SIZE];
+			in.get(payload);
+			out.write(new MuxFrame(type, streamId, payload));
+			return true;
+		}
+	}
+}
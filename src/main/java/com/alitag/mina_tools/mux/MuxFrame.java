@@ -0,0 +1,100 @@
+package com.alitag.mina_tools.mux;
+
+/**
+ * <p>
+ * 多路复用协议中的一帧。每一帧属于一个逻辑流(由streamId标识)，在线路上的格式为：
+ * </p>
+ * 
+ * <pre>
+ * | length(4字节,不含自身) | type(1字节) | streamId(4字节) | payload(length-5字节) |
+ * </pre>
+ * <p>
+ * 帧的类型有：
+ * <ul>
+ * <li>OPEN: 打开一个流，没有payload
+ * <li>DATA: 流上的数据
+ * <li>WINDOW_UPDATE: 接收方处理完数据后归还的发送额度，payload为4字节的额度
+ * <li>CLOSE: 发送方不再发送数据(半关闭)，没有payload
+ * <li>RESET: 立即终止一个流，没有payload
+ * </ul>
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变类。payload数组在创建后不应被修改。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public final class MuxFrame {
+
+	public static final byte OPEN = 1;
+	public static final byte DATA = 2;
+	public static final byte WINDOW_UPDATE = 3;
+	public static final byte CLOSE = 4;
+	public static final byte RESET = 5;
+
+	/** type及streamId的长度 */
+	static final int HEADER_SIZE = 5;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final byte type;
+	private final int streamId;
+	private final byte[] payload;
+
+	MuxFrame(byte type, int streamId, byte[] payload) {
+		this.type = type;
+		this.streamId = streamId;
+		this.payload = payload;
+	}
+
+	static MuxFrame open(int streamId) {
+		return new MuxFrame(OPEN, streamId, EMPTY);
+	}
+
+	static MuxFrame data(int streamId, byte[] payload) {
+		return new MuxFrame(DATA, streamId, payload);
+	}
+
+	static MuxFrame windowUpdate(int streamId, int delta) {
+		byte[] payload = new byte[] { (byte) (delta >>> 24), (byte) (delta >>> 16), (byte) (delta >>> 8), (byte) delta };
+		return new MuxFrame(WINDOW_UPDATE, streamId, payload);
+	}
+
+	static MuxFrame close(int streamId) {
+		return new MuxFrame(CLOSE, streamId, EMPTY);
+	}
+
+	static MuxFrame reset(int streamId) {
+		return new MuxFrame(RESET, streamId, EMPTY);
+	}
+
+	public byte getType() {
+		return type;
+	}
+
+	public int getStreamId() {
+		return streamId;
+	}
+
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	/**
+	 * 得到WINDOW_UPDATE帧中归还的额度
+	 *
+	 * @return 额度,如果payload不是4字节,返回0
+	 */
+	public int getWindowDelta() {
+		if (payload.length != 4) {
+			return 0;
+		}
+		return (payload[0] & 0xff) << 24 | (payload[1] & 0xff) << 16 | (payload[2] & 0xff) << 8 | (payload[3] & 0xff);
+	}
+
+	@Override
+	public String toString() {
+		return "MuxFrame(type=" + type + ", stream=" + streamId + ", " + payload.length + " bytes)";
+	}
+}
@@ -0,0 +1,124 @@
+package com.alitag.mina_tools.mux;
+
+import org.apache.mina.common.IoHandlerAdapter;
+import org.apache.mina.common.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alitag.mina_tools.ArgumentValidator;
+
+/**
+ * <p>
+ * 多路复用协议的IoHandler。它在每个session上维护一个{@link MuxSession}，并把收到的帧分发给对应的逻辑流，
+ * 流上的事件通过{@link MuxStreamListener}通知使用者。需要与{@link MuxCodecFactory}一起使用，比如：
+ * </p>
+ * 
+ * <pre>
+ * MinaConfig config = new MinaConfig();
+ * config.codecFactory = new MuxCodecFactory();
+ * IoConnector connector = new ConnectorBuilder(config).getConnector();
+ * ConnectorHelper helper = new ConnectorHelper(connector, new MuxIoHandler(listener, true));
+ * MuxStream stream = MuxSession.of(helper.connectTo(...)).openStream();
+ * </pre>
+ * <p>
+ * 双方的initialWindow必须相同。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变类。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class MuxIoHandler extends IoHandlerAdapter {
+
+	private static final Logger logger = LoggerFactory.getLogger(MuxIoHandler.class);
+
+	/** 默认的每个流的初始额度(字节) */
+	public static final int DEFAULT_INITIAL_WINDOW = 65536;
+
+	/** 默认的同时写入mina的最大帧数 */
+	public static final int DEFAULT_MAX_IN_FLIGHT_FRAMES = 16;
+
+	private final MuxStreamListener listener;
+	private final boolean client;
+	private final int initialWindow;
+	private final int maxFrameSize;
+	private final int maxInFlightFrames;
+
+	/**
+	 * <p>
+	 * 构造函数。使用默认的额度、帧长度及同时写入的帧数。
+	 * </p>
+	 * 
+	 * @param listener
+	 *            流的事件监听器
+	 * @param client
+	 *            是否是客户端，决定本方打开的流的id的奇偶
+	 * @throws IllegalArgumentException
+	 *             如果listener为null
+	 */
+	public MuxIoHandler(MuxStreamListener listener, boolean client) {
+		this(listener, client, DEFAULT_INITIAL_WINDOW, MuxCodecFactory.DEFAULT_MAX_FRAME_SIZE,
+				DEFAULT_MAX_IN_FLIGHT_FRAMES);
+	}
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 * 
+	 * @param listener
+	 *            流的事件监听器
+	 * @param client
+	 *            是否是客户端，决定本方打开的流的id的奇偶
+	 * @param initialWindow
+	 *            每个流的初始额度(字节)，即对方未归还额度时最多可以发送的数据量
+	 * @param maxFrameSize
+	 *            发送时每帧payload的最大长度，不能超过对方MuxCodecFactory的maxFrameSize
+	 * @param maxInFlightFrames
+	 *            同时写入mina但尚未发送完的最大帧数
+	 * @throws IllegalArgumentException
+	 *             如果listener为null,或者任何数值参数<=0
+	 */
+	public MuxIoHandler(MuxStreamListener listener, boolean client, int initialWindow, int maxFrameSize,
+			int maxInFlightFrames) {
+		ArgumentValidator.notNull(listener, "listener");
+		ArgumentValidator.isTrue(initialWindow > 0, "initialWindow should be >0: " + initialWindow);
+		ArgumentValidator.isTrue(maxFrameSize > 0, "maxFrameSize should be >0: " + maxFrameSize);
+		ArgumentValidator.isTrue(maxInFlightFrames > 0, "maxInFlightFrames should be >0: " + maxInFlightFrames);
+		this.listener = listener;
+		this.client = client;
+		this.initialWindow = initialWindow;
+		this.maxFrameSize = maxFrameSize;
+		this.maxInFlightFrames = maxInFlightFrames;
+	}
+
+	@Override
+	public void sessionCreated(IoSession session) {
+		session.setAttribute(MuxSession.KEY,
+				new MuxSession(session, listener, client, initialWindow, maxFrameSize, maxInFlightFrames));
+	}
+
+	@Override
+	public void messageReceived(IoSession session, Object message) {
+		MuxSession mux = MuxSession.of(session);
+		if (mux != null) {
+			mux.onFrame((MuxFrame) message);
+		}
+	}
+
+	@Override
+	public void sessionClosed(IoSession session) {
+		MuxSession mux = MuxSession.of(session);
+		if (mux != null) {
+			mux.onSessionClosed();
+		}
+	}
+
+	@Override
+	public void exceptionCaught(IoSession session, Throwable cause) {
+		logger.warn("mux session error, closing " + session, cause);
+		session.close();
+	}
+}
@@ -0,0 +1,345 @@
+package com.alitag.mina_tools.mux;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.common.IoFuture;
+import org.apache.mina.common.IoFutureListener;
+import org.apache.mina.common.IoSession;
+import org.apache.mina.common.WriteFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * 一个IoSession上的多路复用状态，它管理该session上的所有逻辑流。由{@link MuxIoHandler}在session创建时生成并保存在session的属性中，
+ * 通过{@link #of(IoSession)}得到。
+ * </p>
+ * <p>
+ * 发送时，有数据可发的流排成一个队列，每次从队首取出一个流发送一帧(不超过maxFrameSize及该流的额度)，再把它放回队尾，
+ * 使各个流公平地交替发送。同时写入mina但尚未发送完的帧不超过maxInFlightFrames个，其余的数据留在各个流自己的队列中，
+ * 这样后写入的流不必排在先写入的大量数据后面。
+ * </p>
+ * <p>
+ * 客户端打开的流的id为奇数，服务器端打开的流的id为偶数，因此双方可以同时打开流而不冲突。对方打开的流的id如果与本方的奇偶性相同，
+ * 则以RESET拒绝。
+ * </p>
+ * <p>
+ * 对方违反流量控制时重置该流：发送的数据超过了本方给出的额度，或者归还的额度不是正数、归还后的额度超过了Integer.MAX_VALUE。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。发送队列及所有流的状态由this的锁保护，监听器在锁之外调用。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class MuxSession {
+
+	private static final Logger logger = LoggerFactory.getLogger(MuxSession.class);
+
+	static final String KEY = MuxSession.class.getName();
+
+	private final IoSession session;
+	private final MuxStreamListener listener;
+	private final int initialWindow;
+	private final int maxFrameSize;
+	private final int maxInFlightFrames;
+
+	/** 本方是否是客户端,即本方打开的流的id是否为奇数 */
+	private final boolean client;
+
+	/** 接收方累计处理了多少数据后归还额度 */
+	private final int windowUpdateThreshold;
+
+	private final AtomicInteger nextStreamId;
+	private final ConcurrentHashMap<Integer, MuxStream> streams = new ConcurrentHashMap<Integer, MuxStream>();
+
+	// 以下字段由this保护
+	private final ArrayDeque<MuxStream> ready = new ArrayDeque<MuxStream>();
+	private int inFlightFrames;
+	private boolean closed;
+
+	/** 是否正在pump()的循环中.写入已经关闭的session时frameSent会在write()中被同步调用,此时由外层的循环继续发送 */
+	private boolean pumping;
+
+	private final IoFutureListener frameSent = new IoFutureListener() {
+		public void operationComplete(IoFuture future) {
+			synchronized (MuxSession.this) {
+				inFlightFrames--;
+				if (!((WriteFuture) future).isWritten()) {
+					// session已经关闭或正在关闭,不再发送
+					closed = true;
+					ready.clear();
+					return;
+				}
+				pump();
+			}
+		}
+	};
+
+	MuxSession(IoSession session, MuxStreamListener listener, boolean client, int initialWindow, int maxFrameSize,
+			int maxInFlightFrames) {
+		this.session = session;
+		this.listener = listener;
+		this.initialWindow = initialWindow;
+		this.maxFrameSize = maxFrameSize;
+		this.maxInFlightFrames = maxInFlightFrames;
+		this.client = client;
+		this.windowUpdateThreshold = Math.max(1, initialWindow / 2);
+		this.nextStreamId = new AtomicInteger(client ? 1 : 2);
+	}
+
+	/**
+	 * 得到session上的多路复用状态
+	 *
+	 * @param session
+	 *            使用MuxIoHandler的session
+	 * @return 多路复用状态,如果该session不是由MuxIoHandler处理的,返回null
+	 */
+	public static MuxSession of(IoSession session) {
+		return (MuxSession) session.getAttribute(KEY);
+	}
+
+	/**
+	 * 打开一个新的流
+	 *
+	 * @return 新的流
+	 * @throws IllegalStateException
+	 *             如果session已经关闭,或者流的id已经用完
+	 */
+	public MuxStream openStream() {
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("session has been closed: " + session);
+			}
+			int id = nextStreamId.getAndAdd(2);
+			if (id <= 0) {
+				throw new IllegalStateException("stream ids exhausted: " + session);
+			}
+			MuxStream stream = new MuxStream(this, id, initialWindow);
+			streams.put(id, stream);
+			session.write(MuxFrame.open(id));
+			return stream;
+		}
+	}
+
+	/**
+	 * 得到当前打开的流的数量
+	 *
+	 * @return 流的数量
+	 */
+	public int getStreamCount() {
+		return streams.size();
+	}
+
+	/**
+	 * 得到底层的IoSession
+	 *
+	 * @return 底层的IoSession
+	 */
+	public IoSession getIoSession() {
+		return session;
+	}
+
+	/**
+	 * 流有新的数据或状态变化时调用,把它放入发送队列
+	 */
+	synchronized void schedule(MuxStream stream) {
+		if (!stream.queued && stream.hasSendable()) {
+			stream.queued = true;
+			ready.addLast(stream);
+		}
+		pump();
+	}
+
+	/**
+	 * 轮流从各个流中取出一帧发送,直到没有可发送的帧或者达到maxInFlightFrames.必须在this的锁中调用
+	 */
+	private void pump() {
+		if (pumping) {
+			return;
+		}
+		pumping = true;
+		try {
+			while (inFlightFrames < maxInFlightFrames && !closed) {
+				MuxStream stream = ready.pollFirst();
+				if (stream == null) {
+					break;
+				}
+				stream.queued = false;
+				MuxFrame frame = stream.nextFrame(maxFrameSize);
+				if (frame == null) {
+					continue;
+				}
+				inFlightFrames++;
+				if (stream.isDone()) {
+					streams.remove(stream.getId());
+				} else if (stream.hasSendable()) {
+					stream.queued = true;
+					ready.addLast(stream);
+				}
+				session.write(frame).addListener(frameSent);
+			}
+		} finally {
+			pumping = false;
+		}
+	}
+
+	/**
+	 * 重置一个流
+	 *
+	 * @param sendReset
+	 *            是否通知对方
+	 */
+	void reset(MuxStream stream, boolean sendReset) {
+		synchronized (this) {
+			if (!stream.markReset()) {
+				return;
+			}
+			streams.remove(stream.getId());
+			if (sendReset && !closed) {
+				session.write(MuxFrame.reset(stream.getId()));
+			}
+		}
+		notifyClosed(stream);
+	}
+
+	/**
+	 * 处理收到的帧.由MuxIoHandler在messageReceived中调用
+	 */
+	void onFrame(MuxFrame frame) {
+		int id = frame.getStreamId();
+		if (frame.getType() == MuxFrame.OPEN) {
+			onOpen(id);
+			return;
+		}
+		MuxStream stream = streams.get(id);
+		if (stream == null) {
+			if (frame.getType() == MuxFrame.DATA) {
+				// 对方不知道该流已经不存在
+				synchronized (this) {
+					if (!closed) {
+						session.write(MuxFrame.reset(id));
+					}
+				}
+			}
+			return;
+		}
+		switch (frame.getType()) {
+		case MuxFrame.DATA:
+			onData(stream, frame.getPayload());
+			break;
+		case MuxFrame.WINDOW_UPDATE:
+			boolean valid;
+			synchronized (this) {
+				valid = stream.addSendWindow(frame.getWindowDelta());
+				if (valid) {
+					schedule(stream);
+				}
+			}
+			if (!valid) {
+				logger.warn("invalid window update " + frame.getWindowDelta() + ", reset " + stream + " on " + session);
+				reset(stream, true);
+			}
+			break;
+		case MuxFrame.CLOSE:
+			synchronized (this) {
+				if (!stream.remoteClose()) {
+					return;
+				}
+				if (stream.isDone()) {
+					streams.remove(id);
+				}
+			}
+			notifyClosed(stream);
+			break;
+		case MuxFrame.RESET:
+			reset(stream, false);
+			break;
+		default:
+			logger.warn("unknown mux frame, ignored: " + frame);
+			break;
+		}
+	}
+
+	private void onOpen(int id) {
+		MuxStream stream;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			if (id <= 0 || ((id & 1) == 1) == client) {
+				// 该id属于本方,对方不能使用
+				logger.warn("peer opened stream with local id parity, reset: " + id + " on " + session);
+				session.write(MuxFrame.reset(id));
+				return;
+			}
+			if (streams.containsKey(id)) {
+				return;
+			}
+			stream = new MuxStream(this, id, initialWindow);
+			streams.put(id, stream);
+		}
+		listener.streamOpened(stream);
+	}
+
+	private void onData(MuxStream stream, byte[] data) {
+		boolean violated;
+		synchronized (this) {
+			if (stream.isRemoteClosed() || stream.isReset()) {
+				return;
+			}
+			violated = !stream.acquireRecvWindow(data.length);
+		}
+		if (violated) {
+			logger.warn("flow control window exceeded, reset " + stream + " on " + session);
+			reset(stream, true);
+			return;
+		}
+		listener.dataReceived(stream, data);
+		synchronized (this) {
+			int delta = stream.consumed(data.length, windowUpdateThreshold);
+			if (delta > 0 && !closed) {
+				session.write(MuxFrame.windowUpdate(stream.getId(), delta));
+			}
+		}
+	}
+
+	/**
+	 * session关闭时,关闭所有的流.由MuxIoHandler在sessionClosed中调用
+	 */
+	void onSessionClosed() {
+		List<MuxStream> closedStreams;
+		synchronized (this) {
+			closed = true;
+			ready.clear();
+			closedStreams = new ArrayList<MuxStream>(streams.values());
+			streams.clear();
+			for (MuxStream stream : closedStreams) {
+				stream.markReset();
+			}
+		}
+		for (MuxStream stream : closedStreams) {
+			notifyClosed(stream);
+		}
+	}
+
+	private void notifyClosed(MuxStream stream) {
+		boolean first;
+		synchronized (this) {
+			first = stream.markCloseNotified();
+		}
+		if (first) {
+			listener.streamClosed(stream);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MuxSession(" + session + ", streams=" + streams.size() + ")";
+	}
+}
@@ -0,0 +1,294 @@
+package com.alitag.mina_tools.mux;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import com.alitag.mina_tools.ArgumentValidator;
+
+/**
+ * <p>
+ * 多路复用的IoSession上的一个逻辑流。它可以像一个独立的连接一样收发数据，但不占用额外的socket。
+ * </p>
+ * <p>
+ * 写入的数据先放在流自己的发送队列中，由所在的MuxSession在各个流之间轮流发送，每次最多发送一帧；每个流的发送量受对方给出的额度(窗口)限制，
+ * 对方处理完数据后归还额度。因此一个流写入大量数据或对方处理缓慢时，不会阻塞同一个IoSession上的其他流。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。流的状态由所在的MuxSession的锁保护。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class MuxStream {
+
+	private final MuxSession mux;
+	private final int id;
+
+	// 以下字段由mux的锁保护
+	private final ArrayDeque<byte[]> outbound = new ArrayDeque<byte[]>();
+	private int headOffset;
+	private long pendingBytes;
+	private int sendWindow;
+	private int recvWindow;
+	private int recvConsumed;
+	private boolean localClosed;
+	private boolean finSent;
+	private boolean remoteClosed;
+	private boolean reset;
+	private boolean closeNotified;
+
+	/** 是否在MuxSession的发送队列中 */
+	boolean queued;
+
+	private volatile Object attachment;
+
+	MuxStream(MuxSession mux, int id, int initialWindow) {
+		this.mux = mux;
+		this.id = id;
+		this.sendWindow = initialWindow;
+		this.recvWindow = initialWindow;
+	}
+
+	/**
+	 * 得到流的id
+	 *
+	 * @return 流的id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * 得到所在的MuxSession
+	 *
+	 * @return 所在的MuxSession
+	 */
+	public MuxSession getMuxSession() {
+		return mux;
+	}
+
+	/**
+	 * <p>
+	 * 写入数据。该方法不会阻塞，数据放入发送队列后立即返回。调用者可以通过{@link #getPendingBytes()}检查积压的数据量，自行限制写入速度。
+	 * </p>
+	 *
+	 * @param data
+	 *            要发送的数据，写入后不应再修改
+	 * @throws IllegalArgumentException
+	 *             如果data为null
+	 * @throws IllegalStateException
+	 *             如果该流已经被关闭或重置
+	 */
+	public void write(byte[] data) {
+		ArgumentValidator.notNull(data, "data");
+		synchronized (mux) {
+			if (localClosed || reset) {
+				throw new IllegalStateException("stream has been closed: " + id);
+			}
+			if (data.length == 0) {
+				return;
+			}
+			outbound.addLast(data);
+			pendingBytes += data.length;
+			mux.schedule(this);
+		}
+	}
+
+	/**
+	 * 关闭该流的发送方向.已经写入的数据发送完之后,对方会收到CLOSE.重复调用将被忽略
+	 */
+	public void close() {
+		synchronized (mux) {
+			if (localClosed || reset) {
+				return;
+			}
+			localClosed = true;
+			mux.schedule(this);
+		}
+	}
+
+	/**
+	 * 立即终止该流.尚未发送的数据被丢弃,对方会收到RESET
+	 */
+	public void reset() {
+		mux.reset(this, true);
+	}
+
+	/**
+	 * 该流是否还可以写入
+	 *
+	 * @return 是否还可以写入
+	 */
+	public boolean isWritable() {
+		synchronized (mux) {
+			return !localClosed && !reset;
+		}
+	}
+
+	/**
+	 * 得到尚未发送的数据量
+	 *
+	 * @return 尚未发送的字节数
+	 */
+	public long getPendingBytes() {
+		synchronized (mux) {
+			return pendingBytes;
+		}
+	}
+
+	public Object getAttachment() {
+		return attachment;
+	}
+
+	public void setAttachment(Object attachment) {
+		this.attachment = attachment;
+	}
+
+	// 以下方法必须在mux的锁中调用
+
+	/**
+	 * 是否有可以发送的帧
+	 */
+	boolean hasSendable() {
+		if (reset) {
+			return false;
+		}
+		if (!outbound.isEmpty()) {
+			return sendWindow > 0;
+		}
+		return localClosed && !finSent;
+	}
+
+	/**
+	 * 取出下一个可以发送的帧
+	 */
+	MuxFrame nextFrame(int maxFrameSize) {
+		if (reset) {
+			return null;
+		}
+		if (!outbound.isEmpty()) {
+			if (sendWindow <= 0) {
+				return null;
+			}
+			byte[] head = outbound.peekFirst();
+			int length = Math.min(Math.min(head.length - headOffset, maxFrameSize), sendWindow);
+			byte[] chunk = headOffset == 0 && length == head.length ? head
+					: Arrays.copyOfRange(head, headOffset, headOffset + length);
+			headOffset += length;
+			if (headOffset == head.length) {
+				outbound.pollFirst();
+				headOffset = 0;
+			}
+			sendWindow -= length;
+			pendingBytes -= length;
+			return MuxFrame.data(id, chunk);
+		}
+		if (localClosed && !finSent) {
+			finSent = true;
+			return MuxFrame.close(id);
+		}
+		return null;
+	}
+
+	/**
+	 * 收到对方归还的发送额度
+	 *
+	 * @return 是否合法.delta必须>0,且归还后的额度不能超过Integer.MAX_VALUE
+	 */
+	boolean addSendWindow(int delta) {
+		if (delta <= 0 || (long) sendWindow + delta > Integer.MAX_VALUE) {
+			return false;
+		}
+		sendWindow += delta;
+		return true;
+	}
+
+	/**
+	 * 收到数据时占用接收额度
+	 *
+	 * @return 是否在额度之内
+	 */
+	boolean acquireRecvWindow(int length) {
+		if (length > recvWindow) {
+			return false;
+		}
+		recvWindow -= length;
+		return true;
+	}
+
+	/**
+	 * 数据被处理后归还接收额度
+	 *
+	 * @return 需要通知对方的额度,0表示暂不通知
+	 */
+	int consumed(int length, int threshold) {
+		recvConsumed += length;
+		if (recvConsumed < threshold || reset || remoteClosed) {
+			return 0;
+		}
+		int delta = recvConsumed;
+		recvWindow += delta;
+		recvConsumed = 0;
+		return delta;
+	}
+
+	/**
+	 * 对方关闭了发送方向
+	 *
+	 * @return 是否是第一次关闭
+	 */
+	boolean remoteClose() {
+		if (remoteClosed) {
+			return false;
+		}
+		remoteClosed = true;
+		return true;
+	}
+
+	/**
+	 * 重置该流
+	 *
+	 * @return 是否是第一次重置
+	 */
+	boolean markReset() {
+		if (reset) {
+			return false;
+		}
+		reset = true;
+		outbound.clear();
+		pendingBytes = 0;
+		return true;
+	}
+
+	/**
+	 * 是否是第一次通知监听器该流已关闭
+	 */
+	boolean markCloseNotified() {
+		if (closeNotified) {
+			return false;
+		}
+		closeNotified = true;
+		return true;
+	}
+
+	boolean isRemoteClosed() {
+		return remoteClosed;
+	}
+
+	boolean isReset() {
+		return reset;
+	}
+
+	/**
+	 * 两个方向是否都已经结束
+	 */
+	boolean isDone() {
+		return reset || (finSent && remoteClosed);
+	}
+
+	@Override
+	public String toString() {
+		return "MuxStream(" + id + ")";
+	}
+}
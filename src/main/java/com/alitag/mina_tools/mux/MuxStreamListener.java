@@ -0,0 +1,41 @@
+package com.alitag.mina_tools.mux;
+
+/**
+ * <p>
+ * 逻辑流的事件监听器。所有的方法都在收到对应帧的线程(即IoHandler.messageReceived的线程)中调用，同一个IoSession上的事件是串行的。
+ * </p>
+ * <p>
+ * 线程安全：实现类应该线程安全，因为不同IoSession上的事件可能在不同的线程中同时发生。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public interface MuxStreamListener {
+
+	/**
+	 * 对方打开了一个流
+	 *
+	 * @param stream
+	 *            新的流
+	 */
+	void streamOpened(MuxStream stream);
+
+	/**
+	 * 收到了流上的数据。该方法返回后，数据占用的接收额度会被归还给对方
+	 *
+	 * @param stream
+	 *            所在的流
+	 * @param data
+	 *            收到的数据
+	 */
+	void dataReceived(MuxStream stream, byte[] data);
+
+	/**
+	 * 流被关闭：对方不再发送数据(CLOSE)、流被重置(RESET)或者所在的IoSession被关闭
+	 *
+	 * @param stream
+	 *            被关闭的流
+	 */
+	void streamClosed(MuxStream stream);
+}
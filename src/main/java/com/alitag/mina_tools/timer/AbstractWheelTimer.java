@@ -0,0 +1,358 @@
+package com.alitag.mina_tools.timer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alitag.mina_tools.ArgumentValidator;
+
+/**
+ * <p>
+ * 时间轮定时器的公共部分：工作线程及其状态、所有deadline的起点startTime、新增及取消任务的无锁队列、时间轮的槽以及任务句柄。
+ * 子类负责把任务放入时间轮，以及在每个tick执行到期的任务。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。新增与取消的任务先放入无锁队列，只有工作线程会修改时间轮本身。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ * @see HashedWheelTimer
+ * @see HierarchicalWheelTimer
+ */
+abstract class AbstractWheelTimer implements TaskTimer {
+
+	private static final Logger logger = LoggerFactory.getLogger(AbstractWheelTimer.class);
+
+	private static final int STATE_INIT = 0;
+	private static final int STATE_STARTED = 1;
+	private static final int STATE_STOPPED = 2;
+
+	/** 定时器的状态 */
+	private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+
+	/** 每个tick的时长(纳秒) */
+	final long tickNanos;
+
+	/** 新加入的任务,由工作线程在每个tick时放入时间轮 */
+	private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<WheelTimeout>();
+
+	/** 被取消的任务,由工作线程在每个tick时从时间轮中移除 */
+	private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<WheelTimeout>();
+
+	private final Thread workerThread;
+
+	/** 工作线程启动的时间(System.nanoTime()),所有任务的deadline都相对于它计算.0表示尚未初始化 */
+	private volatile long startTime;
+
+	/** startTime被初始化后打开 */
+	private final CountDownLatch startTimeInitialized = new CountDownLatch(1);
+
+	/**
+	 * @param name
+	 *            工作线程的名字
+	 * @param tickMillis
+	 *            每个tick的时长(毫秒)
+	 * @throws IllegalArgumentException
+	 *             如果name为null或为空,或者tickMillis<=0
+	 */
+	AbstractWheelTimer(String name, long tickMillis) {
+		ArgumentValidator.notNullOrTrimmedEmpty(name, "name");
+		ArgumentValidator.isTrue(tickMillis > 0, "tickMillis should be >0: " + tickMillis);
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		this.workerThread = new Thread(new Worker(), name);
+		this.workerThread.setDaemon(true);
+	}
+
+	public Timeout schedule(Runnable task, long delayMillis, long periodMillis) {
+		ArgumentValidator.notNull(task, "task");
+		ArgumentValidator.isTrue(delayMillis >= 0, "delayMillis should be >=0: " + delayMillis);
+		ArgumentValidator.isTrue(periodMillis >= 0, "periodMillis should be >=0: " + periodMillis);
+		start();
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) - startTime;
+		WheelTimeout timeout = new WheelTimeout(task, deadline, TimeUnit.MILLISECONDS.toNanos(periodMillis));
+		pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * <p>
+	 * 启动工作线程。通常不需要显式调用，第一次调度任务时会自动启动。
+	 * </p>
+	 * <p>
+	 * 返回时startTime一定已经被初始化：并发调用的线程会等待抢先启动的线程完成初始化。
+	 * </p>
+	 *
+	 * @throws IllegalStateException
+	 *             如果该定时器已经被停止
+	 */
+	public void start() {
+		switch (state.get()) {
+		case STATE_INIT:
+			if (state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+				long now = System.nanoTime();
+				// 0用于表示尚未初始化
+				startTime = now == 0 ? 1 : now;
+				startTimeInitialized.countDown();
+				workerThread.start();
+			}
+			break;
+		case STATE_STARTED:
+			break;
+		default:
+			throw new IllegalStateException("timer has been stopped: " + workerThread.getName());
+		}
+		awaitStartTime();
+	}
+
+	/**
+	 * 等待抢先启动的线程初始化startTime,否则计算出的deadline会相差整个系统的运行时间
+	 */
+	private void awaitStartTime() {
+		boolean interrupted = false;
+		while (startTime == 0) {
+			try {
+				startTimeInitialized.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void stop() {
+		if (state.getAndSet(STATE_STOPPED) == STATE_STARTED) {
+			workerThread.interrupt();
+		}
+	}
+
+	/**
+	 * 得到每个tick的时长(毫秒)
+	 *
+	 * @return 每个tick的时长
+	 */
+	public long getTickMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+	}
+
+	/**
+	 * 得到下一个将要处理的tick。仅由工作线程调用
+	 */
+	abstract long nextTick();
+
+	/**
+	 * 把新加入的任务放入时间轮。仅由工作线程调用
+	 */
+	abstract void placeNew(WheelTimeout timeout);
+
+	/**
+	 * 处理到当前时间为止已经到达的tick。仅由工作线程调用
+	 *
+	 * @param elapsedNanos
+	 *            当前时间(相对于startTime)
+	 */
+	abstract void processTicks(long elapsedNanos);
+
+	/**
+	 * 执行到期的任务。仅由工作线程调用
+	 *
+	 * @return 是否需要重新放入时间轮。此时周期任务的deadline已经推迟了一个周期
+	 */
+	final boolean runTask(WheelTimeout timeout) {
+		boolean periodic = timeout.periodNanos > 0;
+		if (!periodic && !timeout.state.compareAndSet(WheelTimeout.ST_INIT, WheelTimeout.ST_EXPIRED)) {
+			return false;
+		}
+		if (periodic && timeout.state.get() != WheelTimeout.ST_INIT) {
+			return false;
+		}
+
+		try {
+			timeout.task.run();
+		} catch (Throwable t) {
+			logger.warn("task threw an exception: " + timeout.task, t);
+		}
+
+		if (periodic && timeout.state.get() == WheelTimeout.ST_INIT) {
+			timeout.deadline += timeout.periodNanos;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 工作线程。每个tick唤醒一次，处理取消及新增的任务，然后由子类执行到期的任务。
+	 */
+	private final class Worker implements Runnable {
+
+		public void run() {
+			while (state.get() == STATE_STARTED) {
+				long elapsedNanos = waitForNextTick();
+				if (elapsedNanos < 0) {
+					break;
+				}
+				removeCancelledTimeouts();
+				transferPendingTimeouts();
+				processTicks(elapsedNanos);
+			}
+		}
+
+		/**
+		 * 等待直到下一个tick
+		 *
+		 * @return 当前时间(相对于startTime)，如果定时器已被停止，返回-1
+		 */
+		private long waitForNextTick() {
+			long deadline = tickNanos * (nextTick() + 1);
+			for (;;) {
+				long current = System.nanoTime() - startTime;
+				long sleepMillis = (deadline - current + 999999) / 1000000;
+				if (sleepMillis <= 0) {
+					return current;
+				}
+				try {
+					Thread.sleep(sleepMillis);
+				} catch (InterruptedException e) {
+					if (state.get() == STATE_STOPPED) {
+						return -1;
+					}
+				}
+			}
+		}
+
+		private void removeCancelledTimeouts() {
+			WheelTimeout timeout;
+			while ((timeout = cancelledTimeouts.poll()) != null) {
+				if (timeout.bucket != null) {
+					timeout.bucket.remove(timeout);
+				}
+			}
+		}
+
+		private void transferPendingTimeouts() {
+			// 限制每个tick转移的数量，防止某个线程不停地加入任务导致工作线程无法前进
+			for (int i = 0; i < 100000; i++) {
+				WheelTimeout timeout = pendingTimeouts.poll();
+				if (timeout == null) {
+					break;
+				}
+				if (timeout.state.get() == WheelTimeout.ST_CANCELLED) {
+					continue;
+				}
+				placeNew(timeout);
+			}
+		}
+	}
+
+	/**
+	 * 时间轮中的一个槽，是一个由WheelTimeout组成的双向链表。仅由工作线程访问。
+	 */
+	static final class Bucket {
+		WheelTimeout head;
+		WheelTimeout tail;
+
+		void add(WheelTimeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		void remove(WheelTimeout timeout) {
+			WheelTimeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (next != null) {
+				next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = next;
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+
+		/**
+		 * 取出槽中所有的任务并清空该槽
+		 *
+		 * @return 原来的第一个任务,其余的任务通过next相连
+		 */
+		WheelTimeout clear() {
+			WheelTimeout first = head;
+			head = null;
+			tail = null;
+			return first;
+		}
+	}
+
+	/**
+	 * 时间轮中的任务句柄。
+	 */
+	final class WheelTimeout implements Timeout {
+		static final int ST_INIT = 0;
+		static final int ST_CANCELLED = 1;
+		static final int ST_EXPIRED = 2;
+
+		final Runnable task;
+		final long periodNanos;
+		final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+		/** 以下字段仅由工作线程访问 */
+		long deadline;
+		/** HashedWheelTimer中剩余的圈数 */
+		long remainingRounds;
+		/** HierarchicalWheelTimer中到期的tick */
+		long expireTick;
+		Bucket bucket;
+		WheelTimeout prev;
+		WheelTimeout next;
+
+		WheelTimeout(Runnable task, long deadline, long periodNanos) {
+			this.task = task;
+			this.deadline = deadline;
+			this.periodNanos = periodNanos;
+		}
+
+		public Runnable getTask() {
+			return task;
+		}
+
+		public boolean cancel() {
+			if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+				return false;
+			}
+			cancelledTimeouts.add(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == ST_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state.get() == ST_EXPIRED;
+		}
+
+		@Override
+		public String toString() {
+			return "WheelTimeout(" + task + ")";
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.alitag.mina_tools.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alitag.mina_tools.ArgumentValidator;
+
+/**
+ * <p>
+ * 基于哈希时间轮(hashed wheel)的定时器。所有任务都由同一条工作线程调度，因此即使有大量的session，也只占用一条线程。
+ * </p>
+ * <p>
+ * 时间轮由ticksPerWheel个槽组成，工作线程每隔tickMillis毫秒前进一个槽，并执行该槽中已到期的任务。任务的插入与取消都是O(1)的。
+ * 代价是精度：任务的实际执行时间会在到期后的一个tick之内，所以tickMillis不宜设置得过大。
+ * </p>
+ * <p>
+ * 注意：任务直接在工作线程中执行，耗时较长的任务会推迟其它任务的执行，应当交给其它线程池处理。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。新增与取消的任务先放入无锁队列，只有工作线程会修改时间轮本身。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class HashedWheelTimer extends AbstractWheelTimer {
+
+	/** 默认每个tick的时长(毫秒) */
+	public static final long DEFAULT_TICK_MILLIS = 100;
+
+	/** 默认时间轮的槽数 */
+	public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+	/** 时间轮。槽数为2的幂,以便用mask取模 */
+	private final Bucket[] wheel;
+	private final int mask;
+
+	/** 工作线程已经走过的tick数,仅由工作线程访问 */
+	private long tick;
+
+	/** 本tick中执行后需要重新放入时间轮的周期任务,仅由工作线程访问 */
+	private final List<WheelTimeout> rescheduled = new ArrayList<WheelTimeout>();
+
+	/**
+	 * <p>
+	 * 默认构造函数。使用默认的tick时长及槽数。
+	 * </p>
+	 *
+	 * @param name
+	 *            工作线程的名字
+	 * @throws IllegalArgumentException
+	 *             如果name为null或为空
+	 */
+	public HashedWheelTimer(String name) {
+		this(name, DEFAULT_TICK_MILLIS, DEFAULT_TICKS_PER_WHEEL);
+	}
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param name
+	 *            工作线程的名字
+	 * @param tickMillis
+	 *            每个tick的时长(毫秒)，即定时器的精度
+	 * @param ticksPerWheel
+	 *            时间轮的槽数，将被向上取整为2的幂
+	 * @throws IllegalArgumentException
+	 *             如果name为null或为空,或者tickMillis<=0,或者ticksPerWheel<=0或大于2^30
+	 */
+	public HashedWheelTimer(String name, long tickMillis, int ticksPerWheel) {
+		super(name, tickMillis);
+		ArgumentValidator.isTrue(ticksPerWheel > 0 && ticksPerWheel <= (1 << 30),
+				"ticksPerWheel should be in (0, 2^30]: " + ticksPerWheel);
+
+		int normalized = 1;
+		while (normalized < ticksPerWheel) {
+			normalized <<= 1;
+		}
+		this.wheel = new Bucket[normalized];
+		for (int i = 0; i < normalized; i++) {
+			this.wheel[i] = new Bucket();
+		}
+		this.mask = normalized - 1;
+	}
+
+	/**
+	 * 得到时间轮的槽数(已向上取整为2的幂)
+	 *
+	 * @return 时间轮的槽数
+	 */
+	public int getTicksPerWheel() {
+		return wheel.length;
+	}
+
+	@Override
+	long nextTick() {
+		return tick;
+	}
+
+	@Override
+	void placeNew(WheelTimeout timeout) {
+		place(timeout, tick);
+	}
+
+	/**
+	 * 执行当前槽中到期的任务
+	 */
+	@Override
+	void processTicks(long elapsedNanos) {
+		expireTimeouts(wheel[(int) (tick & mask)]);
+		// 在遍历完当前槽之后才重新放入周期任务:周期为时间轮一圈的整数倍时它会回到当前槽,
+		// 如果在遍历中加入,可能被本次遍历扣减一圈,也可能因为落在已读取的next之后而晚一圈执行
+		for (WheelTimeout timeout : rescheduled) {
+			// 至少推迟到下一个tick，防止周期小于tick时在当前槽中反复执行
+			place(timeout, tick + 1);
+		}
+		rescheduled.clear();
+		tick++;
+	}
+
+	/**
+	 * 把任务放入对应的槽中。仅由工作线程调用。
+	 *
+	 * @param minTick
+	 *            下一个将要处理的tick，即任务最早可以放入的tick。已经过期的任务将放入该tick对应的槽
+	 */
+	private void place(WheelTimeout timeout, long minTick) {
+		long calculated = timeout.deadline / tickNanos;
+		long ticks = Math.max(calculated, minTick);
+		// 从minTick开始,该槽每被处理一次扣减一圈
+		timeout.remainingRounds = (ticks - minTick) / wheel.length;
+		wheel[(int) (ticks & mask)].add(timeout);
+	}
+
+	/**
+	 * 执行一个槽中已到期的任务，其它任务的剩余圈数减一。仅由工作线程调用。
+	 */
+	private void expireTimeouts(Bucket bucket) {
+		WheelTimeout timeout = bucket.head;
+		while (timeout != null) {
+			WheelTimeout next = timeout.next;
+			if (timeout.state.get() == WheelTimeout.ST_CANCELLED) {
+				bucket.remove(timeout);
+			} else if (timeout.remainingRounds <= 0) {
+				bucket.remove(timeout);
+				if (runTask(timeout)) {
+					rescheduled.add(timeout);
+				}
+			} else {
+				timeout.remainingRounds--;
+			}
+			timeout = next;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package com.alitag.mina_tools.timer;
+
+import java.util.concurrent.TimeUnit;
+
+import com.alitag.mina_tools.ArgumentValidator;
+
+/**
+ * <p>
+ * 基于多级时间轮(hierarchical timing wheel)的定时器。适用于延时跨度很大的场景，比如同时存在亚秒级的任务与长达数小时的最大连接时长限制。
+ * </p>
+ * <p>
+ * 定时器由levels级时间轮组成，每级有2^bitsPerLevel个槽。第0级的每个槽代表一个tick，第n级的每个槽代表第n-1级转一圈的时长。
+ * 任务按剩余的tick数放入能够容纳它的最低一级；当低一级的时间轮转完一圈时，高一级当前槽中的任务被重新放入(cascade)较低的级别，
+ * 直到最终在第0级到期执行。插入与取消都是O(1)的，内存固定为levels * 2^bitsPerLevel个槽，精度始终为一个tick。
+ * </p>
+ * <p>
+ * 能够直接表示的最大延时为tickMillis * 2^(bitsPerLevel * levels)。超过它的任务先放入最高一级的最后一个槽，在被cascade时重新计算位置。
+ * 默认参数(10毫秒, 每级256个槽, 4级)能直接表示约497天的延时。
+ * </p>
+ * <p>
+ * 注意：任务直接在工作线程中执行，耗时较长的任务会推迟其它任务的执行，应当交给其它线程池处理。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。新增与取消的任务先放入无锁队列，只有工作线程会修改时间轮本身。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class HierarchicalWheelTimer extends AbstractWheelTimer {
+
+	/** 默认每个tick的时长(毫秒) */
+	public static final long DEFAULT_TICK_MILLIS = 10;
+
+	/** 默认每级时间轮的槽数为2^DEFAULT_BITS_PER_LEVEL */
+	public static final int DEFAULT_BITS_PER_LEVEL = 8;
+
+	/** 默认时间轮的级数 */
+	public static final int DEFAULT_LEVELS = 4;
+
+	private final int bits;
+	private final int mask;
+
+	/** wheels[level][slot] */
+	private final Bucket[][] wheels;
+
+	/** 能够直接表示的最大tick数 */
+	private final long maxTicks;
+
+	/** 下一个将要处理的tick,仅由工作线程访问 */
+	private long currentTick;
+
+	/**
+	 * <p>
+	 * 构造函数。使用默认的参数。
+	 * </p>
+	 *
+	 * @param name
+	 *            工作线程的名字
+	 * @throws IllegalArgumentException
+	 *             如果name为null或为空
+	 */
+	public HierarchicalWheelTimer(String name) {
+		this(name, DEFAULT_TICK_MILLIS, DEFAULT_BITS_PER_LEVEL, DEFAULT_LEVELS);
+	}
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param name
+	 *            工作线程的名字
+	 * @param tickMillis
+	 *            每个tick的时长(毫秒)，即定时器的精度
+	 * @param bitsPerLevel
+	 *            每级时间轮的槽数为2^bitsPerLevel
+	 * @param levels
+	 *            时间轮的级数
+	 * @throws IllegalArgumentException
+	 *             如果name为null或为空,或者tickMillis<=0,或者bitsPerLevel不在[1, 16]之间,或者levels<=0,或者bitsPerLevel*levels>62
+	 */
+	public HierarchicalWheelTimer(String name, long tickMillis, int bitsPerLevel, int levels) {
+		super(name, tickMillis);
+		ArgumentValidator.isTrue(bitsPerLevel >= 1 && bitsPerLevel <= 16, "bitsPerLevel should be in [1, 16]: "
+				+ bitsPerLevel);
+		ArgumentValidator.isTrue(levels > 0, "levels should be >0: " + levels);
+		ArgumentValidator.isTrue(bitsPerLevel * levels <= 62, "bitsPerLevel * levels should be <=62: "
+				+ (bitsPerLevel * levels));
+
+		this.bits = bitsPerLevel;
+		this.mask = (1 << bitsPerLevel) - 1;
+		this.maxTicks = 1L << (bitsPerLevel * levels);
+		this.wheels = new Bucket[levels][1 << bitsPerLevel];
+		for (int level = 0; level < levels; level++) {
+			for (int slot = 0; slot <= mask; slot++) {
+				wheels[level][slot] = new Bucket();
+			}
+		}
+	}
+
+	/**
+	 * 得到能够直接表示(不需要重新计算位置)的最大延时
+	 *
+	 * @return 最大延时(毫秒)
+	 */
+	public long getMaxDirectDelayMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(tickNanos) * maxTicks;
+	}
+
+	@Override
+	long nextTick() {
+		return currentTick;
+	}
+
+	@Override
+	void placeNew(WheelTimeout node) {
+		node.expireTick = node.deadline / tickNanos;
+		place(node);
+	}
+
+	/**
+	 * 如果因为任务耗时过长而落后，会连续处理多个tick直到追上当前时间。
+	 */
+	@Override
+	void processTicks(long elapsedNanos) {
+		long elapsedTicks = elapsedNanos / tickNanos;
+		while (currentTick < elapsedTicks) {
+			advance();
+		}
+	}
+
+	/**
+	 * 不经过工作线程，直接把任务放入时间轮，在第expireTick个tick到期。仅用于测试，此时不应启动工作线程
+	 */
+	Timeout scheduleAtTick(Runnable task, long expireTick) {
+		WheelTimeout node = new WheelTimeout(task, expireTick * tickNanos, 0);
+		placeNew(node);
+		return node;
+	}
+
+	/**
+	 * 得到下一个将要处理的tick。执行任务时即为该任务到期的tick
+	 */
+	long getCurrentTick() {
+		return currentTick;
+	}
+
+	/**
+	 * 处理currentTick：如果第0级转完一圈，先从高一级cascade，然后执行第0级当前槽中的任务。
+	 */
+	void advance() {
+		int index = (int) (currentTick & mask);
+		if (index == 0) {
+			for (int level = 1; level < wheels.length; level++) {
+				int slot = (int) ((currentTick >>> (bits * level)) & mask);
+				cascade(wheels[level][slot]);
+				if (slot != 0) {
+					break;
+				}
+			}
+		}
+
+		Bucket bucket = wheels[0][index];
+		WheelTimeout node;
+		while ((node = bucket.head) != null) {
+			bucket.remove(node);
+			if (runTask(node)) {
+				// 至少推迟到下一个tick，防止周期小于tick时在当前槽中反复执行
+				node.expireTick = Math.max(node.deadline / tickNanos, currentTick + 1);
+				place(node);
+			}
+		}
+		currentTick++;
+	}
+
+	/**
+	 * 把一个槽中的所有任务重新放入时间轮
+	 */
+	private void cascade(Bucket bucket) {
+		WheelTimeout node = bucket.clear();
+		while (node != null) {
+			WheelTimeout next = node.next;
+			node.prev = null;
+			node.next = null;
+			node.bucket = null;
+			place(node);
+			node = next;
+		}
+	}
+
+	/**
+	 * 按剩余的tick数把任务放入能容纳它的最低一级时间轮。仅由工作线程调用。
+	 */
+	private void place(WheelTimeout node) {
+		long delta = node.expireTick - currentTick;
+		long expires = node.expireTick;
+		if (delta < 0) {
+			// 已经过期的任务放入当前槽
+			expires = currentTick;
+			delta = 0;
+		} else if (delta >= maxTicks) {
+			// 超出范围的任务先放入最高一级的最后一个槽,cascade时重新计算位置
+			delta = maxTicks - 1;
+			expires = currentTick + delta;
+		}
+
+		int level = 0;
+		while (level < wheels.length - 1 && delta >= (1L << (bits * (level + 1)))) {
+			level++;
+		}
+		int slot = (int) ((expires >>> (bits * level)) & mask);
+		wheels[level][slot].add(node);
+	}
+}
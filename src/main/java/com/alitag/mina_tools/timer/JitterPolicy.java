@@ -0,0 +1,87 @@
+package com.alitag.mina_tools.timer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.alitag.mina_tools.ArgumentValidator;
+
+/**
+ * <p>
+ * 延时的随机抖动策略。对每个任务的延时单独加上一个随机偏移，使同一时刻批量设置的任务(比如同一批连入的session的自动断开)分散到一个时间窗口内到期，
+ * 避免它们同时断开并同时重连。
+ * </p>
+ * <p>
+ * 偏移在[-jitter, +jitter]之间均匀分布，其中jitter为固定的毫秒数({@link #absolute(long)})或延时的百分比({@link #percentage(int)})。
+ * 加上偏移后的延时不会小于0。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变类。随机数由ThreadLocalRandom生成。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public final class JitterPolicy {
+
+	/** 不加抖动 */
+	public static final JitterPolicy NONE = new JitterPolicy(0, 0);
+
+	private final long absoluteMillis;
+	private final int percent;
+
+	private JitterPolicy(long absoluteMillis, int percent) {
+		this.absoluteMillis = absoluteMillis;
+		this.percent = percent;
+	}
+
+	/**
+	 * 得到一个固定幅度的抖动策略
+	 *
+	 * @param maxJitterMillis
+	 *            最大的偏移(毫秒)
+	 * @return 抖动策略
+	 * @throws IllegalArgumentException
+	 *             如果maxJitterMillis<0
+	 */
+	public static JitterPolicy absolute(long maxJitterMillis) {
+		ArgumentValidator.isTrue(maxJitterMillis >= 0, "maxJitterMillis should be >=0: " + maxJitterMillis);
+		return maxJitterMillis == 0 ? NONE : new JitterPolicy(maxJitterMillis, 0);
+	}
+
+	/**
+	 * 得到一个按延时百分比计算幅度的抖动策略
+	 *
+	 * @param percent
+	 *            最大的偏移占延时的百分比
+	 * @return 抖动策略
+	 * @throws IllegalArgumentException
+	 *             如果percent不在[0, 100]之间
+	 */
+	public static JitterPolicy percentage(int percent) {
+		ArgumentValidator.isTrue(percent >= 0 && percent <= 100, "percent should be in [0, 100]: " + percent);
+		return percent == 0 ? NONE : new JitterPolicy(0, percent);
+	}
+
+	/**
+	 * 对延时加上随机偏移
+	 *
+	 * @param delayMillis
+	 *            原始的延时(毫秒)
+	 * @return 加上偏移后的延时,不小于0
+	 */
+	public long apply(long delayMillis) {
+		long jitter = percent > 0 ? delayMillis * percent / 100 : absoluteMillis;
+		if (jitter <= 0) {
+			return delayMillis;
+		}
+		long offset = ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+		return Math.max(0, delayMillis + offset);
+	}
+
+	@Override
+	public String toString() {
+		if (percent > 0) {
+			return "JitterPolicy(" + percent + "%)";
+		}
+		return "JitterPolicy(" + absoluteMillis + "ms)";
+	}
+}
@@ -0,0 +1,139 @@
+package com.alitag.mina_tools.timer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * 以2的幂为桶边界的直方图，用于统计延迟、耗时等非负数值。第0个桶记录0，第i个桶(i>=1)记录[2^(i-1), 2^i)之间的值。
+ * 记录一个值只需要几次原子加法，不分配内存，适合在热点路径上使用；代价是百分位数只精确到所在的桶(即误差在2倍以内)。
+ * </p>
+ * <p>
+ * 数值的单位由使用者决定，本类不做假设。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。所有计数都是原子变量。快照不是严格一致的，但每个计数本身是准确的。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * 记录一个值.负数按0记录
+	 *
+	 * @param value
+	 *            要记录的值
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * 得到当前的快照
+	 *
+	 * @return 快照
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return new Snapshot(copy, count.get(), sum.get(), max.get());
+	}
+
+	/**
+	 * 直方图的快照
+	 * <p>
+	 * 线程安全：该类线程安全，因为它是不可变类。
+	 * </p>
+	 */
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * 得到记录的值的个数
+		 *
+		 * @return 记录的值的个数
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * 得到记录过的最大值
+		 *
+		 * @return 最大值,如果没有记录过,返回0
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * 得到平均值
+		 *
+		 * @return 平均值,如果没有记录过,返回0
+		 */
+		public double getMean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * 得到指定的百分位数.返回值为该百分位所在桶的上界(不超过最大值)
+		 *
+		 * @param percentile
+		 *            百分位,在[0, 100]之间
+		 * @return 百分位数,如果没有记录过,返回0
+		 */
+		public long getPercentile(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank && seen > 0) {
+					long upper = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+					return Math.min(upper, max);
+				}
+			}
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ", mean=" + getMean() + ", p50=" + getPercentile(50) + ", p99="
+					+ getPercentile(99) + ", max=" + max;
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package com.alitag.mina_tools.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alitag.mina_tools.ArgumentValidator;
+
+/**
+ * <p>
+ * 周期相同的一组任务。组内所有任务共用定时器中的一个调度项，每个周期到期时把所有任务作为一批交给executor依次执行。
+ * 因此5万个30秒的心跳任务只需要每30秒唤醒一次定时器，而不是调度5万个独立的任务。
+ * </p>
+ * <p>
+ * 每个任务同时只会有一次执行在进行。如果某个任务在上一个周期交给executor的执行在下一个周期到来时仍未完成，
+ * 则只跳过该任务的本次执行，其余任务照常交给executor，防止个别慢任务拖住整个组，也防止任务在executor中堆积。
+ * </p>
+ * <p>
+ * 组内的任务全部移除后，该组在下一个周期到期时从定时器中撤销自己并调用{@link #retired()}，此后不再接受新的任务。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。组内的任务保存在ConcurrentHashMap中，任务的加入与调度项的创建、撤销在同一把锁内完成。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class PeriodicTaskGroup {
+
+	private static final Logger logger = LoggerFactory.getLogger(PeriodicTaskGroup.class);
+
+	private final TaskTimer timer;
+	private final Executor executor;
+	private final long periodMillis;
+
+	private final Map<Member, Boolean> members = new ConcurrentHashMap<Member, Boolean>();
+
+	/** 在定时器中的调度项。在加入第一个任务时才创建 */
+	private Timeout slot;
+
+	/** 该组是否已经被取消或撤销 */
+	private boolean retired;
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param timer
+	 *            用于调度的定时器
+	 * @param executor
+	 *            用于执行每一批任务的executor
+	 * @param periodMillis
+	 *            组内任务的执行周期(毫秒)
+	 * @throws IllegalArgumentException
+	 *             如果timer或executor为null,或者periodMillis<=0
+	 */
+	public PeriodicTaskGroup(TaskTimer timer, Executor executor, long periodMillis) {
+		ArgumentValidator.notNull(timer, "timer");
+		ArgumentValidator.notNull(executor, "executor");
+		ArgumentValidator.isTrue(periodMillis > 0, "periodMillis should be >0: " + periodMillis);
+		this.timer = timer;
+		this.executor = executor;
+		this.periodMillis = periodMillis;
+	}
+
+	/**
+	 * 向组内加入一个任务。该任务将从下一个周期开始执行
+	 *
+	 * @param task
+	 *            要运行的任务
+	 * @return 任务句柄,可用于把任务移出该组.如果该组已经被取消或撤销,返回null
+	 * @throws IllegalArgumentException
+	 *             如果task为null
+	 */
+	public synchronized Timeout add(Runnable task) {
+		ArgumentValidator.notNull(task, "task");
+		if (retired) {
+			return null;
+		}
+		Member member = new Member(task);
+		members.put(member, Boolean.TRUE);
+		if (slot == null) {
+			slot = timer.schedule(new Runnable() {
+				public void run() {
+					fire();
+				}
+			}, periodMillis, periodMillis);
+		}
+		return member;
+	}
+
+	/**
+	 * 得到组内任务的执行周期
+	 *
+	 * @return 执行周期(毫秒)
+	 */
+	public long getPeriodMillis() {
+		return periodMillis;
+	}
+
+	/**
+	 * 得到组内当前的任务数
+	 *
+	 * @return 任务数
+	 */
+	public int size() {
+		return members.size();
+	}
+
+	/**
+	 * 该组是否已经被取消或撤销
+	 *
+	 * @return 如果已经被取消或撤销,返回true
+	 */
+	public synchronized boolean isRetired() {
+		return retired;
+	}
+
+	/**
+	 * 取消该组在定时器中的调度项。组内的任务将不再执行，之后加入的任务也不再被接受
+	 */
+	public synchronized void cancel() {
+		retired = true;
+		if (slot != null) {
+			slot.cancel();
+			slot = null;
+		}
+		members.clear();
+	}
+
+	/**
+	 * 该组因为没有任务而从定时器中撤销自己之后调用，调用时不持有该组的锁。默认什么都不做，子类可以覆盖该方法，比如把该组从缓存中移除
+	 */
+	protected void retired() {
+	}
+
+	/**
+	 * 每个周期到期时由定时器调用，把上一次执行已经完成的任务作为一批交给executor
+	 */
+	private void fire() {
+		if (members.isEmpty() && retireIfEmpty()) {
+			retired();
+			return;
+		}
+		final List<Member> due = new ArrayList<Member>(members.size());
+		int skipped = 0;
+		for (Member member : members.keySet()) {
+			if (member.executing.compareAndSet(false, true)) {
+				due.add(member);
+			} else {
+				skipped++;
+			}
+		}
+		if (skipped > 0) {
+			logger.warn("previous run is still executing, skipped " + skipped + " of " + (due.size() + skipped)
+					+ " tasks. period: " + periodMillis + "ms");
+		}
+		if (due.isEmpty()) {
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					for (Member member : due) {
+						try {
+							if (!member.cancelled) {
+								member.task.run();
+							}
+						} catch (Throwable t) {
+							logger.warn("periodic task threw an exception: " + member.task, t);
+						} finally {
+							member.executing.set(false);
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			for (Member member : due) {
+				member.executing.set(false);
+			}
+			logger.warn("batch rejected by executor. period: " + periodMillis + "ms", e);
+		}
+	}
+
+	/**
+	 * 如果组内仍没有任务，从定时器中撤销该组
+	 *
+	 * @return 是否撤销了该组
+	 */
+	private synchronized boolean retireIfEmpty() {
+		if (retired || !members.isEmpty()) {
+			return false;
+		}
+		retired = true;
+		if (slot != null) {
+			slot.cancel();
+			slot = null;
+		}
+		return true;
+	}
+
+	/**
+	 * 组内的一个任务
+	 */
+	private final class Member implements Timeout {
+		final Runnable task;
+		volatile boolean cancelled;
+
+		/** 该任务是否已经交给executor而尚未执行完 */
+		final AtomicBoolean executing = new AtomicBoolean();
+
+		Member(Runnable task) {
+			this.task = task;
+		}
+
+		public Runnable getTask() {
+			return task;
+		}
+
+		public boolean cancel() {
+			if (cancelled) {
+				return false;
+			}
+			cancelled = true;
+			return members.remove(this) != null;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		public boolean isExpired() {
+			return false;
+		}
+	}
+}
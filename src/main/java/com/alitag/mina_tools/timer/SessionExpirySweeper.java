@@ -0,0 +1,342 @@
+package com.alitag.mina_tools.timer;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.common.IoFuture;
+import org.apache.mina.common.IoFutureListener;
+import org.apache.mina.common.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alitag.mina_tools.ArgumentValidator;
+
+/**
+ * <p>
+ * 按到期时间索引的session过期清理器。所有session的到期时间保存在一个有序索引中，由一条清理线程每个tick取出所有已到期的session并批量关闭。
+ * </p>
+ * <p>
+ * 与每个session单独调度一个断开任务相比，当大量session在同一时刻到期时(比如整批客户端在网络抖动后同时重连)，
+ * 它们只会在同一条线程中被依次关闭；并且每个tick最多关闭maxClosesPerTick个session，剩余的留到下一个tick，防止瞬间的大量关闭占满IO线程。
+ * </p>
+ * <p>
+ * 到期时间在内部使用System.nanoTime()表示，不受系统时钟调整的影响。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。索引使用ConcurrentSkipListSet，每个session当前的到期项由volatile字段持有。
+ * 清理线程只查看索引中最早的一项，只移除已经到期的项，不会与并发的设定或取消操作互相覆盖。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class SessionExpirySweeper {
+
+	private static final Logger logger = LoggerFactory.getLogger(SessionExpirySweeper.class);
+
+	private static final String KEY_EXPIRY = SessionExpirySweeper.class.getName() + ".expiry";
+
+	/** 默认每个tick的时长(毫秒) */
+	public static final long DEFAULT_TICK_MILLIS = 100;
+
+	/** 默认每个tick最多关闭的session数 */
+	public static final int DEFAULT_MAX_CLOSES_PER_TICK = 1000;
+
+	private static final int STATE_INIT = 0;
+	private static final int STATE_STARTED = 1;
+	private static final int STATE_STOPPED = 2;
+
+	private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+
+	/** 用于在到期时间相同时区分不同的项 */
+	private final AtomicLong sequence = new AtomicLong();
+
+	/** 按到期时间排序的索引 */
+	private final ConcurrentSkipListSet<Entry> index = new ConcurrentSkipListSet<Entry>();
+
+	private final long tickMillis;
+	private final int maxClosesPerTick;
+	private final Thread sweeperThread;
+
+	/**
+	 * <p>
+	 * 构造函数。使用默认的tick时长及每个tick最多关闭的session数。
+	 * </p>
+	 *
+	 * @param name
+	 *            清理线程的名字
+	 * @throws IllegalArgumentException
+	 *             如果name为null或为空
+	 */
+	public SessionExpirySweeper(String name) {
+		this(name, DEFAULT_TICK_MILLIS, DEFAULT_MAX_CLOSES_PER_TICK);
+	}
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param name
+	 *            清理线程的名字
+	 * @param tickMillis
+	 *            每隔多少毫秒检查一次到期的session
+	 * @param maxClosesPerTick
+	 *            每个tick最多关闭的session数
+	 * @throws IllegalArgumentException
+	 *             如果name为null或为空,或者tickMillis<=0,或者maxClosesPerTick<=0
+	 */
+	public SessionExpirySweeper(String name, long tickMillis, int maxClosesPerTick) {
+		ArgumentValidator.notNullOrTrimmedEmpty(name, "name");
+		ArgumentValidator.isTrue(tickMillis > 0, "tickMillis should be >0: " + tickMillis);
+		ArgumentValidator.isTrue(maxClosesPerTick > 0, "maxClosesPerTick should be >0: " + maxClosesPerTick);
+		this.tickMillis = tickMillis;
+		this.maxClosesPerTick = maxClosesPerTick;
+		this.sweeperThread = new Thread(new Sweeper(), name);
+		this.sweeperThread.setDaemon(true);
+	}
+
+	/**
+	 * 设定session在指定的时间后过期并被关闭.如果之前已经设定过,则以本次为准
+	 *
+	 * @param session
+	 *            当前的连接对象
+	 * @param delayMillis
+	 *            多少毫秒后过期
+	 * @throws IllegalArgumentException
+	 *             如果session为null,或者delayMillis<0
+	 * @throws IllegalStateException
+	 *             如果该清理器已经被停止
+	 */
+	public void expireAfter(IoSession session, long delayMillis) {
+		ArgumentValidator.isTrue(delayMillis >= 0, "delayMillis should be >=0: " + delayMillis);
+		schedule(session, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+	}
+
+	/**
+	 * 设定session在指定的时刻过期并被关闭.如果之前已经设定过,则以本次为准.如果session处于关闭状态,则不进行操作
+	 *
+	 * @param session
+	 *            当前的连接对象
+	 * @param deadlineMillis
+	 *            过期的时刻(System.currentTimeMillis())
+	 * @throws IllegalArgumentException
+	 *             如果session为null
+	 * @throws IllegalStateException
+	 *             如果该清理器已经被停止
+	 */
+	public void expireAt(IoSession session, long deadlineMillis) {
+		long delayMillis = Math.max(0, deadlineMillis - System.currentTimeMillis());
+		schedule(session, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+	}
+
+	/**
+	 * 设定session在指定的时刻(System.nanoTime())过期
+	 */
+	private void schedule(IoSession session, long deadlineNanos) {
+		ArgumentValidator.notNull(session, "session");
+		start();
+		if (session.isClosing())
+			return;
+
+		Expiry expiry = expiryOf(session);
+		Entry entry = new Entry(session, deadlineNanos, sequence.incrementAndGet());
+		synchronized (expiry) {
+			if (expiry.closed)
+				return;
+			if (expiry.current != null) {
+				index.remove(expiry.current);
+			}
+			expiry.current = entry;
+			index.add(entry);
+		}
+	}
+
+	/**
+	 * 取消session的过期设定.如果没有设定过,则不进行操作
+	 *
+	 * @param session
+	 *            当前的连接对象
+	 * @throws IllegalArgumentException
+	 *             如果session为null
+	 */
+	public void remove(IoSession session) {
+		ArgumentValidator.notNull(session, "session");
+		Expiry expiry = (Expiry) session.getAttribute(KEY_EXPIRY);
+		if (expiry != null) {
+			expiry.clear();
+		}
+	}
+
+	/**
+	 * 得到当前尚未过期的session数
+	 *
+	 * @return 尚未过期的session数
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * <p>
+	 * 启动清理线程。通常不需要显式调用，第一次设定过期时间时会自动启动。
+	 * </p>
+	 *
+	 * @throws IllegalStateException
+	 *             如果该清理器已经被停止
+	 */
+	public void start() {
+		switch (state.get()) {
+		case STATE_INIT:
+			if (state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+				sweeperThread.start();
+			}
+			break;
+		case STATE_STARTED:
+			break;
+		default:
+			throw new IllegalStateException("sweeper has been stopped: " + sweeperThread.getName());
+		}
+	}
+
+	/**
+	 * 停止清理线程。尚未过期的session将不再被关闭
+	 */
+	public void stop() {
+		if (state.getAndSet(STATE_STOPPED) == STATE_STARTED) {
+			sweeperThread.interrupt();
+		}
+		index.clear();
+	}
+
+	/**
+	 * 得到session的过期设定，如果不存在则创建一个，并注册关闭监听器
+	 */
+	private Expiry expiryOf(IoSession session) {
+		Expiry expiry = (Expiry) session.getAttribute(KEY_EXPIRY);
+		if (expiry != null) {
+			return expiry;
+		}
+		synchronized (session) {
+			expiry = (Expiry) session.getAttribute(KEY_EXPIRY);
+			if (expiry == null) {
+				expiry = new Expiry();
+				session.setAttribute(KEY_EXPIRY, expiry);
+				session.getCloseFuture().addListener(expiry);
+			}
+		}
+		return expiry;
+	}
+
+	/**
+	 * 关闭最多maxClosesPerTick个已经过期的session
+	 *
+	 * @param now
+	 *            当前时刻(System.nanoTime())
+	 * @return 本次关闭的session数
+	 */
+	int sweep(long now) {
+		int closed = 0;
+		while (closed < maxClosesPerTick) {
+			Entry entry;
+			try {
+				entry = index.first();
+			} catch (NoSuchElementException e) {
+				break;
+			}
+			if (entry.deadline - now > 0) {
+				break;
+			}
+			if (!index.remove(entry)) {
+				// 已经被并发地取消或重新设定
+				continue;
+			}
+			Expiry expiry = (Expiry) entry.session.getAttribute(KEY_EXPIRY);
+			if (expiry != null && !expiry.expire(entry)) {
+				// 在取出之后被重新设定了过期时间
+				continue;
+			}
+			entry.session.close();
+			closed++;
+		}
+		return closed;
+	}
+
+	/**
+	 * 清理线程
+	 */
+	private final class Sweeper implements Runnable {
+		public void run() {
+			while (state.get() == STATE_STARTED) {
+				try {
+					Thread.sleep(tickMillis);
+				} catch (InterruptedException e) {
+					continue;
+				}
+				try {
+					int closed = sweep(System.nanoTime());
+					if (closed >= maxClosesPerTick && logger.isDebugEnabled()) {
+						logger.debug("reached max closes per tick: " + maxClosesPerTick + ", remains: " + index.size());
+					}
+				} catch (Throwable t) {
+					logger.warn("failed to sweep expired sessions", t);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 一个session的过期设定。session关闭时从索引中移除。
+	 */
+	private final class Expiry implements IoFutureListener {
+		Entry current;
+		boolean closed;
+
+		synchronized boolean expire(Entry entry) {
+			if (current != entry) {
+				return false;
+			}
+			current = null;
+			return true;
+		}
+
+		synchronized void clear() {
+			if (current != null) {
+				index.remove(current);
+				current = null;
+			}
+		}
+
+		public void operationComplete(IoFuture future) {
+			synchronized (this) {
+				closed = true;
+				clear();
+			}
+		}
+	}
+
+	/**
+	 * 索引中的一项，按到期时间及序号排序
+	 */
+	private static final class Entry implements Comparable<Entry> {
+		final IoSession session;
+		final long deadline;
+		final long seq;
+
+		Entry(IoSession session, long deadline, long seq) {
+			this.session = session;
+			this.deadline = deadline;
+			this.seq = seq;
+		}
+
+		public int compareTo(Entry o) {
+			if (deadline != o.deadline) {
+				return deadline - o.deadline < 0 ? -1 : 1;
+			}
+			return seq < o.seq ? -1 : (seq == o.seq ? 0 : 1);
+		}
+	}
+}
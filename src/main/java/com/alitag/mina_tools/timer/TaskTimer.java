@@ -0,0 +1,37 @@
+package com.alitag.mina_tools.timer;
+
+/**
+ * <p>
+ * 定时器接口。与java.util.Timer不同，它的实现类应该用少量固定的线程来调度大量的任务，以便被所有的session共享。
+ * </p>
+ * <p>
+ * 线程安全：该接口的实现类必须线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public interface TaskTimer {
+
+	/**
+	 * 调度一个任务。可以设置为延时多久后执行,执行一次或每隔一段时间反复执行
+	 * 
+	 * @param task
+	 *            要运行的任务
+	 * @param delayMillis
+	 *            多少毫秒后开始运行
+	 * @param periodMillis
+	 *            隔多少毫秒运行一次.如果为0,表示只运行一次
+	 * @return 该任务的句柄
+	 * @throws IllegalArgumentException
+	 *             如果task为null,或者delayMillis<0,或者periodMillis<0
+	 * @throws IllegalStateException
+	 *             如果该定时器已经被停止
+	 */
+	Timeout schedule(Runnable task, long delayMillis, long periodMillis);
+
+	/**
+	 * 停止该定时器。尚未执行的任务将不再执行
+	 */
+	void stop();
+}
@@ -0,0 +1,43 @@
+package com.alitag.mina_tools.timer;
+
+/**
+ * <p>
+ * 由{@link TaskTimer#schedule(Runnable, long, long)}返回的任务句柄，可用于查询任务状态或取消任务。
+ * </p>
+ * <p>
+ * 线程安全：该接口的实现类必须线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public interface Timeout {
+
+	/**
+	 * 得到该句柄对应的任务
+	 * 
+	 * @return 对应的任务
+	 */
+	Runnable getTask();
+
+	/**
+	 * 取消该任务。如果任务已经执行过(仅执行一次的任务)或已经被取消，则不进行操作
+	 * 
+	 * @return 如果本次调用成功取消了任务，返回true
+	 */
+	boolean cancel();
+
+	/**
+	 * 任务是否已经被取消
+	 * 
+	 * @return 是否已经被取消
+	 */
+	boolean isCancelled();
+
+	/**
+	 * 任务是否已经到期执行。对于反复执行的任务，只有在被取消后才不会再次执行，所以该方法始终返回false
+	 * 
+	 * @return 是否已经到期执行
+	 */
+	boolean isExpired();
+}
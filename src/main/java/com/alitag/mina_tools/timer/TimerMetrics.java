@@ -0,0 +1,159 @@
+package com.alitag.mina_tools.timer;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.alitag.mina_tools.ArgumentValidator;
+
+/**
+ * <p>
+ * 定时任务的统计信息：已调度、已取消、已执行及尚未结束的任务数，到期执行的延迟(实际执行时间减去计划时间)及执行耗时的分布，
+ * 以及执行时间超过其周期的次数。可以通过{@link #snapshot()}得到快照，或通过{@link #registerMBean(String)}在JMX中查看。
+ * </p>
+ * <p>
+ * 时间的记录单位为微秒。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。所有计数都是原子变量。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class TimerMetrics implements TimerMetricsMBean {
+
+	private final AtomicLong scheduled = new AtomicLong();
+	private final AtomicLong cancelled = new AtomicLong();
+	private final AtomicLong fired = new AtomicLong();
+	private final AtomicLong pending = new AtomicLong();
+	private final AtomicLong overruns = new AtomicLong();
+	private final LatencyHistogram lateness = new LatencyHistogram();
+	private final LatencyHistogram execution = new LatencyHistogram();
+
+	/**
+	 * 记录一个任务被调度
+	 */
+	public void onScheduled() {
+		scheduled.incrementAndGet();
+		pending.incrementAndGet();
+	}
+
+	/**
+	 * 记录一个任务被成功取消
+	 */
+	public void onCancelled() {
+		cancelled.incrementAndGet();
+		pending.decrementAndGet();
+	}
+
+	/**
+	 * 记录一个任务到期
+	 *
+	 * @param latenessNanos
+	 *            实际到期时间与计划时间之差(纳秒).如果计划时间未知,传入负数
+	 * @param lastRun
+	 *            是否是该任务的最后一次执行(仅执行一次的任务)
+	 */
+	public void onFired(long latenessNanos, boolean lastRun) {
+		fired.incrementAndGet();
+		if (lastRun) {
+			pending.decrementAndGet();
+		}
+		if (latenessNanos >= 0) {
+			lateness.record(TimeUnit.NANOSECONDS.toMicros(latenessNanos));
+		}
+	}
+
+	/**
+	 * 记录一次执行的耗时
+	 *
+	 * @param executionNanos
+	 *            执行耗时(纳秒)
+	 * @param periodNanos
+	 *            任务的周期(纳秒),0表示只执行一次.耗时超过周期时记为一次overrun
+	 * @return 是否overrun
+	 */
+	public boolean onExecuted(long executionNanos, long periodNanos) {
+		execution.record(TimeUnit.NANOSECONDS.toMicros(executionNanos));
+		if (periodNanos > 0 && executionNanos > periodNanos) {
+			overruns.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 得到当前的快照
+	 *
+	 * @return 快照
+	 */
+	public TimerMetricsSnapshot snapshot() {
+		return new TimerMetricsSnapshot(scheduled.get(), cancelled.get(), fired.get(), pending.get(),
+				overruns.get(), lateness.snapshot(), execution.snapshot());
+	}
+
+	/**
+	 * 把该对象注册到平台的MBeanServer中
+	 *
+	 * @param objectName
+	 *            JMX的ObjectName,如"com.alitag.mina_tools:type=SessionTaskHelper"
+	 * @throws IllegalArgumentException
+	 *             如果objectName为null或为空
+	 * @throws JMException
+	 *             如果objectName不合法,或者已经被注册
+	 */
+	public void registerMBean(String objectName) throws JMException {
+		ArgumentValidator.notNullOrTrimmedEmpty(objectName, "objectName");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(this, new ObjectName(objectName));
+	}
+
+	public long getScheduledCount() {
+		return scheduled.get();
+	}
+
+	public long getCancelledCount() {
+		return cancelled.get();
+	}
+
+	public long getFiredCount() {
+		return fired.get();
+	}
+
+	public long getPendingCount() {
+		return pending.get();
+	}
+
+	public long getOverrunCount() {
+		return overruns.get();
+	}
+
+	public long getLatenessP50Micros() {
+		return lateness.snapshot().getPercentile(50);
+	}
+
+	public long getLatenessP99Micros() {
+		return lateness.snapshot().getPercentile(99);
+	}
+
+	public long getLatenessMaxMicros() {
+		return lateness.snapshot().getMax();
+	}
+
+	public long getExecutionP50Micros() {
+		return execution.snapshot().getPercentile(50);
+	}
+
+	public long getExecutionP99Micros() {
+		return execution.snapshot().getPercentile(99);
+	}
+
+	public long getExecutionMaxMicros() {
+		return execution.snapshot().getMax();
+	}
+}
@@ -0,0 +1,34 @@
+package com.alitag.mina_tools.timer;
+
+/**
+ * <p>
+ * {@link TimerMetrics}的JMX接口。时间的单位均为微秒。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public interface TimerMetricsMBean {
+
+	long getScheduledCount();
+
+	long getCancelledCount();
+
+	long getFiredCount();
+
+	long getPendingCount();
+
+	long getOverrunCount();
+
+	long getLatenessP50Micros();
+
+	long getLatenessP99Micros();
+
+	long getLatenessMaxMicros();
+
+	long getExecutionP50Micros();
+
+	long getExecutionP99Micros();
+
+	long getExecutionMaxMicros();
+}
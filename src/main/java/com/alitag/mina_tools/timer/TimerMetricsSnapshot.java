@@ -0,0 +1,75 @@
+package com.alitag.mina_tools.timer;
+
+/**
+ * <p>
+ * {@link TimerMetrics}在某一时刻的快照。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变类。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public final class TimerMetricsSnapshot {
+
+	private final long scheduled;
+	private final long cancelled;
+	private final long fired;
+	private final long pending;
+	private final long overruns;
+	private final LatencyHistogram.Snapshot lateness;
+	private final LatencyHistogram.Snapshot execution;
+
+	TimerMetricsSnapshot(long scheduled, long cancelled, long fired, long pending, long overruns,
+			LatencyHistogram.Snapshot lateness, LatencyHistogram.Snapshot execution) {
+		this.scheduled = scheduled;
+		this.cancelled = cancelled;
+		this.fired = fired;
+		this.pending = pending;
+		this.overruns = overruns;
+		this.lateness = lateness;
+		this.execution = execution;
+	}
+
+	/** 得到已经调度的任务数 */
+	public long getScheduled() {
+		return scheduled;
+	}
+
+	/** 得到被成功取消的任务数 */
+	public long getCancelled() {
+		return cancelled;
+	}
+
+	/** 得到任务到期执行的次数。反复执行的任务每执行一次计一次 */
+	public long getFired() {
+		return fired;
+	}
+
+	/** 得到尚未结束(既未执行完毕也未被取消)的任务数 */
+	public long getPending() {
+		return pending;
+	}
+
+	/** 得到执行时间超过其周期的次数 */
+	public long getOverruns() {
+		return overruns;
+	}
+
+	/** 得到到期执行时间与计划时间之差的分布(微秒) */
+	public LatencyHistogram.Snapshot getLateness() {
+		return lateness;
+	}
+
+	/** 得到任务执行时间的分布(微秒) */
+	public LatencyHistogram.Snapshot getExecution() {
+		return execution;
+	}
+
+	@Override
+	public String toString() {
+		return "scheduled=" + scheduled + ", cancelled=" + cancelled + ", fired=" + fired + ", pending=" + pending
+				+ ", overruns=" + overruns + ", lateness(us)=[" + lateness + "], execution(us)=[" + execution + "]";
+	}
+}
@@ -0,0 +1,106 @@
+package com.alitag.mina_tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ConnectRateLimiter的测试。检查排队的请求以配置的速率放行，即使桶的容量小于一个tick内补充的令牌数。
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class ConnectRateLimiterTest {
+
+	/**
+	 * 为每个地址申请一个许可,返回全部放行所用的时间(毫秒)
+	 */
+	private static long drain(ConnectRateLimiter limiter, List<InetSocketAddress> remotes) throws Exception {
+		long start = System.nanoTime();
+		List<CompletableFuture<Void>> results = new ArrayList<CompletableFuture<Void>>();
+		for (InetSocketAddress remote : remotes) {
+			results.add(limiter.acquire(remote, 5000));
+		}
+		for (CompletableFuture<Void> result : results) {
+			result.get(10, TimeUnit.SECONDS);
+		}
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	private static void assertRate(String message, double expectedPerSecond, int granted, long elapsedMillis) {
+		double rate = granted * 1000.0 / Math.max(1, elapsedMillis);
+		assertTrue(message + ": " + rate + "/s, expected " + expectedPerSecond + "/s",
+				rate > expectedPerSecond * 0.8 && rate < expectedPerSecond * 1.25);
+	}
+
+	/**
+	 * 启动共享的定时器并预热代码,避免计入第一个用例的耗时
+	 */
+	@Before
+	public void warmUp() throws Exception {
+		List<InetSocketAddress> remotes = new ArrayList<InetSocketAddress>();
+		for (int i = 0; i < 100; i++) {
+			remotes.add(FakeIo.address(i + 1));
+		}
+		drain(new ConnectRateLimiter(2000, 5, 0, 0), remotes);
+	}
+
+	@Test
+	public void globalQueueDrainsAtConfiguredRate() throws Exception {
+		// 每个10毫秒的tick补充10个令牌,而容量只有5
+		ConnectRateLimiter limiter = new ConnectRateLimiter(1000, 5, 0, 0);
+		List<InetSocketAddress> remotes = new ArrayList<InetSocketAddress>();
+		for (int i = 0; i < 605; i++) {
+			remotes.add(FakeIo.address(i + 1));
+		}
+		long elapsed = drain(limiter, remotes);
+		assertRate("global", 1000, 600, elapsed);
+		assertEquals(0, limiter.getQueuedCount());
+	}
+
+	@Test
+	public void endpointQueueDrainsAtConfiguredRate() throws Exception {
+		ConnectRateLimiter limiter = new ConnectRateLimiter(100000, 1000, 400, 1);
+		List<InetSocketAddress> remotes = new ArrayList<InetSocketAddress>();
+		for (int i = 0; i < 201; i++) {
+			remotes.add(FakeIo.address(1));
+		}
+		long elapsed = drain(limiter, remotes);
+		assertRate("endpoint", 400, 200, elapsed);
+	}
+
+	@Test
+	public void otherEndpointsAreNotBlocked() throws Exception {
+		ConnectRateLimiter limiter = new ConnectRateLimiter(100000, 1000, 1, 1);
+		limiter.acquire(FakeIo.address(1), 5000).get(1, TimeUnit.SECONDS);
+		CompletableFuture<Void> blocked = limiter.acquire(FakeIo.address(1), 5000);
+		limiter.acquire(FakeIo.address(2), 5000).get(1, TimeUnit.SECONDS);
+		assertFalse(blocked.isDone());
+		assertEquals(1, limiter.getQueuedCount());
+	}
+
+	@Test
+	public void queuedRequestTimesOut() throws Exception {
+		ConnectRateLimiter limiter = new ConnectRateLimiter(1, 1, 0, 0);
+		limiter.acquire(FakeIo.address(1), 5000).get(1, TimeUnit.SECONDS);
+		try {
+			limiter.acquire(FakeIo.address(1), 50).get(1, TimeUnit.SECONDS);
+			fail("should time out");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof SocketTimeoutException);
+		}
+		assertEquals(0, limiter.getQueuedCount());
+	}
+}
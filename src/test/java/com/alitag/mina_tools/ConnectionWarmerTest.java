@@ -0,0 +1,58 @@
+package com.alitag.mina_tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * ConnectionWarmer的测试。连接由FakeIo.Connector立即建立，预热消息的写出方式由测试决定。
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class ConnectionWarmerTest {
+
+	private static List<InetSocketAddress> endpoints(int count) {
+		List<InetSocketAddress> endpoints = new ArrayList<InetSocketAddress>();
+		for (int i = 1; i <= count; i++) {
+			endpoints.add(FakeIo.address(i));
+		}
+		return endpoints;
+	}
+
+	@Test
+	public void syntheticMessagesAreWritten() throws Exception {
+		FakeIo.Connector connector = new FakeIo.Connector();
+		ConnectionWarmer warmer = new ConnectionWarmer(new ConnectorHelper(connector.proxy(), null))
+				.setSyntheticMessage("ping", 3);
+		WarmupResult result = warmer.warm(endpoints(4)).get(5, TimeUnit.SECONDS);
+		assertEquals(4, result.getConnected());
+		assertEquals(0, result.getFailed());
+		for (FakeIo.Session session : connector.sessions) {
+			assertEquals(3, session.written.size());
+		}
+	}
+
+	@Test
+	public void peerThatNeverReadsFailsAtTimeout() throws Exception {
+		FakeIo.Connector connector = new FakeIo.Connector().setWriteHandler(FakeIo.NEVER_WRITE);
+		ConnectionWarmer warmer = new ConnectionWarmer(new ConnectorHelper(connector.proxy(), null))
+				.setSyntheticMessage("ping", 3).setTimeoutMillis(200);
+		long start = System.nanoTime();
+		WarmupResult result = warmer.warm(endpoints(4)).get(5, TimeUnit.SECONDS);
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertEquals(0, result.getConnected());
+		assertEquals(4, result.getFailed());
+		assertTrue("finished after " + elapsed + "ms", elapsed >= 150 && elapsed < 2000);
+		assertEquals(0, result.getSessions().size());
+		for (FakeIo.Session session : connector.sessions) {
+			assertTrue(session.proxy().isClosing());
+		}
+	}
+}
@@ -0,0 +1,300 @@
+package com.alitag.mina_tools;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.common.CloseFuture;
+import org.apache.mina.common.ConnectFuture;
+import org.apache.mina.common.IoConnector;
+import org.apache.mina.common.IoFuture;
+import org.apache.mina.common.IoFutureListener;
+import org.apache.mina.common.IoSession;
+import org.apache.mina.common.RuntimeIOException;
+import org.apache.mina.common.WriteFuture;
+
+/**
+ * 测试用的mina对象。IoSession、IoConnector及各种IoFuture都由动态代理实现，只支持测试中用到的方法，其余方法返回默认值。
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public final class FakeIo {
+
+	private FakeIo() {
+	}
+
+	/**
+	 * 写操作的处理方式
+	 */
+	public interface WriteHandler {
+		/**
+		 * 处理一次写操作.写操作完成时调用future.complete()
+		 */
+		void write(Session session, Object message, Future future);
+	}
+
+	/** 立即写出 */
+	public static final WriteHandler WRITE_IMMEDIATELY = new WriteHandler() {
+		public void write(Session session, Object message, Future future) {
+			future.complete(session.proxy(), null);
+		}
+	};
+
+	/** 对方不读取数据,写操作永远不会完成 */
+	public static final WriteHandler NEVER_WRITE = new WriteHandler() {
+		public void write(Session session, Object message, Future future) {
+		}
+	};
+
+	/**
+	 * 一个可以由测试完成的IoFuture，同时实现ConnectFuture、WriteFuture及CloseFuture
+	 */
+	public static final class Future implements InvocationHandler {
+		private final List<IoFutureListener> listeners = new ArrayList<IoFutureListener>();
+		private IoSession session;
+		private Throwable cause;
+		private boolean ready;
+		private IoFuture proxy;
+
+		public static Future create(Class<? extends IoFuture> type) {
+			Future future = new Future();
+			future.proxy = (IoFuture) Proxy.newProxyInstance(FakeIo.class.getClassLoader(), new Class<?>[] { type },
+					future);
+			return future;
+		}
+
+		public IoFuture proxy() {
+			return proxy;
+		}
+
+		public void complete(IoSession session, Throwable cause) {
+			List<IoFutureListener> toNotify;
+			synchronized (this) {
+				if (ready) {
+					return;
+				}
+				this.session = session;
+				this.cause = cause;
+				this.ready = true;
+				notifyAll();
+				toNotify = new ArrayList<IoFutureListener>(listeners);
+				listeners.clear();
+			}
+			for (IoFutureListener listener : toNotify) {
+				listener.operationComplete(proxy);
+			}
+		}
+
+		public synchronized boolean isReady() {
+			return ready;
+		}
+
+		public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+			String name = m.getName();
+			if (name.equals("addListener")) {
+				IoFutureListener listener = (IoFutureListener) args[0];
+				synchronized (this) {
+					if (!ready) {
+						listeners.add(listener);
+						return null;
+					}
+				}
+				listener.operationComplete(proxy);
+				return null;
+			}
+			synchronized (this) {
+				if (name.equals("getSession")) {
+					if (cause != null) {
+						throw new RuntimeIOException(cause);
+					}
+					return session;
+				} else if (name.equals("isConnected")) {
+					return ready && cause == null && session != null;
+				} else if (name.equals("isWritten")) {
+					return ready && cause == null;
+				} else if (name.equals("isReady") || name.equals("isClosed")) {
+					return ready;
+				} else if (name.equals("removeListener")) {
+					listeners.remove(args[0]);
+					return null;
+				} else if (name.equals("join")) {
+					long until = args != null && args.length == 1 ? System.currentTimeMillis() + (Long) args[0]
+							: Long.MAX_VALUE;
+					while (!ready && System.currentTimeMillis() < until) {
+						wait(Math.max(1, Math.min(100, until - System.currentTimeMillis())));
+					}
+					return m.getReturnType() == boolean.class ? Boolean.valueOf(ready) : null;
+				} else if (name.equals("getLock")) {
+					return this;
+				}
+			}
+			return defaultValue(p, m, args);
+		}
+	}
+
+	/**
+	 * 一个IoSession
+	 */
+	public static final class Session implements InvocationHandler {
+		private final Map<Object, Object> attributes = new ConcurrentHashMap<Object, Object>();
+		private final Future closeFuture = Future.create(CloseFuture.class);
+		private final SocketAddress remote;
+		private final IoSession proxy;
+		private volatile WriteHandler writeHandler = WRITE_IMMEDIATELY;
+		private volatile boolean closing;
+
+		/** 所有写出的消息 */
+		public final List<Object> written = new CopyOnWriteArrayList<Object>();
+
+		public Session(SocketAddress remote) {
+			this.remote = remote;
+			this.proxy = (IoSession) Proxy.newProxyInstance(FakeIo.class.getClassLoader(),
+					new Class<?>[] { IoSession.class }, this);
+		}
+
+		public IoSession proxy() {
+			return proxy;
+		}
+
+		public Session setWriteHandler(WriteHandler writeHandler) {
+			this.writeHandler = writeHandler;
+			return this;
+		}
+
+		public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+			String name = m.getName();
+			if (name.equals("getAttribute")) {
+				return attributes.get(args[0]);
+			} else if (name.equals("setAttribute")) {
+				Object value = args.length > 1 ? args[1] : Boolean.TRUE;
+				return attributes.put(args[0], value);
+			} else if (name.equals("removeAttribute")) {
+				return attributes.remove(args[0]);
+			} else if (name.equals("containsAttribute")) {
+				return attributes.containsKey(args[0]);
+			} else if (name.equals("write")) {
+				Future future = Future.create(WriteFuture.class);
+				if (closing) {
+					future.complete(proxy, new RuntimeIOException("session is closing"));
+				} else {
+					written.add(args[0]);
+					writeHandler.write(this, args[0], future);
+				}
+				return future.proxy();
+			} else if (name.equals("close")) {
+				closing = true;
+				closeFuture.complete(proxy, null);
+				return closeFuture.proxy();
+			} else if (name.equals("getCloseFuture")) {
+				return closeFuture.proxy();
+			} else if (name.equals("isClosing")) {
+				return closing;
+			} else if (name.equals("isConnected")) {
+				return !closing;
+			} else if (name.equals("getRemoteAddress") || name.equals("getServiceAddress")) {
+				return remote;
+			} else if (name.equals("toString")) {
+				return "FakeSession(" + remote + ")";
+			}
+			return defaultValue(p, m, args);
+		}
+	}
+
+	/**
+	 * 一个IoConnector。除了{@link #refused}中的地址，每次连接都立即成功，建立的session的写操作由{@link #setWriteHandler(WriteHandler)}决定
+	 */
+	public static final class Connector implements InvocationHandler {
+		private final IoConnector proxy;
+		private volatile WriteHandler writeHandler = WRITE_IMMEDIATELY;
+
+		/** 连接的次数 */
+		public final AtomicInteger attempts = new AtomicInteger();
+
+		/** 建立的所有session */
+		public final List<Session> sessions = new CopyOnWriteArrayList<Session>();
+
+		/** 拒绝连接的地址 */
+		public final Set<SocketAddress> refused = ConcurrentHashMap.newKeySet();
+
+		public Connector() {
+			this.proxy = (IoConnector) Proxy.newProxyInstance(FakeIo.class.getClassLoader(),
+					new Class<?>[] { IoConnector.class }, this);
+		}
+
+		public IoConnector proxy() {
+			return proxy;
+		}
+
+		/**
+		 * 设置此后建立的session的写操作的处理方式
+		 */
+		public Connector setWriteHandler(WriteHandler writeHandler) {
+			this.writeHandler = writeHandler;
+			return this;
+		}
+
+		public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+			if (m.getName().equals("connect")) {
+				attempts.incrementAndGet();
+				Future future = Future.create(ConnectFuture.class);
+				if (refused.contains(args[0])) {
+					future.complete(null, new ConnectException("connection refused: " + args[0]));
+					return future.proxy();
+				}
+				Session session = new Session((SocketAddress) args[0]).setWriteHandler(writeHandler);
+				sessions.add(session);
+				future.complete(session.proxy(), null);
+				return future.proxy();
+			}
+			return defaultValue(p, m, args);
+		}
+	}
+
+	/**
+	 * 得到一个未解析的测试地址
+	 */
+	public static InetSocketAddress address(int port) {
+		return new InetSocketAddress("127.0.0.1", port);
+	}
+
+	private static Object defaultValue(Object p, Method m, Object[] args) {
+		String name = m.getName();
+		if (name.equals("hashCode")) {
+			return System.identityHashCode(p);
+		} else if (name.equals("equals")) {
+			return p == args[0];
+		} else if (name.equals("toString")) {
+			return "Fake" + m.getDeclaringClass().getSimpleName();
+		}
+		Class<?> type = m.getReturnType();
+		if (type == boolean.class) {
+			return Boolean.FALSE;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == double.class) {
+			return 0d;
+		} else if (type == float.class) {
+			return 0f;
+		} else if (type == short.class) {
+			return (short) 0;
+		} else if (type == byte.class) {
+			return (byte) 0;
+		} else if (type == char.class) {
+			return (char) 0;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,65 @@
+package com.alitag.mina_tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.common.IoSession;
+import org.junit.Test;
+
+/**
+ * 对冲连接的测试。FakeIo.Connector在connect()返回之前就完成连接，因此连接失败时的换地址在发起连接的线程中同步发生。
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class HedgedConnectTest {
+
+	/** 足以在递归调用时耗尽调用栈的地址数 */
+	private static final int ENDPOINTS = 20000;
+
+	private static List<InetSocketAddress> endpoints(int count) {
+		List<InetSocketAddress> endpoints = new ArrayList<InetSocketAddress>();
+		for (int i = 1; i <= count; i++) {
+			endpoints.add(FakeIo.address(i));
+		}
+		return endpoints;
+	}
+
+	@Test
+	public void synchronousFailuresFailOverWithoutRecursion() throws Exception {
+		FakeIo.Connector connector = new FakeIo.Connector();
+		for (int i = 1; i < ENDPOINTS; i++) {
+			connector.refused.add(FakeIo.address(i));
+		}
+		ConnectorHelper helper = new ConnectorHelper(connector.proxy(), null);
+		IoSession session = helper.connectHedged(endpoints(ENDPOINTS), HedgePolicy.fixed(10000, 0)).get(10,
+				TimeUnit.SECONDS);
+		assertEquals(ENDPOINTS, connector.attempts.get());
+		assertSame(connector.sessions.get(0).proxy(), session);
+	}
+
+	@Test
+	public void allSynchronousFailuresCompleteExceptionally() throws Exception {
+		FakeIo.Connector connector = new FakeIo.Connector();
+		for (int i = 1; i <= ENDPOINTS; i++) {
+			connector.refused.add(FakeIo.address(i));
+		}
+		ConnectorHelper helper = new ConnectorHelper(connector.proxy(), null);
+		try {
+			helper.connectHedged(endpoints(ENDPOINTS), HedgePolicy.fixed(10000, 1)).get(10, TimeUnit.SECONDS);
+			fail("all endpoints refused");
+		} catch (ExecutionException e) {
+			assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof ConnectException);
+		}
+		assertEquals(ENDPOINTS, connector.attempts.get());
+	}
+}
@@ -0,0 +1,179 @@
+package com.alitag.mina_tools.balance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.mina.common.IoSession;
+import org.junit.Test;
+
+import com.alitag.mina_tools.ConnectorHelper;
+import com.alitag.mina_tools.FakeIo;
+import com.alitag.mina_tools.ReconnectPolicy;
+
+/**
+ * ConsistentHashGroup的测试。连接由FakeIo.Connector立即建立，未连上的地址用FakeIo.Connector.refused模拟。
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class ConsistentHashGroupTest {
+
+	private static final int KEYS = 100000;
+
+	private static ConsistentHashGroup group(FakeIo.Connector connector, int endpoints) {
+		ConsistentHashGroup group = new ConsistentHashGroup(new ConnectorHelper(connector.proxy(), null),
+				ReconnectPolicy.exponential(60000, 60000));
+		for (int i = 1; i <= endpoints; i++) {
+			group.add(FakeIo.address(i));
+		}
+		return group;
+	}
+
+	private static String key(int i) {
+		return "user:" + i;
+	}
+
+	@Test
+	public void stringAndUtf8BytesHashTheSame() {
+		String[] keys = { "", "user:42", "é", "用户:42", "😀 emoji", "unpaired \ud800 high", "\udc00 low",
+				"end \ud800" };
+		for (String key : keys) {
+			assertEquals(key, ConsistentHashGroup.hash(key.getBytes(StandardCharsets.UTF_8)),
+					ConsistentHashGroup.hash(key));
+		}
+		ConsistentHashGroup group = group(new FakeIo.Connector(), 10);
+		for (int i = 0; i < 1000; i++) {
+			String key = "用户:" + i;
+			assertSame(group.select(key), group.select(key.getBytes(StandardCharsets.UTF_8)));
+		}
+		group.close();
+	}
+
+	@Test
+	public void onlyKeysOfChangedEndpointMove() {
+		ConsistentHashGroup group = group(new FakeIo.Connector(), 10);
+		InetSocketAddress[] before = new InetSocketAddress[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			before[i] = group.locate(key(i));
+		}
+
+		InetSocketAddress removed = FakeIo.address(3);
+		group.remove(removed);
+		int moved = 0;
+		for (int i = 0; i < KEYS; i++) {
+			InetSocketAddress now = group.locate(key(i));
+			if (!now.equals(before[i])) {
+				assertEquals("key " + key(i) + " moved from a remaining endpoint", removed, before[i]);
+				moved++;
+			}
+			before[i] = now;
+		}
+		assertTrue("moved " + moved, moved > KEYS / 10 / 2 && moved < KEYS / 10 * 2);
+
+		// 加入第11个地址：只有移到新地址的key改变了归属，约占1/10
+		InetSocketAddress added = FakeIo.address(11);
+		group.add(added);
+		moved = 0;
+		for (int i = 0; i < KEYS; i++) {
+			InetSocketAddress now = group.locate(key(i));
+			if (!now.equals(before[i])) {
+				assertEquals(added, now);
+				moved++;
+			}
+		}
+		assertTrue("moved " + moved, moved > KEYS / 10 / 2 && moved < KEYS / 10 * 2);
+		group.close();
+	}
+
+	@Test
+	public void keysAreSpreadEvenly() {
+		ConsistentHashGroup group = group(new FakeIo.Connector(), 10);
+		Map<InetSocketAddress, Integer> counts = new HashMap<InetSocketAddress, Integer>();
+		for (int i = 0; i < KEYS; i++) {
+			InetSocketAddress owner = group.locate(key(i));
+			Integer count = counts.get(owner);
+			counts.put(owner, count == null ? 1 : count + 1);
+		}
+		assertEquals(10, counts.size());
+		int mean = KEYS / 10;
+		for (Map.Entry<InetSocketAddress, Integer> entry : counts.entrySet()) {
+			assertTrue(entry.toString(), entry.getValue() > mean * 0.75 && entry.getValue() < mean * 1.25);
+		}
+		group.close();
+	}
+
+	@Test
+	public void deadOwnersAreSkipped() {
+		// 70个地址时记录检查过的地址需要超过一个long
+		for (int endpoints : new int[] { 10, 70 }) {
+			FakeIo.Connector connector = new FakeIo.Connector();
+			for (int i = 1; i < endpoints; i++) {
+				connector.refused.add(FakeIo.address(i));
+			}
+			ConsistentHashGroup group = group(connector, endpoints);
+			IoSession live = connector.sessions.get(0).proxy();
+			for (int i = 0; i < 10000; i++) {
+				assertSame(live, group.select(key(i)));
+				assertSame(live, group.select((long) i));
+			}
+			group.close();
+
+			FakeIo.Connector refusing = new FakeIo.Connector();
+			for (int i = 1; i <= endpoints; i++) {
+				refusing.refused.add(FakeIo.address(i));
+			}
+			group = group(refusing, endpoints);
+			assertNull(group.select(key(1)));
+			assertNotNull(group.locate(key(1)));
+			group.close();
+		}
+	}
+
+	@Test
+	public void selectDoesNotAllocate() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) threads;
+		FakeIo.Connector connector = new FakeIo.Connector();
+		// 一半的地址未连上，覆盖顺时针继续查找的情况
+		for (int i = 1; i <= 10; i += 2) {
+			connector.refused.add(FakeIo.address(i));
+		}
+		ConsistentHashGroup group = group(connector, 10);
+		String[] keys = new String[1000];
+		byte[][] bytes = new byte[keys.length][];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = key(i);
+			bytes[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+		}
+		long sink = 0;
+		for (int round = 0; round < 2; round++) {
+			long threadId = Thread.currentThread().getId();
+			long before = mx.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < 200000; i++) {
+				int k = i % keys.length;
+				sink += System.identityHashCode(group.select(keys[k]));
+				sink += System.identityHashCode(group.select(bytes[k]));
+				sink += System.identityHashCode(group.select((long) i));
+			}
+			long allocated = mx.getThreadAllocatedBytes(threadId) - before;
+			// 第一轮用于预热
+			if (round == 1) {
+				assertTrue("allocated " + allocated + " bytes for 600000 selects, sink " + sink, allocated < 10000);
+			}
+		}
+		group.close();
+	}
+}
@@ -0,0 +1,242 @@
+package com.alitag.mina_tools.mux;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.mina.common.IoSession;
+import org.junit.Test;
+
+import com.alitag.mina_tools.FakeIo;
+
+/**
+ * MuxSession的测试。客户端和服务器端的MuxIoHandler通过两个FakeIo.Session相连，写出的帧先排在队列中，
+ * 由测试调用deliver()在当前线程中交给对方，因此可以精确控制帧的到达顺序，也可以扣住某个方向的帧。
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class MuxSessionTest {
+
+	private static final int WINDOW = 16384;
+	private static final int FRAME = 1024;
+
+	/**
+	 * 记录流的事件
+	 */
+	private static final class Recorder implements MuxStreamListener {
+		final List<MuxStream> opened = new ArrayList<MuxStream>();
+		final List<MuxStream> closed = new ArrayList<MuxStream>();
+		/** 按到达顺序记录每帧数据所属的流 */
+		final List<Integer> dataOrder = new ArrayList<Integer>();
+		final Map<Integer, Integer> received = new HashMap<Integer, Integer>();
+
+		public void streamOpened(MuxStream stream) {
+			opened.add(stream);
+		}
+
+		public void dataReceived(MuxStream stream, byte[] data) {
+			dataOrder.add(stream.getId());
+			Integer count = received.get(stream.getId());
+			received.put(stream.getId(), (count == null ? 0 : count) + data.length);
+		}
+
+		public void streamClosed(MuxStream stream) {
+			closed.add(stream);
+		}
+
+		int received(MuxStream stream) {
+			Integer count = received.get(stream.getId());
+			return count == null ? 0 : count;
+		}
+	}
+
+	/**
+	 * 一端的session。写出的帧及其WriteFuture排在队列中，等待deliver()
+	 */
+	private static final class End implements FakeIo.WriteHandler {
+		final Recorder recorder = new Recorder();
+		final MuxIoHandler handler;
+		final FakeIo.Session session = new FakeIo.Session(FakeIo.address(1)).setWriteHandler(this);
+		final ArrayDeque<Object[]> outbound = new ArrayDeque<Object[]>();
+		final List<MuxFrame> sent = new ArrayList<MuxFrame>();
+		End peer;
+
+		End(boolean client, int maxInFlightFrames) {
+			handler = new MuxIoHandler(recorder, client, WINDOW, FRAME, maxInFlightFrames);
+			handler.sessionCreated(session.proxy());
+		}
+
+		public void write(FakeIo.Session session, Object message, FakeIo.Future future) {
+			sent.add((MuxFrame) message);
+			outbound.addLast(new Object[] { message, future });
+		}
+
+		MuxSession mux() {
+			return MuxSession.of(session.proxy());
+		}
+
+		/**
+		 * 把排队的帧依次交给对方,直到队列为空
+		 *
+		 * @return 交出的帧数
+		 */
+		int deliver() {
+			int count = 0;
+			Object[] next;
+			while ((next = outbound.pollFirst()) != null) {
+				peer.receive((MuxFrame) next[0]);
+				((FakeIo.Future) next[1]).complete(session.proxy(), null);
+				count++;
+			}
+			return count;
+		}
+
+		void receive(MuxFrame frame) {
+			handler.messageReceived(session.proxy(), frame);
+		}
+
+		int count(byte type) {
+			int count = 0;
+			for (MuxFrame frame : sent) {
+				if (frame.getType() == type) {
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+
+	private static End[] connect(int maxInFlightFrames) {
+		End client = new End(true, maxInFlightFrames);
+		End server = new End(false, maxInFlightFrames);
+		client.peer = server;
+		server.peer = client;
+		return new End[] { client, server };
+	}
+
+	private static void deliverAll(End[] ends) {
+		while (ends[0].deliver() + ends[1].deliver() > 0) {
+		}
+	}
+
+	@Test
+	public void senderStopsAtWindowUntilReceiverReturnsIt() {
+		End[] ends = connect(4);
+		End client = ends[0];
+		End server = ends[1];
+		MuxStream stream = client.mux().openStream();
+		stream.write(new byte[WINDOW * 4]);
+
+		// 只把客户端的帧交给服务器端,服务器端归还额度的WINDOW_UPDATE被扣住
+		while (client.deliver() > 0) {
+		}
+		assertEquals(WINDOW, server.recorder.received(server.recorder.opened.get(0)));
+		assertEquals(WINDOW * 3, stream.getPendingBytes());
+		assertTrue(server.count(MuxFrame.WINDOW_UPDATE) > 0);
+
+		deliverAll(ends);
+		assertEquals(WINDOW * 4, server.recorder.received(server.recorder.opened.get(0)));
+		assertEquals(0, stream.getPendingBytes());
+		assertEquals(0, client.count(MuxFrame.RESET) + server.count(MuxFrame.RESET));
+	}
+
+	@Test
+	public void slowStreamDoesNotBlockOthers() {
+		End[] ends = connect(4);
+		MuxStream slow = ends[0].mux().openStream();
+		MuxStream fast = ends[0].mux().openStream();
+		slow.write(new byte[WINDOW * 2]);
+		// slow用完额度后被扣住,fast仍可以发送
+		while (ends[0].deliver() > 0) {
+		}
+		ends[1].outbound.clear();
+		fast.write(new byte[FRAME * 4]);
+		while (ends[0].deliver() > 0) {
+		}
+		assertEquals(FRAME * 4, ends[1].recorder.received(fast));
+		assertEquals(WINDOW, ends[1].recorder.received(slow));
+	}
+
+	@Test
+	public void streamsInterleaveFairly() {
+		End[] ends = connect(1);
+		MuxStream a = ends[0].mux().openStream();
+		MuxStream b = ends[0].mux().openStream();
+		// a先写入了大量数据,b稍后写入少量数据
+		a.write(new byte[FRAME * 12]);
+		b.write(new byte[FRAME * 4]);
+		deliverAll(ends);
+
+		// a的第一帧在b写入之前已经发出,此后两个流逐帧交替,b的数据不必排在a的全部数据之后
+		List<Integer> expected = new ArrayList<Integer>();
+		expected.add(a.getId());
+		for (int i = 0; i < 4; i++) {
+			expected.add(a.getId());
+			expected.add(b.getId());
+		}
+		while (expected.size() < 16) {
+			expected.add(a.getId());
+		}
+		assertEquals(expected, ends[1].recorder.dataOrder);
+	}
+
+	@Test
+	public void streamIdsHaveSideParity() {
+		End[] ends = connect(4);
+		MuxStream clientStream = ends[0].mux().openStream();
+		MuxStream serverStream = ends[1].mux().openStream();
+		deliverAll(ends);
+		assertEquals(1, clientStream.getId() & 1);
+		assertEquals(0, serverStream.getId() & 1);
+		assertEquals(1, ends[0].recorder.opened.size());
+		assertEquals(1, ends[1].recorder.opened.size());
+
+		// 对方使用了本方的奇偶,以RESET拒绝
+		ends[1].receive(MuxFrame.open(100));
+		ends[0].receive(MuxFrame.open(101));
+		assertEquals(1, ends[0].recorder.opened.size());
+		assertEquals(1, ends[1].recorder.opened.size());
+		assertEquals(1, ends[0].count(MuxFrame.RESET));
+		assertEquals(1, ends[1].count(MuxFrame.RESET));
+	}
+
+	@Test
+	public void invalidWindowUpdateResetsStream() {
+		int[] deltas = { 0, -1, Integer.MAX_VALUE - WINDOW + 1, Integer.MAX_VALUE };
+		for (int delta : deltas) {
+			End[] ends = connect(4);
+			MuxStream stream = ends[0].mux().openStream();
+			deliverAll(ends);
+			ends[0].receive(MuxFrame.windowUpdate(stream.getId(), delta));
+			assertEquals("delta " + delta, 1, ends[0].count(MuxFrame.RESET));
+			assertEquals("delta " + delta, 1, ends[0].recorder.closed.size());
+			assertEquals("delta " + delta, 0, ends[0].mux().getStreamCount());
+		}
+
+		// 合法的归还,额度正好到Integer.MAX_VALUE
+		End[] ends = connect(4);
+		MuxStream stream = ends[0].mux().openStream();
+		deliverAll(ends);
+		ends[0].receive(MuxFrame.windowUpdate(stream.getId(), Integer.MAX_VALUE - WINDOW));
+		assertEquals(0, ends[0].count(MuxFrame.RESET));
+		assertEquals(1, ends[0].mux().getStreamCount());
+	}
+
+	@Test
+	public void sessionCloseClosesAllStreams() {
+		End[] ends = connect(4);
+		ends[0].mux().openStream();
+		ends[0].mux().openStream();
+		deliverAll(ends);
+		IoSession session = ends[0].session.proxy();
+		ends[0].handler.sessionClosed(session);
+		assertEquals(2, ends[0].recorder.closed.size());
+		assertEquals(0, ends[0].mux().getStreamCount());
+	}
+}
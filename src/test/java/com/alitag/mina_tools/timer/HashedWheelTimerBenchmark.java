@@ -0,0 +1,82 @@
+package com.alitag.mina_tools.timer;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 比较为大量session调度自动断开任务时，共用一个HashedWheelTimer与原来每个任务一个java.util.Timer的线程数及调度耗时。
+ * </p>
+ * <p>
+ * 用法：java HashedWheelTimerBenchmark [sessions] [legacySessions]，默认分别为100000与2000。
+ * 每个Timer都有自己的线程，原来的方式在10万个session时会耗尽线程，因此只用legacySessions个session测量，线程数与session数成正比。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class HashedWheelTimerBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int legacySessions = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		// 预热
+		runWheel(sessions, false);
+		runWheel(sessions, true);
+		runLegacy(legacySessions);
+	}
+
+	private static void runWheel(int sessions, boolean print) throws InterruptedException {
+		int threadsBefore = Thread.activeCount();
+		HashedWheelTimer timer = new HashedWheelTimer("benchmark-wheel", 10, 512);
+		final CountDownLatch fired = new CountDownLatch(sessions);
+		Runnable task = new Runnable() {
+			public void run() {
+				fired.countDown();
+			}
+		};
+		long start = System.nanoTime();
+		for (int i = 0; i < sessions; i++) {
+			// 模拟每个session在1秒内的不同时刻断开
+			timer.schedule(task, i % 1000, 0);
+		}
+		long elapsed = System.nanoTime() - start;
+		int threadsAfter = Thread.activeCount();
+		boolean allFired = fired.await(10, TimeUnit.SECONDS);
+		timer.stop();
+		// 等待工作线程退出,以免影响下一次统计的线程数
+		Thread.sleep(200);
+		if (print) {
+			System.out.println("HashedWheelTimer: sessions=" + sessions + ", extra threads="
+					+ (threadsAfter - threadsBefore) + ", schedule cost=" + (elapsed / sessions) + "ns/session"
+					+ ", all fired=" + allFired);
+		}
+	}
+
+	private static void runLegacy(int sessions) throws InterruptedException {
+		int threadsBefore = Thread.activeCount();
+		final CountDownLatch fired = new CountDownLatch(sessions);
+		Timer[] timers = new Timer[sessions];
+		long start = System.nanoTime();
+		for (int i = 0; i < sessions; i++) {
+			timers[i] = new Timer(true);
+			timers[i].schedule(new TimerTask() {
+				@Override
+				public void run() {
+					fired.countDown();
+				}
+			}, i % 1000);
+		}
+		long elapsed = System.nanoTime() - start;
+		int threadsAfter = Thread.activeCount();
+		boolean allFired = fired.await(10, TimeUnit.SECONDS);
+		for (Timer timer : timers) {
+			timer.cancel();
+		}
+		System.out.println("Timer per task: sessions=" + sessions + ", extra threads=" + (threadsAfter - threadsBefore)
+				+ ", schedule cost=" + (elapsed / sessions) + "ns/session, all fired=" + allFired);
+	}
+}
@@ -0,0 +1,181 @@
+package com.alitag.mina_tools.timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * HierarchicalWheelTimer的测试。除了最后两个用例，都不启动工作线程，而是逐个tick地调用advance()，检查任务在cascade之后是否在正确的tick执行。
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class HierarchicalWheelTimerTest {
+
+	/** 每级4个槽，共3级：第0级覆盖4个tick，第1级覆盖16个tick，第2级覆盖64个tick */
+	private static HierarchicalWheelTimer smallTimer() {
+		return new HierarchicalWheelTimer("test", 10, 2, 3);
+	}
+
+	/**
+	 * 记录任务执行时的tick
+	 */
+	private static final class Recorder implements Runnable {
+		final HierarchicalWheelTimer timer;
+		final List<Long> firedAt = new ArrayList<Long>();
+
+		Recorder(HierarchicalWheelTimer timer) {
+			this.timer = timer;
+		}
+
+		public void run() {
+			firedAt.add(timer.getCurrentTick());
+		}
+	}
+
+	private static void advanceTo(HierarchicalWheelTimer timer, long tick) {
+		while (timer.getCurrentTick() <= tick) {
+			timer.advance();
+		}
+	}
+
+	private static void assertFiresAt(long expireTick) {
+		HierarchicalWheelTimer timer = smallTimer();
+		Recorder recorder = new Recorder(timer);
+		timer.scheduleAtTick(recorder, expireTick);
+		advanceTo(timer, expireTick + 100);
+		assertEquals("expireTick " + expireTick, 1, recorder.firedAt.size());
+		assertEquals("expireTick " + expireTick, Long.valueOf(expireTick), recorder.firedAt.get(0));
+	}
+
+	@Test
+	public void subTickDelaysFireInFirstTicks() {
+		assertFiresAt(0);
+		assertFiresAt(1);
+		assertFiresAt(3);
+	}
+
+	@Test
+	public void delaysAtLevelBoundariesFireAfterCascade() {
+		// 恰好是第0级、第1级的跨度，以及它们前后的tick
+		for (long tick : new long[] { 4, 5, 15, 16, 17, 31, 32, 48, 63 }) {
+			assertFiresAt(tick);
+		}
+	}
+
+	@Test
+	public void delaysBeyondTopLevelAreRecascaded() {
+		// 第2级一圈为64个tick，超出的任务先放入最后一个槽，cascade时重新计算位置
+		for (long tick : new long[] { 64, 65, 100, 127, 128, 1000 }) {
+			assertFiresAt(tick);
+		}
+	}
+
+	@Test
+	public void everyTickWithinTwoTopLevelRoundsFiresOnTime() {
+		HierarchicalWheelTimer timer = smallTimer();
+		List<Recorder> recorders = new ArrayList<Recorder>();
+		for (long tick = 0; tick < 128; tick++) {
+			Recorder recorder = new Recorder(timer);
+			recorders.add(recorder);
+			timer.scheduleAtTick(recorder, tick);
+		}
+		advanceTo(timer, 200);
+		for (int tick = 0; tick < 128; tick++) {
+			assertEquals(1, recorders.get(tick).firedAt.size());
+			assertEquals(Long.valueOf(tick), recorders.get(tick).firedAt.get(0));
+		}
+	}
+
+	@Test
+	public void tasksAddedMidRoundCrossLevelBoundaries() {
+		HierarchicalWheelTimer timer = smallTimer();
+		advanceTo(timer, 6);
+		long now = timer.getCurrentTick();
+		List<Recorder> recorders = new ArrayList<Recorder>();
+		long[] delays = { 0, 3, 4, 10, 16, 30, 64, 70 };
+		for (long delay : delays) {
+			Recorder recorder = new Recorder(timer);
+			recorders.add(recorder);
+			timer.scheduleAtTick(recorder, now + delay);
+		}
+		advanceTo(timer, now + 200);
+		for (int i = 0; i < delays.length; i++) {
+			assertEquals(Long.valueOf(now + delays[i]), recorders.get(i).firedAt.get(0));
+		}
+	}
+
+	@Test
+	public void multiDayDelayFiresAtExactTick() {
+		// 默认参数:10毫秒一个tick,3天需要经过第3级时间轮的cascade
+		HierarchicalWheelTimer timer = new HierarchicalWheelTimer("test");
+		long threeDays = TimeUnit.DAYS.toMillis(3) / timer.getTickMillis();
+		Recorder recorder = new Recorder(timer);
+		Recorder early = new Recorder(timer);
+		timer.scheduleAtTick(recorder, threeDays);
+		timer.scheduleAtTick(early, threeDays - 1);
+		advanceTo(timer, threeDays + 10);
+		assertEquals(Long.valueOf(threeDays), recorder.firedAt.get(0));
+		assertEquals(Long.valueOf(threeDays - 1), early.firedAt.get(0));
+	}
+
+	@Test
+	public void cancelledTaskDoesNotFire() {
+		HierarchicalWheelTimer timer = smallTimer();
+		Recorder recorder = new Recorder(timer);
+		Timeout timeout = timer.scheduleAtTick(recorder, 20);
+		assertTrue(timeout.cancel());
+		advanceTo(timer, 40);
+		assertTrue(recorder.firedAt.isEmpty());
+	}
+
+	@Test
+	public void scheduledTaskFiresWithRealClock() throws InterruptedException {
+		HierarchicalWheelTimer timer = new HierarchicalWheelTimer("test");
+		try {
+			final CountDownLatch fired = new CountDownLatch(1);
+			long start = System.nanoTime();
+			timer.schedule(new Runnable() {
+				public void run() {
+					fired.countDown();
+				}
+			}, 50, 0);
+			assertTrue(fired.await(2, TimeUnit.SECONDS));
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+		} finally {
+			timer.stop();
+		}
+	}
+
+	@Test
+	public void concurrentFirstScheduleSeesStartTime() throws InterruptedException {
+		for (int round = 0; round < 50; round++) {
+			final HierarchicalWheelTimer timer = new HierarchicalWheelTimer("test");
+			final CountDownLatch fired = new CountDownLatch(4);
+			Thread[] threads = new Thread[4];
+			for (int i = 0; i < threads.length; i++) {
+				threads[i] = new Thread(new Runnable() {
+					public void run() {
+						timer.schedule(new Runnable() {
+							public void run() {
+								fired.countDown();
+							}
+						}, 10, 0);
+					}
+				});
+				threads[i].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertTrue(fired.await(2, TimeUnit.SECONDS));
+			timer.stop();
+		}
+	}
+}
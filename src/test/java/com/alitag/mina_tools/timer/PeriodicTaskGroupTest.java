@@ -0,0 +1,220 @@
+package com.alitag.mina_tools.timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * PeriodicTaskGroup的测试。定时器和executor都由测试手动驱动：fire()触发一个周期，runAll()执行交给executor的批次。
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class PeriodicTaskGroupTest {
+
+	/**
+	 * 只记录调度项的定时器
+	 */
+	private static final class ManualTimer implements TaskTimer {
+		final List<Runnable> scheduled = new ArrayList<Runnable>();
+		final List<Boolean> cancelled = new ArrayList<Boolean>();
+
+		public Timeout schedule(final Runnable task, long delayMillis, long periodMillis) {
+			final int index = scheduled.size();
+			scheduled.add(task);
+			cancelled.add(Boolean.FALSE);
+			return new Timeout() {
+				public Runnable getTask() {
+					return task;
+				}
+
+				public boolean cancel() {
+					cancelled.set(index, Boolean.TRUE);
+					return true;
+				}
+
+				public boolean isCancelled() {
+					return cancelled.get(index);
+				}
+
+				public boolean isExpired() {
+					return false;
+				}
+			};
+		}
+
+		public void stop() {
+		}
+
+		void fire() {
+			scheduled.get(scheduled.size() - 1).run();
+		}
+	}
+
+	/**
+	 * 把提交的批次保存起来，由测试决定何时执行
+	 */
+	private static final class ManualExecutor implements Executor {
+		final List<Runnable> queued = new ArrayList<Runnable>();
+
+		public void execute(Runnable command) {
+			queued.add(command);
+		}
+
+		void runAll() {
+			List<Runnable> toRun = new ArrayList<Runnable>(queued);
+			queued.clear();
+			for (Runnable r : toRun) {
+				r.run();
+			}
+		}
+	}
+
+	private static final class Counter implements Runnable {
+		final AtomicInteger runs = new AtomicInteger();
+
+		public void run() {
+			runs.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void unfinishedBatchIsNotDispatchedAgain() {
+		ManualTimer timer = new ManualTimer();
+		ManualExecutor executor = new ManualExecutor();
+		PeriodicTaskGroup group = new PeriodicTaskGroup(timer, executor, 1000);
+
+		Counter fast = new Counter();
+		Counter other = new Counter();
+		group.add(fast);
+		group.add(other);
+
+		timer.fire();
+		assertEquals(1, executor.queued.size());
+		// 上一批尚未执行，全部任务仍在执行中，本周期全部跳过
+		timer.fire();
+		assertEquals(1, executor.queued.size());
+		executor.runAll();
+		assertEquals(1, fast.runs.get());
+		assertEquals(1, other.runs.get());
+	}
+
+	@Test
+	public void overrunningTaskIsSkippedAlone() throws Exception {
+		ManualTimer timer = new ManualTimer();
+		final ManualExecutor executor = new ManualExecutor();
+		PeriodicTaskGroup group = new PeriodicTaskGroup(timer, executor, 1000);
+
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		group.add(new Runnable() {
+			public void run() {
+				entered.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		timer.fire();
+		Thread slow = new Thread(new Runnable() {
+			public void run() {
+				executor.runAll();
+			}
+		});
+		slow.start();
+		assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+		// 慢任务跨越了周期：本周期只跳过它，新加入的任务照常执行
+		Counter fast = new Counter();
+		group.add(fast);
+		timer.fire();
+		timer.fire();
+		executor.runAll();
+		assertEquals(1, fast.runs.get());
+
+		release.countDown();
+		slow.join(5000);
+		timer.fire();
+		assertEquals(1, executor.queued.size());
+	}
+
+	@Test
+	public void cancelledMemberIsNotRun() {
+		ManualTimer timer = new ManualTimer();
+		ManualExecutor executor = new ManualExecutor();
+		PeriodicTaskGroup group = new PeriodicTaskGroup(timer, executor, 1000);
+		Counter kept = new Counter();
+		Counter removed = new Counter();
+		group.add(kept);
+		Timeout handle = group.add(removed);
+		timer.fire();
+		assertTrue(handle.cancel());
+		executor.runAll();
+		assertEquals(1, kept.runs.get());
+		assertEquals(0, removed.runs.get());
+		assertEquals(1, group.size());
+	}
+
+	@Test
+	public void emptyGroupRetiresItself() {
+		ManualTimer timer = new ManualTimer();
+		ManualExecutor executor = new ManualExecutor();
+		final AtomicInteger retiredCalls = new AtomicInteger();
+		PeriodicTaskGroup group = new PeriodicTaskGroup(timer, executor, 1000) {
+			@Override
+			protected void retired() {
+				retiredCalls.incrementAndGet();
+			}
+		};
+		Timeout handle = group.add(new Counter());
+		assertEquals(1, timer.scheduled.size());
+		handle.cancel();
+		assertFalse(group.isRetired());
+
+		timer.fire();
+		assertTrue(group.isRetired());
+		assertEquals(1, retiredCalls.get());
+		assertTrue(timer.cancelled.get(0));
+		assertTrue(executor.queued.isEmpty());
+		assertNull(group.add(new Counter()));
+		assertEquals(0, group.size());
+
+		// 撤销之后的周期不再重复回调
+		timer.fire();
+		assertEquals(1, retiredCalls.get());
+	}
+
+	@Test
+	public void rejectedBatchIsRetriedNextPeriod() {
+		ManualTimer timer = new ManualTimer();
+		final AtomicInteger rejections = new AtomicInteger(1);
+		final ManualExecutor accepted = new ManualExecutor();
+		PeriodicTaskGroup group = new PeriodicTaskGroup(timer, new Executor() {
+			public void execute(Runnable command) {
+				if (rejections.getAndDecrement() > 0) {
+					throw new RejectedExecutionException("full");
+				}
+				accepted.execute(command);
+			}
+		}, 1000);
+		Counter counter = new Counter();
+		group.add(counter);
+		timer.fire();
+		timer.fire();
+		accepted.runAll();
+		assertEquals(1, counter.runs.get());
+	}
+}